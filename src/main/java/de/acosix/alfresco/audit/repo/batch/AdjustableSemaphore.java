@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.batch;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Semaphore allowing the number of permits to be reduced at runtime, e.g. to limit the number of concurrently active workers of a batch
+ * process below the number of worker threads started.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class AdjustableSemaphore extends Semaphore
+{
+
+    private static final long serialVersionUID = -1393512339327196012L;
+
+    public AdjustableSemaphore(final int permits)
+    {
+        super(permits);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reducePermits(final int reduction)
+    {
+        super.reducePermits(reduction);
+    }
+}
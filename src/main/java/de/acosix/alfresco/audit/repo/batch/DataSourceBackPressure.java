@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.batch;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class apply back-pressure to batch workers of maintenance jobs based on the utilisation of the connection pool
+ * of the Alfresco {@link DataSource}, so that maintenance work does not compete with user requests for database connections. Once
+ * the utilisation reaches the configured pause threshold, workers are paused before processing their next unit of work until the
+ * utilisation drops to the resume threshold (or a maximum pause time has elapsed). The pool metrics are read via reflection to support
+ * the different connection pool implementations (e.g. Commons DBCP 1.x / 2.x, Tomcat JDBC) without a compile-time dependency.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class DataSourceBackPressure implements InitializingBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataSourceBackPressure.class);
+
+    protected boolean enabled;
+
+    protected DataSource dataSource;
+
+    protected double pauseThreshold = 0.8;
+
+    protected double resumeThreshold = 0.6;
+
+    protected long checkInterval = 1000;
+
+    protected long maxPauseTime = 300000;
+
+    protected Method numActiveGetter;
+
+    protected Method maxActiveGetter;
+
+    protected Method numIdleGetter;
+
+    protected Method numWaitersGetter;
+
+    protected boolean saturated;
+
+    protected final AtomicLong pauses = new AtomicLong();
+
+    protected final AtomicLong pausedTime = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "dataSource", this.dataSource);
+        if (this.resumeThreshold > this.pauseThreshold)
+        {
+            throw new IllegalStateException("resumeThreshold must not be greater than pauseThreshold");
+        }
+        if (this.checkInterval <= 0)
+        {
+            throw new IllegalStateException("checkInterval must be a positive value");
+        }
+
+        if (this.enabled)
+        {
+            final Class<?> dataSourceClass = this.dataSource.getClass();
+            this.numActiveGetter = findGetter(dataSourceClass, "getNumActive");
+            this.maxActiveGetter = findGetter(dataSourceClass, "getMaxTotal", "getMaxActive");
+            this.numIdleGetter = findGetter(dataSourceClass, "getNumIdle", "getIdle");
+            this.numWaitersGetter = findGetter(dataSourceClass, "getNumWaiters", "getWaitCount");
+
+            if (this.numActiveGetter == null || this.maxActiveGetter == null)
+            {
+                LOGGER.warn("Connection pool metrics cannot be read from data source of type {} - back-pressure will not be applied",
+                        dataSourceClass);
+                this.enabled = false;
+            }
+        }
+    }
+
+    /**
+     * @param enabled
+     *            the enabled to set
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param dataSource
+     *            the dataSource to set
+     */
+    public void setDataSource(final DataSource dataSource)
+    {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param pauseThreshold
+     *            the ratio of active to maximum connections at which to pause workers
+     */
+    public void setPauseThreshold(final double pauseThreshold)
+    {
+        this.pauseThreshold = pauseThreshold;
+    }
+
+    /**
+     * @param resumeThreshold
+     *            the ratio of active to maximum connections at which to resume paused workers
+     */
+    public void setResumeThreshold(final double resumeThreshold)
+    {
+        this.resumeThreshold = resumeThreshold;
+    }
+
+    /**
+     * @param checkInterval
+     *            the interval in milliseconds in which paused workers re-check the utilisation of the connection pool
+     */
+    public void setCheckInterval(final long checkInterval)
+    {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * @param maxPauseTime
+     *            the maximum time in milliseconds a worker is paused before continuing regardless of the utilisation of the
+     *            connection pool, or {@code 0} / a negative value to pause without a time limit
+     */
+    public void setMaxPauseTime(final long maxPauseTime)
+    {
+        this.maxPauseTime = maxPauseTime;
+    }
+
+    /**
+     * Waits until the utilisation of the connection pool allows a worker to process its next unit of work. This operation returns
+     * immediately if the utilisation is below the configured thresholds or back-pressure is not enabled. This operation must be called
+     * before the transaction for the unit of work is started, as a paused worker would otherwise keep holding a connection of the
+     * saturated pool.
+     */
+    public void awaitCapacity()
+    {
+        if (this.enabled)
+        {
+            long pauseStart = -1;
+            while (this.isSaturated())
+            {
+                final long now = System.currentTimeMillis();
+                if (pauseStart == -1)
+                {
+                    pauseStart = now;
+                    this.pauses.incrementAndGet();
+                }
+                else if (this.maxPauseTime > 0 && now - pauseStart >= this.maxPauseTime)
+                {
+                    LOGGER.debug("Worker paused for the maximum time of {} ms - continuing despite saturated connection pool",
+                            this.maxPauseTime);
+                    break;
+                }
+
+                try
+                {
+                    Thread.sleep(this.checkInterval);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (pauseStart != -1)
+            {
+                this.pausedTime.addAndGet(System.currentTimeMillis() - pauseStart);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of times workers have been paused since startup.
+     *
+     * @return the number of pauses
+     */
+    public long getPauses()
+    {
+        return this.pauses.get();
+    }
+
+    /**
+     * Retrieves the total time in milliseconds workers have been paused since startup.
+     *
+     * @return the total paused time
+     */
+    public long getPausedTime()
+    {
+        return this.pausedTime.get();
+    }
+
+    protected synchronized boolean isSaturated()
+    {
+        final int numActive = this.readMetric(this.numActiveGetter);
+        final int maxActive = this.readMetric(this.maxActiveGetter);
+        final int numIdle = this.readMetric(this.numIdleGetter);
+        final int numWaiters = this.readMetric(this.numWaitersGetter);
+
+        // a non-positive maximum means the pool is unbounded
+        final double utilisation = numWaiters > 0 ? 1 : (maxActive > 0 ? ((double) numActive) / maxActive : 0);
+        final boolean wasSaturated = this.saturated;
+        this.saturated = wasSaturated ? utilisation > this.resumeThreshold : utilisation >= this.pauseThreshold;
+
+        if (this.saturated != wasSaturated)
+        {
+            LOGGER.info("Connection pool utilisation at {} ({} active, {} idle, {} waiting, {} max) - {} workers of maintenance jobs",
+                    utilisation, numActive, numIdle, numWaiters, maxActive, this.saturated ? "pausing" : "resuming");
+        }
+        return this.saturated;
+    }
+
+    protected int readMetric(final Method getter)
+    {
+        int value = 0;
+        if (getter != null)
+        {
+            try
+            {
+                final Object result = getter.invoke(this.dataSource);
+                value = result instanceof Number ? ((Number) result).intValue() : 0;
+            }
+            catch (final IllegalAccessException | InvocationTargetException e)
+            {
+                LOGGER.debug("Failed to read connection pool metric via {}", getter, e);
+            }
+        }
+        return value;
+    }
+
+    protected static Method findGetter(final Class<?> dataSourceClass, final String... methodNames)
+    {
+        Method getter = null;
+        for (int idx = 0; idx < methodNames.length && getter == null; idx++)
+        {
+            try
+            {
+                getter = dataSourceClass.getMethod(methodNames[idx]);
+            }
+            catch (final NoSuchMethodException e)
+            {
+                // try next candidate
+            }
+        }
+        return getter;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+/**
+ * Instances of this class bind a list of IDs as a single SQL array parameter of type {@code bigint[]}, so that statements selecting /
+ * deleting entries by ID lists (e.g. via {@code id = any(?)} on PostgreSQL) have an identical statement text regardless of the number
+ * of IDs, instead of generating an IN-list with one parameter per ID.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class LongIdArrayTypeHandler extends BaseTypeHandler<List<Long>>
+{
+
+    private static final String SQL_TYPE_NAME = "bigint";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNonNullParameter(final PreparedStatement ps, final int i, final List<Long> parameter, final JdbcType jdbcType)
+            throws SQLException
+    {
+        final Array array = ps.getConnection().createArrayOf(SQL_TYPE_NAME, parameter.toArray(new Long[0]));
+        ps.setArray(i, array);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getNullableResult(final ResultSet rs, final String columnName) throws SQLException
+    {
+        return toList(rs.getArray(columnName));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getNullableResult(final ResultSet rs, final int columnIndex) throws SQLException
+    {
+        return toList(rs.getArray(columnIndex));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getNullableResult(final CallableStatement cs, final int columnIndex) throws SQLException
+    {
+        return toList(cs.getArray(columnIndex));
+    }
+
+    protected static List<Long> toList(final Array array) throws SQLException
+    {
+        List<Long> ids = null;
+        if (array != null)
+        {
+            try
+            {
+                final Object[] values = (Object[]) array.getArray();
+                final long[] idValues = new long[values.length];
+                for (int idx = 0; idx < values.length; idx++)
+                {
+                    idValues[idx] = ((Number) values[idx]).longValue();
+                }
+                ids = LongIdArrays.asList(idValues);
+            }
+            finally
+            {
+                array.free();
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * This class provides utility operations on sorted arrays of primitive IDs as used in cleanup operations.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public final class LongIdArrays
+{
+
+    /** An empty array of IDs */
+    public static final long[] EMPTY = new long[0];
+
+    private LongIdArrays()
+    {
+        // NO-OP
+    }
+
+    /**
+     * Sorts the first elements of an array of IDs in ascending order and removes any duplicates.
+     *
+     * @param ids
+     *            the IDs to process - this array may be modified by this operation
+     * @param length
+     *            the number of elements to consider
+     * @return the sorted, duplicate-free IDs
+     */
+    public static long[] sortedUnique(final long[] ids, final int length)
+    {
+        if (length == 0)
+        {
+            return EMPTY;
+        }
+
+        Arrays.sort(ids, 0, length);
+        int uniqueCount = 1;
+        for (int idx = 1; idx < length; idx++)
+        {
+            if (ids[idx] != ids[uniqueCount - 1])
+            {
+                ids[uniqueCount++] = ids[idx];
+            }
+        }
+        return Arrays.copyOf(ids, uniqueCount);
+    }
+
+    /**
+     * Determines the sorted difference between two sorted arrays of IDs via a single merge pass.
+     *
+     * @param sortedIds
+     *            the IDs from which to remove elements, sorted in ascending order
+     * @param sortedExcludedIds
+     *            the IDs to remove, sorted in ascending order
+     * @return the IDs from the first array which are not contained in the second array, sorted in ascending order
+     */
+    public static long[] difference(final long[] sortedIds, final long[] sortedExcludedIds)
+    {
+        if (sortedExcludedIds.length == 0 || sortedIds.length == 0)
+        {
+            return sortedIds;
+        }
+
+        final long[] result = new long[sortedIds.length];
+        int resultCount = 0;
+        int excludedIdx = 0;
+        for (final long id : sortedIds)
+        {
+            while (excludedIdx < sortedExcludedIds.length && sortedExcludedIds[excludedIdx] < id)
+            {
+                excludedIdx++;
+            }
+
+            if (excludedIdx == sortedExcludedIds.length || sortedExcludedIds[excludedIdx] != id)
+            {
+                result[resultCount++] = id;
+            }
+        }
+        return resultCount == result.length ? result : Arrays.copyOf(result, resultCount);
+    }
+
+    /**
+     * Determines the sorted union of two sorted, duplicate-free arrays of IDs via a single merge pass.
+     *
+     * @param sortedIds
+     *            the first IDs, sorted in ascending order without duplicates
+     * @param otherSortedIds
+     *            the second IDs, sorted in ascending order without duplicates
+     * @return the IDs contained in either array, sorted in ascending order without duplicates
+     */
+    public static long[] union(final long[] sortedIds, final long[] otherSortedIds)
+    {
+        if (otherSortedIds.length == 0)
+        {
+            return sortedIds;
+        }
+        if (sortedIds.length == 0)
+        {
+            return otherSortedIds;
+        }
+
+        final long[] result = new long[sortedIds.length + otherSortedIds.length];
+        int resultCount = 0;
+        int idx = 0;
+        int otherIdx = 0;
+        while (idx < sortedIds.length || otherIdx < otherSortedIds.length)
+        {
+            final long id;
+            if (otherIdx == otherSortedIds.length || (idx < sortedIds.length && sortedIds[idx] < otherSortedIds[otherIdx]))
+            {
+                id = sortedIds[idx++];
+            }
+            else if (idx == sortedIds.length || otherSortedIds[otherIdx] < sortedIds[idx])
+            {
+                id = otherSortedIds[otherIdx++];
+            }
+            else
+            {
+                id = sortedIds[idx++];
+                otherIdx++;
+            }
+            result[resultCount++] = id;
+        }
+        return resultCount == result.length ? result : Arrays.copyOf(result, resultCount);
+    }
+
+    /**
+     * Provides a read-only list view of an array of IDs, e.g. for use as a parameter in MyBatis statements iterating over a list of
+     * IDs. Elements are only boxed upon access.
+     *
+     * @param ids
+     *            the IDs to wrap
+     * @return the list view
+     */
+    public static List<Long> asList(final long[] ids)
+    {
+        return new LongArrayList(ids);
+    }
+
+    private static class LongArrayList extends AbstractList<Long> implements RandomAccess
+    {
+
+        private final long[] ids;
+
+        private LongArrayList(final long[] ids)
+        {
+            this.ids = ids;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Long get(final int index)
+        {
+            return Long.valueOf(this.ids[index]);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return this.ids.length;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.Arrays;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * Instances of this class collect numerical IDs selected via MyBatis into a growing primitive buffer, avoiding intermediary lists of
+ * boxed values for large result sets. {@code null} results are ignored.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class LongIdCollector implements ResultHandler<Object>
+{
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+    protected long[] buffer;
+
+    protected int size;
+
+    /**
+     * Creates a new instance of this class with a default initial capacity.
+     */
+    public LongIdCollector()
+    {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a new instance of this class with a specific initial capacity.
+     *
+     * @param initialCapacity
+     *            the initial capacity of the buffer
+     */
+    public LongIdCollector(final int initialCapacity)
+    {
+        this.buffer = new long[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleResult(final ResultContext<? extends Object> resultContext)
+    {
+        final Object resultObject = resultContext.getResultObject();
+        if (resultObject instanceof Number)
+        {
+            this.add(((Number) resultObject).longValue());
+        }
+    }
+
+    /**
+     * Adds an ID to this collector.
+     *
+     * @param id
+     *            the ID to add
+     */
+    public void add(final long id)
+    {
+        if (this.size == this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length + (this.buffer.length >> 1) + 1);
+        }
+        this.buffer[this.size++] = id;
+    }
+
+    /**
+     * Retrieves the number of IDs collected so far.
+     *
+     * @return the number of collected IDs
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Removes all IDs collected so far, retaining the buffer for reuse.
+     */
+    public void clear()
+    {
+        this.size = 0;
+    }
+
+    /**
+     * Retrieves the collected IDs in the order in which they were collected.
+     *
+     * @return the collected IDs
+     */
+    public long[] toArray()
+    {
+        return Arrays.copyOf(this.buffer, this.size);
+    }
+
+    /**
+     * Retrieves the collected IDs sorted in ascending order without any duplicates.
+     *
+     * @return the sorted, duplicate-free IDs
+     */
+    public long[] toSortedUniqueArray()
+    {
+        return LongIdArrays.sortedUnique(Arrays.copyOf(this.buffer, this.size), this.size);
+    }
+}
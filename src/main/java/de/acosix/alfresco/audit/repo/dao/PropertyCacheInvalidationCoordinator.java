@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class coordinate the invalidation of the alf_prop_* entity caches after entries have been deleted by cleanup
+ * operations. Since the entity lookup caches of Alfresco use internal composite keys and value-to-key mappings, individual keys of
+ * deleted entries cannot be evicted selectively, so invalidation always requires a full clear of a cache. Invalidations are never
+ * performed before the deleting transaction has been committed, as concurrent operations could otherwise re-populate a cache with
+ * entries that are still visible to them. Depending on the configured {@link InvalidationMode mode}, this coordinator either clears
+ * the affected caches once per committed transaction, or coalesces all invalidation requests of a cleanup run into a single clear per
+ * cache, keeping track of the number of clears that could be avoided this way.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyCacheInvalidationCoordinator implements InitializingBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyCacheInvalidationCoordinator.class);
+
+    protected final String txnResourceKey = PropertyCacheInvalidationCoordinator.class.getName() + "-" + System.identityHashCode(this);
+
+    protected InvalidationMode invalidationMode = InvalidationMode.PER_TRANSACTION;
+
+    protected final Set<SimpleCache<Serializable, Object>> pendingCaches = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    protected final AtomicLong requestedClears = new AtomicLong();
+
+    protected final AtomicLong performedClears = new AtomicLong();
+
+    protected final AtomicLong invalidatedEntries = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "invalidationMode", this.invalidationMode);
+    }
+
+    /**
+     * @param invalidationMode
+     *            the invalidationMode to set
+     */
+    public void setInvalidationMode(final InvalidationMode invalidationMode)
+    {
+        this.invalidationMode = invalidationMode;
+    }
+
+    /**
+     * Requests the invalidation of a cache after entries cached in it have been deleted in the current transaction. The invalidation
+     * takes effect only once the transaction has been committed.
+     *
+     * @param cache
+     *            the cache to invalidate
+     * @param deletedEntries
+     *            the number of deleted entries
+     */
+    public void invalidate(final SimpleCache<Serializable, Object> cache, final int deletedEntries)
+    {
+        ParameterCheck.mandatory("cache", cache);
+
+        this.requestedClears.incrementAndGet();
+        this.invalidatedEntries.addAndGet(deletedEntries);
+
+        Set<SimpleCache<Serializable, Object>> txnCaches = AlfrescoTransactionSupport.getResource(this.txnResourceKey);
+        if (txnCaches == null)
+        {
+            txnCaches = Collections.newSetFromMap(new IdentityHashMap<>());
+            AlfrescoTransactionSupport.bindResource(this.txnResourceKey, txnCaches);
+
+            final Set<SimpleCache<Serializable, Object>> committedCaches = txnCaches;
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void afterCommit()
+                {
+                    PropertyCacheInvalidationCoordinator.this.committed(committedCaches);
+                }
+            });
+        }
+        txnCaches.add(cache);
+    }
+
+    /**
+     * Performs all pending cache invalidations and logs / resets the invalidation statistics of the current run. This operation should
+     * be called at the end of each cleanup run.
+     */
+    public void flush()
+    {
+        final List<SimpleCache<Serializable, Object>> dueCaches;
+        synchronized (this.pendingCaches)
+        {
+            dueCaches = new ArrayList<>(this.pendingCaches);
+            this.pendingCaches.clear();
+        }
+        this.clear(dueCaches);
+
+        final long requestedClears = this.requestedClears.getAndSet(0);
+        final long performedClears = this.performedClears.getAndSet(0);
+        final long invalidatedEntries = this.invalidatedEntries.getAndSet(0);
+        LOGGER.info("Cache invalidation statistics: {} clears requested for {} deleted entries, {} clears performed, {} clears avoided",
+                requestedClears, invalidatedEntries, performedClears, Math.max(0, requestedClears - performedClears));
+    }
+
+    /**
+     * Retrieves the number of cache clears requested in the current run.
+     *
+     * @return the number of requested cache clears
+     */
+    public long getRequestedClears()
+    {
+        return this.requestedClears.get();
+    }
+
+    /**
+     * Retrieves the number of cache clears actually performed in the current run.
+     *
+     * @return the number of performed cache clears
+     */
+    public long getPerformedClears()
+    {
+        return this.performedClears.get();
+    }
+
+    /**
+     * Retrieves the number of cache clears avoided in the current run by coalescing invalidation requests.
+     *
+     * @return the number of avoided cache clears
+     */
+    public long getAvoidedClears()
+    {
+        synchronized (this.pendingCaches)
+        {
+            // pending caches still require a clear and do not count as avoided yet
+            return Math.max(0, this.requestedClears.get() - this.performedClears.get() - this.pendingCaches.size());
+        }
+    }
+
+    /**
+     * Retrieves the number of deleted entries for which cache invalidations have been requested in the current run.
+     *
+     * @return the number of deleted entries
+     */
+    public long getInvalidatedEntries()
+    {
+        return this.invalidatedEntries.get();
+    }
+
+    protected void committed(final Set<SimpleCache<Serializable, Object>> caches)
+    {
+        switch (this.invalidationMode)
+        {
+            case PER_RUN:
+                synchronized (this.pendingCaches)
+                {
+                    this.pendingCaches.addAll(caches);
+                }
+                break;
+            case PER_TRANSACTION:
+            default:
+                this.clear(new ArrayList<>(caches));
+        }
+    }
+
+    protected void clear(final List<SimpleCache<Serializable, Object>> caches)
+    {
+        for (final SimpleCache<Serializable, Object> cache : caches)
+        {
+            // due to complex key->entry + valueKey->entry mappings, it is easier + more efficient to just clear the cache
+            // there is also no way to limit the clearing to a particular cache region in case of cache re-use (default)
+            // (blame Alfresco's cache design)
+            cache.clear();
+            this.performedClears.incrementAndGet();
+        }
+    }
+
+    /**
+     * Defines the modes of invalidating caches supported by this coordinator.
+     *
+     * @author Axel Faust
+     */
+    public static enum InvalidationMode
+    {
+        /** clear each affected cache once after the commit of each transaction deleting entries */
+        PER_TRANSACTION,
+        /** clear each affected cache once at the end of a cleanup run */
+        PER_RUN;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+
+/**
+ * A simple result entity for a row of a combined scan of a table referencing alf_prop_root and / or alf_prop_value entries via
+ * multiple columns.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyReferenceRow implements Serializable
+{
+
+    private static final long serialVersionUID = 4127705214462376102L;
+
+    protected Long rootId;
+
+    protected Long valueId1;
+
+    protected Long valueId2;
+
+    protected Long valueId3;
+
+    /**
+     * Retrieves the referenced alf_prop_root ID
+     *
+     * @return the referenced alf_prop_root ID, or {@code null} if the scanned table does not provide this reference
+     */
+    public Long getRootId()
+    {
+        return this.rootId;
+    }
+
+    /**
+     * Sets the referenced alf_prop_root ID
+     *
+     * @param rootId
+     *            the referenced alf_prop_root ID
+     */
+    public void setRootId(final Long rootId)
+    {
+        this.rootId = rootId;
+    }
+
+    /**
+     * Retrieves the first referenced alf_prop_value ID
+     *
+     * @return the first referenced alf_prop_value ID, or {@code null} if the scanned table does not provide this reference
+     */
+    public Long getValueId1()
+    {
+        return this.valueId1;
+    }
+
+    /**
+     * Sets the first referenced alf_prop_value ID
+     *
+     * @param valueId1
+     *            the first referenced alf_prop_value ID
+     */
+    public void setValueId1(final Long valueId1)
+    {
+        this.valueId1 = valueId1;
+    }
+
+    /**
+     * Retrieves the second referenced alf_prop_value ID
+     *
+     * @return the second referenced alf_prop_value ID, or {@code null} if the scanned table does not provide this reference
+     */
+    public Long getValueId2()
+    {
+        return this.valueId2;
+    }
+
+    /**
+     * Sets the second referenced alf_prop_value ID
+     *
+     * @param valueId2
+     *            the second referenced alf_prop_value ID
+     */
+    public void setValueId2(final Long valueId2)
+    {
+        this.valueId2 = valueId2;
+    }
+
+    /**
+     * Retrieves the third referenced alf_prop_value ID
+     *
+     * @return the third referenced alf_prop_value ID, or {@code null} if the scanned table does not provide this reference
+     */
+    public Long getValueId3()
+    {
+        return this.valueId3;
+    }
+
+    /**
+     * Sets the third referenced alf_prop_value ID
+     *
+     * @param valueId3
+     *            the third referenced alf_prop_value ID
+     */
+    public void setValueId3(final Long valueId3)
+    {
+        this.valueId3 = valueId3;
+    }
+
+}
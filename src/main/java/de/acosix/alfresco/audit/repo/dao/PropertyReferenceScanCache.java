@@ -0,0 +1,367 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.alfresco.util.ParameterCheck;
+import org.springframework.beans.factory.InitializingBean;
+
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+
+/**
+ * Instances of this class hold the short-lived results of combined scans of the tables referencing alf_prop_* entries, so that the
+ * cleanup jobs of the individual alf_prop_* tables can share a single scan of each referencing table per block of IDs instead of each
+ * running their own per-column queries. Scans are performed for blocks of IDs aligned to the configured block size, so that work items
+ * of different cleanup jobs / runs covering the same block can reuse the results. Concurrent requests for the same block wait for and
+ * share the single scan in progress.
+ *
+ * Since cached results may not include references created after the scan, ID list deletes must re-check references while shared scans
+ * are enabled.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyReferenceScanCache implements InitializingBean
+{
+
+    protected boolean enabled;
+
+    protected int blockSize = 10000;
+
+    protected long timeToLive = 60000;
+
+    protected int maxBlocks = 64;
+
+    // access-ordered to evict least recently used blocks first
+    protected final Map<BlockKey, CachedBlock> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected final AtomicLong scans = new AtomicLong();
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        if (this.enabled && (this.blockSize <= 0 || this.maxBlocks <= 0))
+        {
+            throw new IllegalStateException("blockSize and maxBlocks must be positive values");
+        }
+    }
+
+    /**
+     * @param enabled
+     *            the enabled to set
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param blockSize
+     *            the number of IDs covered by a single scan of a referencing table
+     */
+    public void setBlockSize(final int blockSize)
+    {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @param timeToLive
+     *            the time in milliseconds for which the results of a scan may be reused
+     */
+    public void setTimeToLive(final long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param maxBlocks
+     *            the maximum number of scan results to hold at any time
+     */
+    public void setMaxBlocks(final int maxBlocks)
+    {
+        this.maxBlocks = maxBlocks;
+    }
+
+    /**
+     * @return the enabled
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @return the blockSize
+     */
+    public int getBlockSize()
+    {
+        return this.blockSize;
+    }
+
+    /**
+     * @return the maxBlocks
+     */
+    public int getMaxBlocks()
+    {
+        return this.maxBlocks;
+    }
+
+    /**
+     * Retrieves the results of a scan for a block of IDs, either reusing cached results / a scan in progress, or by running the scan.
+     *
+     * @param scan
+     *            the name of the scan
+     * @param blockIndex
+     *            the index of the block of IDs, i.e. the lowest ID of the block divided by the {@link #setBlockSize(int) block size}
+     * @param loader
+     *            the loader to run the scan
+     * @return the results of the scan
+     */
+    public ScanResult getOrLoad(final String scan, final long blockIndex, final Supplier<ScanResult> loader)
+    {
+        ParameterCheck.mandatoryString("scan", scan);
+        ParameterCheck.mandatory("loader", loader);
+
+        final BlockKey key = new BlockKey(scan, blockIndex);
+        final long now = System.currentTimeMillis();
+
+        final CachedBlock block;
+        boolean load = false;
+        synchronized (this.blocks)
+        {
+            CachedBlock cachedBlock = this.blocks.get(key);
+            if (cachedBlock != null && now - cachedBlock.getCreated() > this.timeToLive)
+            {
+                this.blocks.remove(key);
+                cachedBlock = null;
+            }
+
+            if (cachedBlock == null)
+            {
+                cachedBlock = new CachedBlock(new FutureTask<>(loader::get), now);
+                this.blocks.put(key, cachedBlock);
+                load = true;
+
+                final Iterator<CachedBlock> eldest = this.blocks.values().iterator();
+                while (this.blocks.size() > this.maxBlocks && eldest.hasNext())
+                {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            block = cachedBlock;
+        }
+
+        if (load)
+        {
+            this.scans.incrementAndGet();
+            block.getTask().run();
+        }
+        else
+        {
+            this.hits.incrementAndGet();
+        }
+
+        try
+        {
+            return block.getTask().get();
+        }
+        catch (final ExecutionException e)
+        {
+            synchronized (this.blocks)
+            {
+                this.blocks.remove(key, block);
+            }
+            final Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new IllegalStateException("Failed to scan references for block " + blockIndex + " of " + scan, cause);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for scan of references for block " + blockIndex + " of " + scan);
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear()
+    {
+        synchronized (this.blocks)
+        {
+            this.blocks.clear();
+        }
+    }
+
+    /**
+     * Retrieves the number of scans performed since startup.
+     *
+     * @return the number of scans
+     */
+    public long getScans()
+    {
+        return this.scans.get();
+    }
+
+    /**
+     * Retrieves the number of requests served from cached results / a scan in progress since startup.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * Instances of this class hold the IDs of alf_prop_* entries found to be referenced in a single scan of a referencing table.
+     *
+     * @author Axel Faust
+     */
+    public static class ScanResult
+    {
+
+        private static final long[] NO_IDS = new long[0];
+
+        protected final long[] rootIds;
+
+        protected final long[] valueIds;
+
+        protected final Map<PropertyValueTableType, long[]> instanceIds;
+
+        public ScanResult(final long[] rootIds, final long[] valueIds, final Map<PropertyValueTableType, long[]> instanceIds)
+        {
+            this.rootIds = rootIds != null ? rootIds : NO_IDS;
+            this.valueIds = valueIds != null ? valueIds : NO_IDS;
+            this.instanceIds = instanceIds != null && !instanceIds.isEmpty()
+                    ? Collections.unmodifiableMap(new EnumMap<>(instanceIds))
+                    : Collections.emptyMap();
+        }
+
+        /**
+         * @return the sorted IDs of referenced alf_prop_root entries
+         */
+        public long[] getRootIds()
+        {
+            return this.rootIds;
+        }
+
+        /**
+         * @return the sorted IDs of referenced alf_prop_value entries
+         */
+        public long[] getValueIds()
+        {
+            return this.valueIds;
+        }
+
+        /**
+         * @param valueTableType
+         *            the type of value table
+         * @return the sorted IDs of referenced alf_prop_*_value entries of the specified type of value table
+         */
+        public long[] getInstanceIds(final PropertyValueTableType valueTableType)
+        {
+            return this.instanceIds.getOrDefault(valueTableType, NO_IDS);
+        }
+    }
+
+    /**
+     * Instances of this class hold a scan result / scan in progress.
+     *
+     * @author Axel Faust
+     */
+    protected static class CachedBlock
+    {
+
+        protected final FutureTask<ScanResult> task;
+
+        protected final long created;
+
+        protected CachedBlock(final FutureTask<ScanResult> task, final long created)
+        {
+            this.task = task;
+            this.created = created;
+        }
+
+        public FutureTask<ScanResult> getTask()
+        {
+            return this.task;
+        }
+
+        public long getCreated()
+        {
+            return this.created;
+        }
+    }
+
+    /**
+     * Instances of this class identify a block of IDs of a specific scan.
+     *
+     * @author Axel Faust
+     */
+    protected static class BlockKey
+    {
+
+        protected final String scan;
+
+        protected final long blockIndex;
+
+        protected BlockKey(final String scan, final long blockIndex)
+        {
+            this.scan = scan;
+            this.blockIndex = blockIndex;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.scan, Long.valueOf(this.blockIndex));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object obj)
+        {
+            boolean equal = this == obj;
+            if (!equal && obj instanceof BlockKey)
+            {
+                final BlockKey other = (BlockKey) obj;
+                equal = this.blockIndex == other.blockIndex && this.scan.equals(other.scan);
+            }
+            return equal;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+
+/**
+ * Instances of this class manage a persistent queue of alf_prop_root entries which are candidates for a targeted cleanup, e.g. as
+ * their referencing audit entries are about to be cleared. Candidates are stored as chunks of IDs via the {@link AttributeService
+ * attribute service}, and are processed / removed chunk by chunk. Candidates can either be enqueued as part of the transaction which
+ * removes the references, or captured from audit entries about to be cleared, in which case each chunk is stored in its own
+ * transaction. Since candidates are always re-checked before being deleted, enqueueing entries which end up still being referenced
+ * (e.g. if clearing the audit entries fails) is harmless.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyRootCleanupCandidateQueue implements InitializingBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyRootCleanupCandidateQueue.class);
+
+    private static final String ATTR_QUEUE = PropertyRootCleanupCandidateQueue.class.getSimpleName();
+
+    protected AttributeService attributeService;
+
+    protected PropertyTablesCleanupDAO propertyTablesCleanupDAO;
+
+    protected TransactionService transactionService;
+
+    protected int chunkSize = 1000;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "attributeService", this.attributeService);
+        PropertyCheck.mandatory(this, "propertyTablesCleanupDAO", this.propertyTablesCleanupDAO);
+        PropertyCheck.mandatory(this, "transactionService", this.transactionService);
+        if (this.chunkSize <= 0)
+        {
+            throw new IllegalStateException("chunkSize must be a positive integer");
+        }
+    }
+
+    /**
+     * @param attributeService
+     *            the attributeService to set
+     */
+    public void setAttributeService(final AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param propertyTablesCleanupDAO
+     *            the propertyTablesCleanupDAO to set
+     */
+    public void setPropertyTablesCleanupDAO(final PropertyTablesCleanupDAO propertyTablesCleanupDAO)
+    {
+        this.propertyTablesCleanupDAO = propertyTablesCleanupDAO;
+    }
+
+    /**
+     * @param transactionService
+     *            the transactionService to set
+     */
+    public void setTransactionService(final TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param chunkSize
+     *            the maximum number of IDs to store in a single chunk
+     */
+    public void setChunkSize(final int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds the alf_prop_root entries holding the values of audit entries about to be cleared to this queue. This operation must be
+     * called before the audit entries are cleared. The IDs are streamed from the database and each chunk is stored in its own
+     * transaction as soon as it is complete, so that neither the memory required nor the size of any transaction depends on the
+     * number of audit entries.
+     *
+     * @param applicationName
+     *            the name of the audit application
+     * @param fromTimeInclusive
+     *            the inclusive start of the time range of audit entries to be cleared - may be {@code null} if not restricted
+     * @param toTimeExclusive
+     *            the exclusive end of the time range of audit entries to be cleared - may be {@code null} if not restricted
+     * @return the number of enqueued alf_prop_root entries
+     */
+    public int enqueueAuditEntryValues(final String applicationName, final Long fromTimeInclusive, final Long toTimeExclusive)
+    {
+        final RetryingTransactionHelper retryingTransactionHelper = this.transactionService.getRetryingTransactionHelper();
+        final LongIdCollector collector = new LongIdCollector(this.chunkSize);
+        final int[] enqueued = new int[1];
+        final Runnable storeChunk = () -> {
+            final long[] chunk = collector.toSortedUniqueArray();
+            retryingTransactionHelper.doInTransaction(() -> {
+                this.storeChunk(chunk);
+                return null;
+            }, false, true);
+            enqueued[0] += chunk.length;
+            collector.clear();
+        };
+
+        this.propertyTablesCleanupDAO.streamAuditValuesIdsOfAuditEntries(applicationName, fromTimeInclusive, toTimeExclusive, id -> {
+            collector.add(id);
+            if (collector.size() >= this.chunkSize)
+            {
+                storeChunk.run();
+            }
+            return true;
+        });
+        if (collector.size() > 0)
+        {
+            storeChunk.run();
+        }
+
+        LOGGER.debug("Enqueued {} alf_prop_root entries of audit entries of application {} as cleanup candidates", enqueued[0],
+                applicationName);
+        return enqueued[0];
+    }
+
+    /**
+     * Adds alf_prop_root entries to this queue. This operation must be called within the transaction which removes the references to
+     * the entries.
+     *
+     * @param rootIds
+     *            the IDs of the alf_prop_root entries
+     */
+    public void enqueue(final long[] rootIds)
+    {
+        ParameterCheck.mandatory("rootIds", rootIds);
+
+        for (int offset = 0; offset < rootIds.length; offset += this.chunkSize)
+        {
+            final long[] chunk = Arrays.copyOfRange(rootIds, offset, Math.min(rootIds.length, offset + this.chunkSize));
+            this.storeChunk(chunk);
+        }
+        LOGGER.debug("Enqueued {} alf_prop_root entries as cleanup candidates", rootIds.length);
+    }
+
+    protected void storeChunk(final long[] chunk)
+    {
+        this.attributeService.setAttribute(chunk, AuditModuleConstants.SERVICE_NAMESPACE, ATTR_QUEUE, GUID.generate());
+    }
+
+    /**
+     * Retrieves the next chunk of candidates from this queue without removing it.
+     *
+     * @return the next chunk or {@code null} if the queue is empty
+     */
+    public CandidateChunk peek()
+    {
+        final CandidateChunk[] chunk = new CandidateChunk[1];
+        this.attributeService.getAttributes((id, value, keys) -> {
+            if (value instanceof long[] && keys.length == 3)
+            {
+                chunk[0] = new CandidateChunk(keys[2], (long[]) value);
+                return false;
+            }
+            return true;
+        }, AuditModuleConstants.SERVICE_NAMESPACE, ATTR_QUEUE);
+        return chunk[0];
+    }
+
+    /**
+     * Removes a chunk of candidates from this queue after it has been processed.
+     *
+     * @param chunk
+     *            the chunk to remove
+     */
+    public void remove(final CandidateChunk chunk)
+    {
+        ParameterCheck.mandatory("chunk", chunk);
+        this.attributeService.removeAttribute(AuditModuleConstants.SERVICE_NAMESPACE, ATTR_QUEUE, chunk.getKey());
+    }
+
+    /**
+     * Instances of this class represent a single chunk of candidates stored in the queue.
+     *
+     * @author Axel Faust
+     */
+    public static class CandidateChunk
+    {
+
+        protected final Serializable key;
+
+        protected final long[] rootIds;
+
+        protected CandidateChunk(final Serializable key, final long[] rootIds)
+        {
+            this.key = key;
+            this.rootIds = rootIds;
+        }
+
+        public Serializable getKey()
+        {
+            return this.key;
+        }
+
+        public long[] getRootIds()
+        {
+            return this.rootIds;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+
+/**
+ * A simple result / parameter entity for the relation between a duplicate alf_prop_string_value entry and the surviving entry with
+ * the identical value.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyStringValueDuplicate implements Serializable
+{
+
+    private static final long serialVersionUID = 4433710185623096921L;
+
+    protected Long survivorId;
+
+    protected Long duplicateId;
+
+    /**
+     * Retrieves the ID of the surviving alf_prop_string_value entry
+     *
+     * @return the ID of the surviving entry
+     */
+    public Long getSurvivorId()
+    {
+        return this.survivorId;
+    }
+
+    /**
+     * Sets the ID of the surviving alf_prop_string_value entry
+     *
+     * @param survivorId
+     *            the ID of the surviving entry
+     */
+    public void setSurvivorId(final Long survivorId)
+    {
+        this.survivorId = survivorId;
+    }
+
+    /**
+     * Retrieves the ID of the duplicate alf_prop_string_value entry
+     *
+     * @return the ID of the duplicate entry
+     */
+    public Long getDuplicateId()
+    {
+        return this.duplicateId;
+    }
+
+    /**
+     * Sets the ID of the duplicate alf_prop_string_value entry
+     *
+     * @param duplicateId
+     *            the ID of the duplicate entry
+     */
+    public void setDuplicateId(final Long duplicateId)
+    {
+        this.duplicateId = duplicateId;
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Instances of this class limit the number of work items processed concurrently across all cleanup jobs of the alf_prop_* tables
+ * sharing the same instance, e.g. to keep the number of database connections used for maintenance work within a global budget
+ * regardless of how many jobs run at the same time. Permits are handed out in order of request, so capacity released by one job
+ * (e.g. after it has completed its work) is immediately available to any other job waiting for it.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyTablesCleanupConcurrencyBudget implements InitializingBean
+{
+
+    protected int maxConcurrentWorkItems;
+
+    protected Semaphore permits;
+
+    protected final AtomicInteger activeWorkItems = new AtomicInteger();
+
+    protected final AtomicInteger peakActiveWorkItems = new AtomicInteger();
+
+    protected final AtomicLong waitTime = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        this.permits = this.maxConcurrentWorkItems > 0 ? new Semaphore(this.maxConcurrentWorkItems, true) : null;
+    }
+
+    /**
+     * @param maxConcurrentWorkItems
+     *            the maximum number of work items to be processed concurrently by all jobs, or {@code 0} / a negative value to not
+     *            apply any limit
+     */
+    public void setMaxConcurrentWorkItems(final int maxConcurrentWorkItems)
+    {
+        this.maxConcurrentWorkItems = maxConcurrentWorkItems;
+    }
+
+    /**
+     * Acquires a permit to process a work item, blocking until a permit becomes available if the budget is exhausted. As the budget
+     * is meant to limit the number of database connections in use, this operation must be called before the transaction processing
+     * the work item is started.
+     */
+    public void acquire()
+    {
+        if (this.permits != null && !this.permits.tryAcquire())
+        {
+            final long start = System.currentTimeMillis();
+            this.permits.acquireUninterruptibly();
+            this.waitTime.addAndGet(System.currentTimeMillis() - start);
+        }
+
+        final int active = this.activeWorkItems.incrementAndGet();
+        this.peakActiveWorkItems.accumulateAndGet(active, Math::max);
+    }
+
+    /**
+     * Releases a permit after a work item has been processed.
+     */
+    public void release()
+    {
+        this.activeWorkItems.decrementAndGet();
+        if (this.permits != null)
+        {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Retrieves the number of work items currently being processed.
+     *
+     * @return the number of active work items
+     */
+    public int getActiveWorkItems()
+    {
+        return this.activeWorkItems.get();
+    }
+
+    /**
+     * Retrieves the highest number of work items processed concurrently since startup.
+     *
+     * @return the peak number of active work items
+     */
+    public int getPeakActiveWorkItems()
+    {
+        return this.peakActiveWorkItems.get();
+    }
+
+    /**
+     * Retrieves the total time in milliseconds workers have waited for a permit since startup.
+     *
+     * @return the total wait time
+     */
+    public long getWaitTime()
+    {
+        return this.waitTime.get();
+    }
+}
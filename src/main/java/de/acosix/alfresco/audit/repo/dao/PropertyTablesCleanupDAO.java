@@ -16,6 +16,8 @@
 package de.acosix.alfresco.audit.repo.dao;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
 
 import org.alfresco.repo.audit.AuditComponent;
 import org.alfresco.service.cmr.attributes.AttributeService;
@@ -70,6 +72,17 @@ public interface PropertyTablesCleanupDAO
      */
     List<Long> listPropertyRootIds(int maxItems, Long fromIdExclusive);
 
+    /**
+     * Retrieves a specific subset of existing alf_prop_root IDs higher than the provided offset without boxing individual IDs.
+     *
+     * @param maxItems
+     *            the number of IDs to retrieve
+     * @param fromIdExclusive
+     *            the ID to use as the offset (results must be higher than this)
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyRootIdsAsArray(int maxItems, Long fromIdExclusive);
+
     /**
      * Retrieves a specific subset of existing alf_prop_value IDs higher than
      * the provided offset.
@@ -82,6 +95,17 @@ public interface PropertyTablesCleanupDAO
      */
     List<Long> listPropertyValueIds(int maxItems, Long fromIdExclusive);
 
+    /**
+     * Retrieves a specific subset of existing alf_prop_value IDs higher than the provided offset without boxing individual IDs.
+     *
+     * @param maxItems
+     *            the number of IDs to retrieve
+     * @param fromIdExclusive
+     *            the ID to use as the offset (results must be higher than this)
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyValueIdsAsArray(int maxItems, Long fromIdExclusive);
+
     /**
      * Retrieves a specific subset of existing alf_prop_*_value IDs higher than
      * the provided offset.
@@ -96,6 +120,54 @@ public interface PropertyTablesCleanupDAO
      */
     List<Long> listPropertyValueInstanceIds(PropertyValueTableType valueTableType, int maxItems, Long fromIdExclusive);
 
+    /**
+     * Retrieves a specific subset of existing alf_prop_*_value IDs higher than the provided offset without boxing individual IDs.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to lookup existing IDs
+     * @param maxItems
+     *            the number of IDs to retrieve
+     * @param fromIdExclusive
+     *            the ID to use as the offset (results must be higher than this)
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyValueInstanceIdsAsArray(PropertyValueTableType valueTableType, int maxItems, Long fromIdExclusive);
+
+    /**
+     * Retrieves all existing alf_prop_root IDs within a specific range of IDs.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include
+     * @param toIdInclusive
+     *            the last ID to include
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyRootIdsInRangeAsArray(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Retrieves all existing alf_prop_value IDs within a specific range of IDs.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include
+     * @param toIdInclusive
+     *            the last ID to include
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyValueIdsInRangeAsArray(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Retrieves all existing alf_prop_*_value IDs within a specific range of IDs.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to lookup existing IDs
+     * @param fromIdInclusive
+     *            the first ID to include
+     * @param toIdInclusive
+     *            the last ID to include
+     * @return the retrieved IDs in ascending order
+     */
+    long[] listPropertyValueInstanceIdsInRangeAsArray(PropertyValueTableType valueTableType, Long fromIdInclusive, Long toIdInclusive);
+
     /**
      * List all alf_prop_root IDs that are still being referenced from any
      * alf_audit_* or alf_prop_* table.
@@ -108,6 +180,18 @@ public interface PropertyTablesCleanupDAO
      */
     List<Long> listUsedPropertyRootIds(Long fromIdInclusive, Long toIdInclusive);
 
+    /**
+     * List all alf_prop_root IDs that are still being referenced from any alf_audit_* or alf_prop_* table without boxing individual
+     * IDs.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include in checks
+     * @param toIdInclusive
+     *            the last ID to include in checks
+     * @return the used IDs in ascending order without duplicates
+     */
+    long[] listUsedPropertyRootIdsAsArray(Long fromIdInclusive, Long toIdInclusive);
+
     /**
      * List all alf_prop_value IDs that are still being referenced from any
      * alf_audit_* or alf_prop_* table.
@@ -120,6 +204,18 @@ public interface PropertyTablesCleanupDAO
      */
     List<Long> listUsedPropertyValueIds(Long fromIdInclusive, Long toIdInclusive);
 
+    /**
+     * List all alf_prop_value IDs that are still being referenced from any alf_audit_* or alf_prop_* table without boxing individual
+     * IDs.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include in checks
+     * @param toIdInclusive
+     *            the last ID to include in checks
+     * @return the used IDs in ascending order without duplicates
+     */
+    long[] listUsedPropertyValueIdsAsArray(Long fromIdInclusive, Long toIdInclusive);
+
     /**
      * List all alf_prop_*_value IDs that are still being referenced from the
      * alf_prop_value table via its long_value column.
@@ -136,6 +232,21 @@ public interface PropertyTablesCleanupDAO
     List<Long> listUsedPropertyValueInstanceIds(PropertyValueTableType valueTableType, Long fromIdInclusive,
             Long toIdInclusive);
 
+    /**
+     * List all alf_prop_*_value IDs that are still being referenced from the alf_prop_value table via its long_value column without
+     * boxing individual IDs.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to lookup used reference
+     *            IDs
+     * @param fromIdInclusive
+     *            the first ID to include in checks
+     * @param toIdInclusive
+     *            the last ID to include in checks
+     * @return the used instance IDs in ascending order without duplicates
+     */
+    long[] listUsedPropertyValueInstanceIdsAsArray(PropertyValueTableType valueTableType, Long fromIdInclusive, Long toIdInclusive);
+
     /**
      * Deletes a set of alf_prop_root entries that have been determined to be
      * unused.
@@ -145,6 +256,14 @@ public interface PropertyTablesCleanupDAO
      */
     void deletePropertyRoots(List<Long> ids);
 
+    /**
+     * Deletes a set of alf_prop_root entries that have been determined to be unused.
+     *
+     * @param ids
+     *            the IDs for which to delete entries
+     */
+    void deletePropertyRoots(long[] ids);
+
     /**
      * Deletes a set of alf_prop_value entries that have been determined to be
      * unused.
@@ -154,6 +273,14 @@ public interface PropertyTablesCleanupDAO
      */
     void deletePropertyValues(List<Long> ids);
 
+    /**
+     * Deletes a set of alf_prop_value entries that have been determined to be unused.
+     *
+     * @param ids
+     *            the IDs for which to delete entries
+     */
+    void deletePropertyValues(long[] ids);
+
     /**
      * Deletes a set of alf_prop_*_value entries that have been determined to be
      * unused.
@@ -165,6 +292,336 @@ public interface PropertyTablesCleanupDAO
      */
     void deletePropertyValueInstances(PropertyValueTableType valueTableType, List<Long> ids);
 
+    /**
+     * Deletes a set of alf_prop_*_value entries that have been determined to be unused.
+     *
+     * @param valueTableType
+     *            type of entries to delete.
+     * @param ids
+     *            the IDs for which to delete entries
+     */
+    void deletePropertyValueInstances(PropertyValueTableType valueTableType, long[] ids);
+
+    /**
+     * Deletes all alf_prop_root entries within a specific range of IDs that are not referenced from any alf_audit_* or alf_prop_*
+     * table, using a single statement which performs the reference checks as part of the delete.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include in the delete
+     * @param toIdInclusive
+     *            the last ID to include in the delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyRoots(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Deletes all alf_prop_value entries within a specific range of IDs that are not referenced from any alf_audit_* or alf_prop_*
+     * table, using a single statement which performs the reference checks as part of the delete.
+     *
+     * @param fromIdInclusive
+     *            the first ID to include in the delete
+     * @param toIdInclusive
+     *            the last ID to include in the delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyValues(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Deletes all alf_prop_*_value entries within a specific range of IDs that are not referenced from the alf_prop_value table via
+     * its long_value column, using a single statement which performs the reference check as part of the delete.
+     *
+     * @param valueTableType
+     *            type of entries to delete
+     * @param fromIdInclusive
+     *            the first ID to include in the delete
+     * @param toIdInclusive
+     *            the last ID to include in the delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyValueInstances(PropertyValueTableType valueTableType, Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Loads the IDs of all alf_prop_root entries within a range of IDs that are referenced from any alf_audit_* or alf_prop_* table
+     * into a compressed bitmap, reading each referencing column once.
+     *
+     * @param fromIdInclusive
+     *            the first referenced ID to include - may be {@code null}
+     * @param toIdInclusive
+     *            the last referenced ID to include - may be {@code null}
+     * @return the bitmap of referenced IDs
+     */
+    RoaringIdBitmap loadReferencedPropertyRootIds(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Loads the IDs of all alf_prop_value entries within a range of IDs that are referenced from any alf_audit_* or alf_prop_* table
+     * into a compressed bitmap, reading each referencing column once.
+     *
+     * @param fromIdInclusive
+     *            the first referenced ID to include - may be {@code null}
+     * @param toIdInclusive
+     *            the last referenced ID to include - may be {@code null}
+     * @return the bitmap of referenced IDs
+     */
+    RoaringIdBitmap loadReferencedPropertyValueIds(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Loads the IDs of all alf_prop_*_value entries within a range of IDs that are referenced from the alf_prop_value table via its
+     * long_value column into a compressed bitmap, reading the referencing column once.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to load referenced IDs
+     * @param fromIdInclusive
+     *            the first referenced ID to include - may be {@code null}
+     * @param toIdInclusive
+     *            the last referenced ID to include - may be {@code null}
+     * @return the bitmap of referenced IDs
+     */
+    RoaringIdBitmap loadReferencedPropertyValueInstanceIds(PropertyValueTableType valueTableType, Long fromIdInclusive,
+            Long toIdInclusive);
+
+    /**
+     * Deletes a set of alf_prop_root entries that have been determined to be unused based on a potentially outdated view of
+     * references, re-checking the references of each entry as part of the delete.
+     *
+     * @param ids
+     *            the IDs of candidate entries to delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyRoots(long[] ids);
+
+    /**
+     * Deletes a set of alf_prop_value entries that have been determined to be unused based on a potentially outdated view of
+     * references, re-checking the references of each entry as part of the delete.
+     *
+     * @param ids
+     *            the IDs of candidate entries to delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyValues(long[] ids);
+
+    /**
+     * Deletes a set of alf_prop_*_value entries that have been determined to be unused based on a potentially outdated view of
+     * references, re-checking the references of each entry as part of the delete.
+     *
+     * @param valueTableType
+     *            type of entries to delete
+     * @param ids
+     *            the IDs of candidate entries to delete
+     * @return the number of deleted entries
+     */
+    int deleteUnusedPropertyValueInstances(PropertyValueTableType valueTableType, long[] ids);
+
+    /**
+     * Lists the IDs of all alf_prop_value entries linked as keys or values from a set of alf_prop_root entries. This operation is
+     * intended to collect candidates for a targeted downstream cleanup before the alf_prop_root entries are deleted, as the
+     * alf_prop_link entries are removed by cascading deletes.
+     *
+     * @param rootIds
+     *            the IDs of the alf_prop_root entries
+     * @return the sorted, duplicate-free array of linked alf_prop_value IDs
+     */
+    long[] listPropertyValueIdsLinkedToRoots(long[] rootIds);
+
+    /**
+     * Lists the IDs of all alf_prop_value entries linked as keys or values from those alf_prop_root entries in a specific range that
+     * are currently not referenced. This operation is intended to collect candidates for a targeted downstream cleanup before the
+     * unreferenced alf_prop_root entries in the range are deleted.
+     *
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range of alf_prop_root entries
+     * @param toIdInclusive
+     *            the inclusive to ID of the range of alf_prop_root entries
+     * @return the sorted, duplicate-free array of linked alf_prop_value IDs
+     */
+    long[] listPropertyValueIdsLinkedToUnusedRoots(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Lists the IDs of all alf_prop_*_value entries referenced via the long_value column from those entries of a set of
+     * alf_prop_value entries that are currently not referenced. This operation is intended to collect candidates for a targeted
+     * downstream cleanup before the unreferenced alf_prop_value entries are deleted.
+     *
+     * @param valueIds
+     *            the IDs of the alf_prop_value entries
+     * @return the sorted, duplicate-free arrays of referenced alf_prop_*_value IDs, keyed by the type of value table - types
+     *         without any referenced IDs are not included
+     */
+    Map<PropertyValueTableType, long[]> listPropertyValueInstanceIdsOfUnusedValues(long[] valueIds);
+
+    /**
+     * Lists the IDs of all alf_prop_*_value entries referenced via the long_value column from those alf_prop_value entries in a
+     * specific range that are currently not referenced. This operation is intended to collect candidates for a targeted downstream
+     * cleanup before the unreferenced alf_prop_value entries in the range are deleted.
+     *
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range of alf_prop_value entries
+     * @param toIdInclusive
+     *            the inclusive to ID of the range of alf_prop_value entries
+     * @return the sorted, duplicate-free arrays of referenced alf_prop_*_value IDs, keyed by the type of value table - types
+     *         without any referenced IDs are not included
+     */
+    Map<PropertyValueTableType, long[]> listPropertyValueInstanceIdsOfUnusedValues(Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Streams the IDs of alf_prop_root entries in ascending order via a single scan, reading the result incrementally using the configured JDBC
+     * fetch size instead of loading pages of IDs. The consumer is called on the calling thread as IDs arrive.
+     *
+     * @param fromIdExclusive
+     *            the exclusive ID after which to start - may be {@code null} to start with the first entry
+     * @param toIdInclusive
+     *            the inclusive ID at which to end - may be {@code null} to stream up to the last entry
+     * @param idConsumer
+     *            the consumer of IDs, returning {@code false} to stop the scan
+     * @return {@code true} if all IDs have been streamed, {@code false} if the scan was stopped by the consumer
+     */
+    boolean streamPropertyRootIds(Long fromIdExclusive, Long toIdInclusive, LongPredicate idConsumer);
+
+    /**
+     * Streams the IDs of alf_prop_value entries in ascending order via a single scan, reading the result incrementally using the configured JDBC
+     * fetch size instead of loading pages of IDs. The consumer is called on the calling thread as IDs arrive.
+     *
+     * @param fromIdExclusive
+     *            the exclusive ID after which to start - may be {@code null} to start with the first entry
+     * @param toIdInclusive
+     *            the inclusive ID at which to end - may be {@code null} to stream up to the last entry
+     * @param idConsumer
+     *            the consumer of IDs, returning {@code false} to stop the scan
+     * @return {@code true} if all IDs have been streamed, {@code false} if the scan was stopped by the consumer
+     */
+    boolean streamPropertyValueIds(Long fromIdExclusive, Long toIdInclusive, LongPredicate idConsumer);
+
+    /**
+     * Streams the IDs of alf_prop_*_value entries in ascending order via a single scan, reading the result incrementally using the configured JDBC
+     * fetch size instead of loading pages of IDs. The consumer is called on the calling thread as IDs arrive.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to stream IDs
+     * @param fromIdExclusive
+     *            the exclusive ID after which to start - may be {@code null} to start with the first entry
+     * @param toIdInclusive
+     *            the inclusive ID at which to end - may be {@code null} to stream up to the last entry
+     * @param idConsumer
+     *            the consumer of IDs, returning {@code false} to stop the scan
+     * @return {@code true} if all IDs have been streamed, {@code false} if the scan was stopped by the consumer
+     */
+    boolean streamPropertyValueInstanceIds(PropertyValueTableType valueTableType, Long fromIdExclusive, Long toIdInclusive,
+            LongPredicate idConsumer);
+
+    /**
+     * Estimates the number of unused alf_prop_root entries by checking the references of entries in randomly sampled ID ranges,
+     * without deleting any entries.
+     *
+     * @param sampleRanges
+     *            the number of ID ranges to sample
+     * @param rangeWidth
+     *            the width of each sampled ID range
+     * @return the estimate or {@code null} if the table does not contain any entries
+     */
+    UnusedEntriesEstimate estimateUnusedPropertyRoots(int sampleRanges, int rangeWidth);
+
+    /**
+     * Estimates the number of unused alf_prop_value entries by checking the references of entries in randomly sampled ID ranges,
+     * without deleting any entries.
+     *
+     * @param sampleRanges
+     *            the number of ID ranges to sample
+     * @param rangeWidth
+     *            the width of each sampled ID range
+     * @return the estimate or {@code null} if the table does not contain any entries
+     */
+    UnusedEntriesEstimate estimateUnusedPropertyValues(int sampleRanges, int rangeWidth);
+
+    /**
+     * Estimates the number of unused alf_prop_*_value entries by checking the references of entries in randomly sampled ID ranges,
+     * without deleting any entries.
+     *
+     * @param valueTableType
+     *            the type of the value table for which to estimate unused entries
+     * @param sampleRanges
+     *            the number of ID ranges to sample
+     * @param rangeWidth
+     *            the width of each sampled ID range
+     * @return the estimate or {@code null} if the table does not contain any entries
+     */
+    UnusedEntriesEstimate estimateUnusedPropertyValueInstances(PropertyValueTableType valueTableType, int sampleRanges, int rangeWidth);
+
+    /**
+     * Streams the IDs of the alf_prop_root entries holding the values of audit entries of a specific audit application within a time
+     * range, reading the result incrementally using the configured JDBC fetch size. This operation is intended to capture candidates
+     * for a targeted cleanup of alf_prop_root before the audit entries are cleared, as the references to the alf_prop_root entries are
+     * lost by clearing the audit entries.
+     *
+     * @param applicationName
+     *            the name of the audit application
+     * @param fromTimeInclusive
+     *            the inclusive start of the time range - may be {@code null} to select from the first audit entry
+     * @param toTimeExclusive
+     *            the exclusive end of the time range - may be {@code null} to select up to the last audit entry
+     * @param idConsumer
+     *            the consumer of the alf_prop_root IDs in no particular order, returning {@code false} to stop the stream
+     * @return {@code true} if all IDs have been streamed, {@code false} if the stream has been stopped by the consumer
+     */
+    boolean streamAuditValuesIdsOfAuditEntries(String applicationName, Long fromTimeInclusive, Long toTimeExclusive,
+            LongPredicate idConsumer);
+
+    /**
+     * Lists groups of alf_prop_string_value entries with identical values, i.e. entries which only differ in their ID. Within each
+     * group, the entry with the lowest ID is considered the survivor, and groups are returned in ascending order of that ID. Only
+     * groups with a survivor in the specified ID window are considered, so that the effort of the lookup is bounded by the width of
+     * the window instead of the size of the entire table.
+     *
+     * @param fromSurvivorIdExclusive
+     *            the exclusive survivor ID after which to start - may be {@code null} to start with the first group
+     * @param toSurvivorIdInclusive
+     *            the inclusive survivor ID at which to end
+     * @param maxGroups
+     *            the maximum number of groups to list
+     * @return the groups of duplicate entries, mapped from the ID of the survivor to the sorted IDs of its duplicates, in ascending
+     *         order of the survivor ID
+     */
+    Map<Long, long[]> listDuplicatePropertyStringValues(Long fromSurvivorIdExclusive, Long toSurvivorIdInclusive, int maxGroups);
+
+    /**
+     * Repoints all alf_prop_value entries referencing duplicate alf_prop_string_value entries to the surviving entry with the identical
+     * value. References for which the surviving entry is already referenced by an alf_prop_value entry of the same actual type are left
+     * untouched, as repointing them would violate the unique constraint of alf_prop_value. The duplicate entries themselves are not
+     * deleted by this operation - once no longer referenced, they can be removed by the regular cleanup of alf_prop_string_value.
+     *
+     * @param survivorId
+     *            the ID of the surviving entry
+     * @param duplicateIds
+     *            the IDs of the duplicate entries
+     * @return the number of repointed alf_prop_value entries
+     */
+    int mergeDuplicatePropertyStringValues(long survivorId, long[] duplicateIds);
+
+    /**
+     * Lists the stored sizes of unreferenced alf_prop_serializable_value entries, largest first, using the dialect-specific function
+     * for the byte length of the serialized value.
+     *
+     * @param minSizeInclusive
+     *            the minimum stored size in bytes of entries to list
+     * @param maxItems
+     *            the maximum number of entries to list
+     * @return the stored sizes in bytes mapped from the IDs of the entries, in descending order of size
+     */
+    Map<Long, Long> listUnusedPropertySerializableValueSizes(long minSizeInclusive, int maxItems);
+
+    /**
+     * Lists the IDs of alf_prop_serializable_value entries which still exist among a set of IDs, e.g. to determine which entries have
+     * actually been removed by a guarded delete.
+     *
+     * @param ids
+     *            the IDs to check
+     * @return the sorted, duplicate-free array of IDs of existing entries
+     */
+    long[] listExistingPropertySerializableValueIds(long[] ids);
+
+    /**
+     * Performs any cache invalidations for deleted entries that have been deferred to coalesce multiple invalidations. This operation
+     * should be called at the end of each cleanup run.
+     */
+    void flushCacheInvalidations();
+
     /**
      * Defines the types of alf_prop_*_value tables supported by this DAO.
      *
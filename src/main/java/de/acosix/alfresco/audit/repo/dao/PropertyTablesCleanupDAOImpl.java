@@ -17,14 +17,23 @@ package de.acosix.alfresco.audit.repo.dao;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.util.ParameterCheck;
 import org.alfresco.util.PropertyCheck;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.slf4j.Logger;
@@ -58,6 +67,16 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
 
     private static final String SELECT_EXISTING_PROPERTY_SERIALIZABLE_VALUE_IDS = "propertyTableCleanup.select_existingPropertySerializableValueIds";
 
+    private static final String SELECT_EXISTING_PROPERTY_ROOT_IDS_IN_RANGE = "propertyTableCleanup.select_existingPropertyRootIdsInRange";
+
+    private static final String SELECT_EXISTING_PROPERTY_VALUE_IDS_IN_RANGE = "propertyTableCleanup.select_existingPropertyValueIdsInRange";
+
+    private static final String SELECT_EXISTING_PROPERTY_DOUBLE_VALUE_IDS_IN_RANGE = "propertyTableCleanup.select_existingPropertyDoubleValueIdsInRange";
+
+    private static final String SELECT_EXISTING_PROPERTY_STRING_VALUE_IDS_IN_RANGE = "propertyTableCleanup.select_existingPropertyStringValueIdsInRange";
+
+    private static final String SELECT_EXISTING_PROPERTY_SERIALIZABLE_VALUE_IDS_IN_RANGE = "propertyTableCleanup.select_existingPropertySerializableValueIdsInRange";
+
     private static final String SELECT_USED_AUDIT_VALUES = "propertyTableCleanup.select_usedAuditValues";
 
     private static final String SELECT_USED_AUDIT_USERS = "propertyTableCleanup.select_usedAuditUsers";
@@ -94,10 +113,118 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
 
     private static final String DELETE_UNUSED_PROPERTY_SERIALIZABLE_VALUES = "propertyTableCleanup.delete_unusedPropertySerializableValues";
 
+    private static final String DELETE_UNREFERENCED_PROPERTY_ROOTS_IN_RANGE = "propertyTableCleanup.delete_unreferencedPropertyRootsInRange";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_VALUES_IN_RANGE = "propertyTableCleanup.delete_unreferencedPropertyValuesInRange";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_DOUBLE_VALUES_IN_RANGE = "propertyTableCleanup.delete_unreferencedPropertyDoubleValuesInRange";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_STRING_VALUES_IN_RANGE = "propertyTableCleanup.delete_unreferencedPropertyStringValuesInRange";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUES_IN_RANGE = "propertyTableCleanup.delete_unreferencedPropertySerializableValuesInRange";
+
+    private static final String SELECT_REFERENCED_PROPERTY_ROOT_IDS = "propertyTableCleanup.select_referencedPropertyRootIds";
+
+    private static final String SELECT_REFERENCED_PROPERTY_VALUE_IDS = "propertyTableCleanup.select_referencedPropertyValueIds";
+
+    private static final String SELECT_REFERENCED_PROPERTY_DOUBLE_VALUE_IDS = "propertyTableCleanup.select_referencedPropertyDoubleValueIds";
+
+    private static final String SELECT_REFERENCED_PROPERTY_STRING_VALUE_IDS = "propertyTableCleanup.select_referencedPropertyStringValueIds";
+
+    private static final String SELECT_REFERENCED_PROPERTY_SERIALIZABLE_VALUE_IDS = "propertyTableCleanup.select_referencedPropertySerializableValueIds";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_ROOTS_BY_IDS = "propertyTableCleanup.delete_unreferencedPropertyRootsByIds";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_VALUES_BY_IDS = "propertyTableCleanup.delete_unreferencedPropertyValuesByIds";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_DOUBLE_VALUES_BY_IDS = "propertyTableCleanup.delete_unreferencedPropertyDoubleValuesByIds";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_STRING_VALUES_BY_IDS = "propertyTableCleanup.delete_unreferencedPropertyStringValuesByIds";
+
+    private static final String DELETE_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUES_BY_IDS = "propertyTableCleanup.delete_unreferencedPropertySerializableValuesByIds";
+
+    private static final String SELECT_STREAMED_PROPERTY_ROOT_IDS = "propertyTableCleanup.select_streamedPropertyRootIds";
+
+    private static final String SELECT_STREAMED_PROPERTY_VALUE_IDS = "propertyTableCleanup.select_streamedPropertyValueIds";
+
+    private static final String SELECT_STREAMED_PROPERTY_DOUBLE_VALUE_IDS = "propertyTableCleanup.select_streamedPropertyDoubleValueIds";
+
+    private static final String SELECT_STREAMED_PROPERTY_STRING_VALUE_IDS = "propertyTableCleanup.select_streamedPropertyStringValueIds";
+
+    private static final String SELECT_STREAMED_PROPERTY_SERIALIZABLE_VALUE_IDS = "propertyTableCleanup.select_streamedPropertySerializableValueIds";
+
+    private static final String SELECT_LINKED_PROPERTY_VALUE_IDS_BY_ROOT_IDS = "propertyTableCleanup.select_linkedPropertyValueIdsByRootIds";
+
+    private static final String SELECT_LINKED_PROPERTY_VALUE_IDS_OF_UNREFERENCED_ROOTS_IN_RANGE = "propertyTableCleanup.select_linkedPropertyValueIdsOfUnreferencedRootsInRange";
+
+    private static final String SELECT_INSTANCE_REFERENCES_OF_UNREFERENCED_VALUES_BY_IDS = "propertyTableCleanup.select_instanceReferencesOfUnreferencedValuesByIds";
+
+    private static final String SELECT_INSTANCE_REFERENCES_OF_UNREFERENCED_VALUES_IN_RANGE = "propertyTableCleanup.select_instanceReferencesOfUnreferencedValuesInRange";
+
+    private static final String SELECT_AUDIT_VALUES_IDS_OF_AUDIT_ENTRIES = "propertyTableCleanup.select_auditValuesIdsOfAuditEntries";
+
+    private static final String SELECT_DUPLICATE_PROPERTY_STRING_VALUES = "propertyTableCleanup.select_duplicatePropertyStringValues";
+
+    private static final String UPDATE_PROPERTY_VALUE_STRING_REFERENCES = "propertyTableCleanup.update_propertyValueStringReferences";
+
+    private static final String SELECT_REFERENCES_OF_AUDIT_APPS = "propertyTableCleanup.select_referencesOfAuditApps";
+
+    private static final String SELECT_REFERENCES_OF_AUDIT_ENTRIES = "propertyTableCleanup.select_referencesOfAuditEntries";
+
+    private static final String SELECT_REFERENCES_OF_PROP_LINKS = "propertyTableCleanup.select_referencesOfPropLinks";
+
+    private static final String SELECT_REFERENCES_OF_UNIQUE_CONTEXTS = "propertyTableCleanup.select_referencesOfUniqueContexts";
+
+    private static final String SELECT_REFERENCES_OF_PROPERTY_VALUES = "propertyTableCleanup.select_referencesOfPropertyValues";
+
+    private static final String SELECT_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUE_SIZES = "propertyTableCleanup.select_unreferencedPropertySerializableValueSizes";
+
+    private static final String SELECT_EXISTING_PROPERTY_SERIALIZABLE_VALUE_IDS_BY_IDS = "propertyTableCleanup.select_existingPropertySerializableValueIdsByIds";
+
+    // z-score of the two-sided 95% confidence interval of a normal distribution
+    private static final double CONFIDENCE_Z_SCORE = 1.96;
+
+    private static final String INSERT_STAGED_ID = "propertyTableCleanup.insert_stagedId";
+
+    private static final String DELETE_STAGED_IDS = "propertyTableCleanup.delete_stagedIds";
+
+    private static final String STAGED_QUERY_SUFFIX = "Staged";
+
+    // Oracle limits IN lists to 1000 elements, and the root ID list is used twice in the same statement
+    private static final int CASCADE_SELECT_CHUNK_SIZE = 500;
+
+    private static final String ID_ARRAY_DIALECT_NAME = "PostgreSQLDialect";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PropertyTablesCleanupDAOImpl.class);
 
     protected SqlSessionTemplate sqlSessionTemplate;
 
+    protected SqlSessionTemplate batchSqlSessionTemplate;
+
+    protected SqlSessionTemplate readSqlSessionTemplate;
+
+    protected boolean readFromReplica;
+
+    protected boolean recheckReplicaReads = true;
+
+    protected boolean batchedDeletes;
+
+    protected int deleteChunkSize;
+
+    protected Object dialect;
+
+    protected boolean idArrayParameters;
+
+    protected boolean idStaging;
+
+    protected int idStagingThreshold = 1000;
+
+    protected PropertyTablesIdStagingBootstrap idStagingBootstrap;
+
+    protected PropertyCacheInvalidationCoordinator cacheInvalidationCoordinator;
+
+    protected PropertyReferenceScanCache referenceScanCache;
+
     protected SimpleCache<Serializable, Object> propertyRootCache;
 
     protected SimpleCache<Serializable, Object> propertyValueCache;
@@ -115,6 +242,34 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
     public void afterPropertiesSet()
     {
         PropertyCheck.mandatory(this, "sqlSessionTemplate", this.sqlSessionTemplate);
+        if (this.batchedDeletes)
+        {
+            PropertyCheck.mandatory(this, "batchSqlSessionTemplate", this.batchSqlSessionTemplate);
+        }
+        if (this.readFromReplica)
+        {
+            PropertyCheck.mandatory(this, "readSqlSessionTemplate", this.readSqlSessionTemplate);
+        }
+
+        this.idArrayParameters = this.dialect != null && isIdArrayDialect(this.dialect.getClass());
+        if (this.idArrayParameters)
+        {
+            LOGGER.debug("Binding ID lists as single array parameters for database dialect {}", this.dialect.getClass().getName());
+        }
+
+        if (this.idStaging)
+        {
+            if (this.idArrayParameters || !this.sqlSessionTemplate.getConfiguration().hasStatement(INSERT_STAGED_ID))
+            {
+                LOGGER.info("Staging of ID lists is not supported / required for the database in use and will not be used");
+                this.idStaging = false;
+            }
+            else
+            {
+                PropertyCheck.mandatory(this, "batchSqlSessionTemplate", this.batchSqlSessionTemplate);
+                PropertyCheck.mandatory(this, "idStagingBootstrap", this.idStagingBootstrap);
+            }
+        }
     }
 
     /**
@@ -126,6 +281,128 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
         this.sqlSessionTemplate = sqlSessionTemplate;
     }
 
+    /**
+     * @param batchSqlSessionTemplate
+     *            the SQL session template using a batch executor to set - this must not use the same session factory as the
+     *            {@link #setSqlSessionTemplate(SqlSessionTemplate) regular template} as executor types cannot be mixed in a
+     *            transaction
+     */
+    public void setBatchSqlSessionTemplate(final SqlSessionTemplate batchSqlSessionTemplate)
+    {
+        this.batchSqlSessionTemplate = batchSqlSessionTemplate;
+    }
+
+    /**
+     * @param readSqlSessionTemplate
+     *            the SQL session template for a read-only replica of the database to use for queries of existing / used IDs if
+     *            {@link #setReadFromReplica(boolean) enabled}
+     */
+    public void setReadSqlSessionTemplate(final SqlSessionTemplate readSqlSessionTemplate)
+    {
+        this.readSqlSessionTemplate = readSqlSessionTemplate;
+    }
+
+    /**
+     * @param readFromReplica
+     *            {@code true} if queries of existing / used IDs should be run against a read-only replica of the database via the
+     *            {@link #setReadSqlSessionTemplate(SqlSessionTemplate) read SQL session template}
+     */
+    public void setReadFromReplica(final boolean readFromReplica)
+    {
+        this.readFromReplica = readFromReplica;
+    }
+
+    /**
+     * @param recheckReplicaReads
+     *            {@code true} if ID list deletes should re-check references on the primary database when queries of used IDs are run
+     *            against a replica, as the replica may lag behind and not yet contain recently created references
+     */
+    public void setRecheckReplicaReads(final boolean recheckReplicaReads)
+    {
+        this.recheckReplicaReads = recheckReplicaReads;
+    }
+
+    /**
+     * @param batchedDeletes
+     *            {@code true} if ID list deletes should be queued via the batch SQL session template and sent to the database as JDBC
+     *            batches when the transaction is committed or a subsequent statement depends on their effect (e.g. guarded deletes of
+     *            downstream entries), {@code false} if they should be executed immediately
+     */
+    public void setBatchedDeletes(final boolean batchedDeletes)
+    {
+        this.batchedDeletes = batchedDeletes;
+    }
+
+    /**
+     * @param deleteChunkSize
+     *            the fixed number of IDs to bind in each ID list delete statement, or {@code 0} / a negative value to delete all IDs
+     *            via a single statement
+     */
+    public void setDeleteChunkSize(final int deleteChunkSize)
+    {
+        this.deleteChunkSize = deleteChunkSize;
+    }
+
+    /**
+     * @param dialect
+     *            the database dialect of Alfresco - if this is a PostgreSQL dialect, ID lists are bound as a single array parameter
+     *            without any chunking, as the statements of that dialect do not use IN-lists
+     */
+    public void setDialect(final Object dialect)
+    {
+        this.dialect = dialect;
+    }
+
+    /**
+     * @param idStaging
+     *            {@code true} if large ID lists should be bulk-inserted into a staging table via JDBC batches and selected / deleted
+     *            via a sub-select on that table instead of binding each ID as a parameter - only supported on Oracle and MS SQL
+     *            Server, ignored on other databases
+     */
+    public void setIdStaging(final boolean idStaging)
+    {
+        this.idStaging = idStaging;
+    }
+
+    /**
+     * @param idStagingThreshold
+     *            the minimum number of IDs in a list for the list to be {@link #setIdStaging(boolean) staged}
+     */
+    public void setIdStagingThreshold(final int idStagingThreshold)
+    {
+        this.idStagingThreshold = idStagingThreshold;
+    }
+
+    /**
+     * @param idStagingBootstrap
+     *            the bootstrap of the staging table - ID lists are only {@link #setIdStaging(boolean) staged} once it has verified that
+     *            the staging table exists, and bound as parameters otherwise
+     */
+    public void setIdStagingBootstrap(final PropertyTablesIdStagingBootstrap idStagingBootstrap)
+    {
+        this.idStagingBootstrap = idStagingBootstrap;
+    }
+
+    /**
+     * @param cacheInvalidationCoordinator
+     *            the coordinator for invalidations of the alf_prop_* caches - if not set, caches will be cleared immediately with
+     *            every delete
+     */
+    public void setCacheInvalidationCoordinator(final PropertyCacheInvalidationCoordinator cacheInvalidationCoordinator)
+    {
+        this.cacheInvalidationCoordinator = cacheInvalidationCoordinator;
+    }
+
+    /**
+     * @param referenceScanCache
+     *            the cache of shared scans of referencing tables - if not set or not enabled, each query of used IDs will run its own
+     *            per-column queries
+     */
+    public void setReferenceScanCache(final PropertyReferenceScanCache referenceScanCache)
+    {
+        this.referenceScanCache = referenceScanCache;
+    }
+
     /**
      * @param propertyRootCache
      *            the cache for alf_prop_root entries to set
@@ -226,13 +503,17 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
     @Override
     public List<Long> listPropertyRootIds(final int maxItems, final Long fromIdExclusive)
     {
-        final RowBounds rowBounds = new RowBounds(0, maxItems);
-        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
-        queryBoundsParam.setFromId(fromIdExclusive);
-        queryBoundsParam.setMaxItems(Integer.valueOf(maxItems));
+        return toList(this.listPropertyRootIdsAsArray(maxItems, fromIdExclusive));
+    }
 
-        final List<Long> ids = this.sqlSessionTemplate.selectList(SELECT_EXISTING_PROPERTY_ROOT_IDS, queryBoundsParam, rowBounds);
-        LOGGER.debug("Selected {} alf_prop_root IDs starting with exclusive from ID {} and {} max items: {}", ids.size(), fromIdExclusive,
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listPropertyRootIdsAsArray(final int maxItems, final Long fromIdExclusive)
+    {
+        final long[] ids = this.selectExistingIds(SELECT_EXISTING_PROPERTY_ROOT_IDS, maxItems, fromIdExclusive);
+        LOGGER.debug("Selected {} alf_prop_root IDs starting with exclusive from ID {} and {} max items", ids.length, fromIdExclusive,
                 maxItems);
         LOGGER.trace("Retrieved alf_prop_root entries : {}", ids);
         return ids;
@@ -244,15 +525,19 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
     @Override
     public List<Long> listPropertyValueIds(final int maxItems, final Long fromIdExclusive)
     {
-        final RowBounds rowBounds = new RowBounds(0, maxItems);
-        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
-        queryBoundsParam.setFromId(fromIdExclusive);
-        queryBoundsParam.setMaxItems(Integer.valueOf(maxItems));
+        return toList(this.listPropertyValueIdsAsArray(maxItems, fromIdExclusive));
+    }
 
-        final List<Long> ids = this.sqlSessionTemplate.selectList(SELECT_EXISTING_PROPERTY_VALUE_IDS, queryBoundsParam, rowBounds);
-        LOGGER.debug("Selected {} alf_prop_value IDs starting with exclusive from ID {} and {} max items: {}", ids.size(), fromIdExclusive,
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listPropertyValueIdsAsArray(final int maxItems, final Long fromIdExclusive)
+    {
+        final long[] ids = this.selectExistingIds(SELECT_EXISTING_PROPERTY_VALUE_IDS, maxItems, fromIdExclusive);
+        LOGGER.debug("Selected {} alf_prop_value IDs starting with exclusive from ID {} and {} max items", ids.length, fromIdExclusive,
                 maxItems);
-        LOGGER.trace("Retrieved alf_prop_value entries:", ids);
+        LOGGER.trace("Retrieved alf_prop_value entries: {}", ids);
         return ids;
     }
 
@@ -263,12 +548,17 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
     public List<Long> listPropertyValueInstanceIds(final PropertyValueTableType valueTableType, final int maxItems,
             final Long fromIdExclusive)
     {
-        ParameterCheck.mandatory("valueTableType", valueTableType);
+        return toList(this.listPropertyValueInstanceIdsAsArray(valueTableType, maxItems, fromIdExclusive));
+    }
 
-        final RowBounds rowBounds = new RowBounds(0, maxItems);
-        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
-        queryBoundsParam.setFromId(fromIdExclusive);
-        queryBoundsParam.setMaxItems(Integer.valueOf(maxItems));
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listPropertyValueInstanceIdsAsArray(final PropertyValueTableType valueTableType, final int maxItems,
+            final Long fromIdExclusive)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
 
         final String query;
         switch (valueTableType)
@@ -286,10 +576,10 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
                 throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
         }
 
-        final List<Long> ids = this.sqlSessionTemplate.selectList(query, queryBoundsParam, rowBounds);
-        LOGGER.debug("Selected {} alf_prop_*_value IDs for value type {} starting with exclusive from ID {} and {} max items", ids.size(),
+        final long[] ids = this.selectExistingIds(query, maxItems, fromIdExclusive);
+        LOGGER.debug("Selected {} alf_prop_*_value IDs for value type {} starting with exclusive from ID {} and {} max items", ids.length,
                 valueTableType, fromIdExclusive, maxItems);
-        LOGGER.trace("Retrieved alf_prop_*_value entries:", ids);
+        LOGGER.trace("Retrieved alf_prop_*_value entries: {}", ids);
         return ids;
     }
 
@@ -297,177 +587,1607 @@ public class PropertyTablesCleanupDAOImpl implements PropertyTablesCleanupDAO, I
      * {@inheritDoc}
      */
     @Override
-    public List<Long> listUsedPropertyRootIds(final Long fromIdInclusive, final Long toIdInclusive)
+    public long[] listPropertyRootIdsInRangeAsArray(final Long fromIdInclusive, final Long toIdInclusive)
     {
-        LOGGER.debug("Querying actively referenced alf_prop_root entries from {} to {}", fromIdInclusive, toIdInclusive);
-        final List<Long> usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, SELECT_USED_AUDIT_APP_DISABLED_PATHS,
-                SELECT_USED_AUDIT_VALUES, SELECT_USED_UNIQUE_CONTEXT_PROPS);
-        LOGGER.debug("Found {} referenced alf_prop_root entries", usedIds.size());
-        LOGGER.trace("Referenced alf_prop_root entries: {}", usedIds);
-        return usedIds;
+        final long[] ids = this.selectExistingIdsInRange(SELECT_EXISTING_PROPERTY_ROOT_IDS_IN_RANGE, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Selected {} alf_prop_root IDs from {} to {}", ids.length, fromIdInclusive, toIdInclusive);
+        LOGGER.trace("Retrieved alf_prop_root entries: {}", ids);
+        return ids;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<Long> listUsedPropertyValueIds(final Long fromIdInclusive, final Long toIdInclusive)
+    public long[] listPropertyValueIdsInRangeAsArray(final Long fromIdInclusive, final Long toIdInclusive)
     {
-        LOGGER.debug("Querying actively referenced alf_prop_value entries from {} to {}", fromIdInclusive, toIdInclusive);
-        final List<Long> usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, SELECT_USED_AUDIT_APP_NAMES, SELECT_USED_AUDIT_USERS,
-                SELECT_USED_PROP_LINK_KEYS, SELECT_USED_PROP_LINK_VALUES, SELECT_USED_UNIQUE_CONTEXT_VALUES_1,
-                SELECT_USED_UNIQUE_CONTEXT_VALUES_2, SELECT_USED_UNIQUE_CONTEXT_VALUES_3);
-        LOGGER.debug("Found {} referenced alf_prop_value entries", usedIds.size());
-        LOGGER.trace("Referenced alf_prop_value entries: {}", usedIds);
-        return usedIds;
+        final long[] ids = this.selectExistingIdsInRange(SELECT_EXISTING_PROPERTY_VALUE_IDS_IN_RANGE, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Selected {} alf_prop_value IDs from {} to {}", ids.length, fromIdInclusive, toIdInclusive);
+        LOGGER.trace("Retrieved alf_prop_value entries: {}", ids);
+        return ids;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<Long> listUsedPropertyValueInstanceIds(final PropertyValueTableType valueTableType, final Long fromIdInclusive,
+    public long[] listPropertyValueInstanceIdsInRangeAsArray(final PropertyValueTableType valueTableType, final Long fromIdInclusive,
             final Long toIdInclusive)
     {
         ParameterCheck.mandatory("valueTableType", valueTableType);
 
-        LOGGER.debug("Querying actively referenced alf_prop_*_value entries from {} to {} for {}", fromIdInclusive, toIdInclusive,
-                valueTableType);
-
         final String query;
         switch (valueTableType)
         {
             case DOUBLE:
-                query = SELECT_USED_PROPERTY_DOUBLE_VALUE_IDS;
+                query = SELECT_EXISTING_PROPERTY_DOUBLE_VALUE_IDS_IN_RANGE;
                 break;
             case SERIALIZABLE:
-                query = SELECT_USED_PROPERTY_SERIALIZABLE_VALUE_IDS;
+                query = SELECT_EXISTING_PROPERTY_SERIALIZABLE_VALUE_IDS_IN_RANGE;
                 break;
             case STRING:
-                query = SELECT_USED_PROPERTY_STRING_VALUE_IDS;
+                query = SELECT_EXISTING_PROPERTY_STRING_VALUE_IDS_IN_RANGE;
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
         }
 
-        final List<Long> usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, query);
-        LOGGER.debug("Found {} referenced alf_prop_*_value entries for {}", usedIds.size(), valueTableType);
-        LOGGER.trace("Referenced alf_prop_*_value entries for {}: {}", valueTableType, usedIds);
-        return usedIds;
+        final long[] ids = this.selectExistingIdsInRange(query, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Selected {} alf_prop_*_value IDs for value type {} from {} to {}", ids.length, valueTableType, fromIdInclusive,
+                toIdInclusive);
+        LOGGER.trace("Retrieved alf_prop_*_value entries: {}", ids);
+        return ids;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void deletePropertyRoots(final List<Long> ids)
+    public List<Long> listUsedPropertyRootIds(final Long fromIdInclusive, final Long toIdInclusive)
     {
-        ParameterCheck.mandatoryCollection("ids", ids);
-
-        LOGGER.debug("Deleting {} alf_prop_root entries", ids.size());
-        LOGGER.trace("Deleting alf_prop_root entries for IDs {}", ids);
-
-        this.sqlSessionTemplate.delete(DELETE_UNUSED_PROPERTY_ROOTS, ids);
+        return toList(this.listUsedPropertyRootIdsAsArray(fromIdInclusive, toIdInclusive));
+    }
 
-        if (this.propertyRootCache != null)
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listUsedPropertyRootIdsAsArray(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        LOGGER.debug("Querying actively referenced alf_prop_root entries from {} to {}", fromIdInclusive, toIdInclusive);
+        final long[] usedIds;
+        if (this.isSharedReferenceScanApplicable(fromIdInclusive, toIdInclusive))
+        {
+            usedIds = this.collectSharedReferences(fromIdInclusive.longValue(), toIdInclusive.longValue(),
+                    PropertyReferenceScanCache.ScanResult::getRootIds, SELECT_REFERENCES_OF_AUDIT_APPS, SELECT_REFERENCES_OF_AUDIT_ENTRIES,
+                    SELECT_REFERENCES_OF_UNIQUE_CONTEXTS);
+        }
+        else
         {
-            // due to complex key->entry + valueKey->entry mappings, it is easier + more efficient to just clear the cache
-            // (blame Alfresco's cache design)
-            this.propertyRootCache.clear();
+            usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, SELECT_USED_AUDIT_APP_DISABLED_PATHS, SELECT_USED_AUDIT_VALUES,
+                    SELECT_USED_UNIQUE_CONTEXT_PROPS);
         }
+        LOGGER.debug("Found {} referenced alf_prop_root entries", usedIds.length);
+        LOGGER.trace("Referenced alf_prop_root entries: {}", usedIds);
+        return usedIds;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void deletePropertyValues(final List<Long> ids)
+    public List<Long> listUsedPropertyValueIds(final Long fromIdInclusive, final Long toIdInclusive)
     {
-        ParameterCheck.mandatoryCollection("ids", ids);
-
-        LOGGER.debug("Deleting {} alf_prop_value entries", ids.size());
-        LOGGER.trace("Deleting alf_prop_value entries: {}", ids);
-
-        this.sqlSessionTemplate.delete(DELETE_UNUSED_PROPERTY_VALUES, ids);
+        return toList(this.listUsedPropertyValueIdsAsArray(fromIdInclusive, toIdInclusive));
+    }
 
-        if (this.propertyValueCache != null)
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listUsedPropertyValueIdsAsArray(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        LOGGER.debug("Querying actively referenced alf_prop_value entries from {} to {}", fromIdInclusive, toIdInclusive);
+        final long[] usedIds;
+        if (this.isSharedReferenceScanApplicable(fromIdInclusive, toIdInclusive))
+        {
+            usedIds = this.collectSharedReferences(fromIdInclusive.longValue(), toIdInclusive.longValue(),
+                    PropertyReferenceScanCache.ScanResult::getValueIds, SELECT_REFERENCES_OF_AUDIT_APPS, SELECT_REFERENCES_OF_AUDIT_ENTRIES,
+                    SELECT_REFERENCES_OF_PROP_LINKS, SELECT_REFERENCES_OF_UNIQUE_CONTEXTS);
+        }
+        else
         {
-            // due to complex key->entry + valueKey->entry mappings, it is easier + more efficient to just clear the cache
-            // there is also no way to limit the clearing to a particular cache region in case of cache re-use (default)
-            // (blame Alfresco's cache design)
-            this.propertyValueCache.clear();
+            usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, SELECT_USED_AUDIT_APP_NAMES, SELECT_USED_AUDIT_USERS,
+                    SELECT_USED_PROP_LINK_KEYS, SELECT_USED_PROP_LINK_VALUES, SELECT_USED_UNIQUE_CONTEXT_VALUES_1,
+                    SELECT_USED_UNIQUE_CONTEXT_VALUES_2, SELECT_USED_UNIQUE_CONTEXT_VALUES_3);
         }
+        LOGGER.debug("Found {} referenced alf_prop_value entries", usedIds.length);
+        LOGGER.trace("Referenced alf_prop_value entries: {}", usedIds);
+        return usedIds;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void deletePropertyValueInstances(final PropertyValueTableType valueTableType, final List<Long> ids)
+    public List<Long> listUsedPropertyValueInstanceIds(final PropertyValueTableType valueTableType, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return toList(this.listUsedPropertyValueInstanceIdsAsArray(valueTableType, fromIdInclusive, toIdInclusive));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listUsedPropertyValueInstanceIdsAsArray(final PropertyValueTableType valueTableType, final Long fromIdInclusive,
+            final Long toIdInclusive)
     {
         ParameterCheck.mandatory("valueTableType", valueTableType);
-        ParameterCheck.mandatoryCollection("ids", ids);
 
-        LOGGER.debug("Deleting {} alf_prop_*_value entries of type {}", ids.size(), valueTableType);
-        LOGGER.trace("Deleting alf_prop_*_value entries: {}", ids);
+        LOGGER.debug("Querying actively referenced alf_prop_*_value entries from {} to {} for {}", fromIdInclusive, toIdInclusive,
+                valueTableType);
 
         final String query;
-        final SimpleCache<Serializable, Object> cache;
         switch (valueTableType)
         {
             case DOUBLE:
-                query = DELETE_UNUSED_PROPERTY_DOUBLE_VALUES;
-                cache = this.propertyDoubleCache;
+                query = SELECT_USED_PROPERTY_DOUBLE_VALUE_IDS;
                 break;
             case SERIALIZABLE:
-                query = DELETE_UNUSED_PROPERTY_SERIALIZABLE_VALUES;
-                cache = this.propertySerializableCache;
+                query = SELECT_USED_PROPERTY_SERIALIZABLE_VALUE_IDS;
                 break;
             case STRING:
-                query = DELETE_UNUSED_PROPERTY_STRING_VALUES;
-                cache = this.propertyStringCache;
+                query = SELECT_USED_PROPERTY_STRING_VALUE_IDS;
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
         }
 
-        this.sqlSessionTemplate.delete(query, ids);
-        if (cache != null)
+        final long[] usedIds;
+        if (this.isSharedReferenceScanApplicable(fromIdInclusive, toIdInclusive))
+        {
+            usedIds = this.collectSharedReferences(fromIdInclusive.longValue(), toIdInclusive.longValue(),
+                    scanResult -> scanResult.getInstanceIds(valueTableType), SELECT_REFERENCES_OF_PROPERTY_VALUES);
+        }
+        else
         {
-            // due to complex key->entry + valueKey->entry mappings, it is easier + more efficient to just clear the cache
-            // there is also no way to limit the clearing to a particular cache region in case of cache re-use (default)
-            // (blame Alfresco's cache design)
-            cache.clear();
+            usedIds = this.collectUsedIds(fromIdInclusive, toIdInclusive, query);
         }
+        LOGGER.debug("Found {} referenced alf_prop_*_value entries for {}", usedIds.length, valueTableType);
+        LOGGER.trace("Referenced alf_prop_*_value entries for {}: {}", valueTableType, usedIds);
+        return usedIds;
     }
 
     /**
-     * Searches for all used entry IDs from foreign key a specific alf_prop_* tables
-     *
-     * @param fromIdInclusive
-     *            the inclusive from ID of the range to check
-     * @param toIdInclusive
-     *            the inclusive to ID of the range to check
-     * @param queries
-     *            the queries to use to retrieve foreign keys in other table
-     * @return a list of used IDs
+     * {@inheritDoc}
      */
-    protected List<Long> collectUsedIds(final Long fromIdInclusive, final Long toIdInclusive, final String... queries)
+    @Override
+    public void deletePropertyRoots(final List<Long> ids)
     {
-        final Set<Long> usedIds = new HashSet<>();
+        ParameterCheck.mandatoryCollection("ids", ids);
+        this.deletePropertyRoots(toArray(ids));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deletePropertyRoots(final long[] ids)
+    {
+        ParameterCheck.mandatory("ids", ids);
+
+        if (this.isReferenceRecheckRequired())
+        {
+            this.deleteUnusedPropertyRoots(ids);
+            return;
+        }
+
+        LOGGER.debug("Deleting {} alf_prop_root entries", ids.length);
+        LOGGER.trace("Deleting alf_prop_root entries for IDs {}", ids);
+
+        this.deleteIds(DELETE_UNUSED_PROPERTY_ROOTS, ids);
+
+        this.invalidateCache(this.propertyRootCache, ids.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deletePropertyValues(final List<Long> ids)
+    {
+        ParameterCheck.mandatoryCollection("ids", ids);
+        this.deletePropertyValues(toArray(ids));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deletePropertyValues(final long[] ids)
+    {
+        ParameterCheck.mandatory("ids", ids);
+
+        if (this.isReferenceRecheckRequired())
+        {
+            this.deleteUnusedPropertyValues(ids);
+            return;
+        }
+
+        LOGGER.debug("Deleting {} alf_prop_value entries", ids.length);
+        LOGGER.trace("Deleting alf_prop_value entries: {}", ids);
+
+        this.deleteIds(DELETE_UNUSED_PROPERTY_VALUES, ids);
+
+        this.invalidateCache(this.propertyValueCache, ids.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deletePropertyValueInstances(final PropertyValueTableType valueTableType, final List<Long> ids)
+    {
+        ParameterCheck.mandatoryCollection("ids", ids);
+        this.deletePropertyValueInstances(valueTableType, toArray(ids));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deletePropertyValueInstances(final PropertyValueTableType valueTableType, final long[] ids)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+        ParameterCheck.mandatory("ids", ids);
+
+        if (this.isReferenceRecheckRequired())
+        {
+            this.deleteUnusedPropertyValueInstances(valueTableType, ids);
+            return;
+        }
+
+        LOGGER.debug("Deleting {} alf_prop_*_value entries of type {}", ids.length, valueTableType);
+        LOGGER.trace("Deleting alf_prop_*_value entries: {}", ids);
+
+        final String query;
+        final SimpleCache<Serializable, Object> cache;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                query = DELETE_UNUSED_PROPERTY_DOUBLE_VALUES;
+                cache = this.propertyDoubleCache;
+                break;
+            case SERIALIZABLE:
+                query = DELETE_UNUSED_PROPERTY_SERIALIZABLE_VALUES;
+                cache = this.propertySerializableCache;
+                break;
+            case STRING:
+                query = DELETE_UNUSED_PROPERTY_STRING_VALUES;
+                cache = this.propertyStringCache;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        this.deleteIds(query, ids);
+        this.invalidateCache(cache, ids.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyRoots(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        LOGGER.debug("Deleting unreferenced alf_prop_root entries from {} to {}", fromIdInclusive, toIdInclusive);
+        final int deleted = this.deleteUnreferencedInRange(DELETE_UNREFERENCED_PROPERTY_ROOTS_IN_RANGE, fromIdInclusive, toIdInclusive,
+                this.propertyRootCache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_root entries from {} to {}", deleted, fromIdInclusive, toIdInclusive);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyValues(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        LOGGER.debug("Deleting unreferenced alf_prop_value entries from {} to {}", fromIdInclusive, toIdInclusive);
+        final int deleted = this.deleteUnreferencedInRange(DELETE_UNREFERENCED_PROPERTY_VALUES_IN_RANGE, fromIdInclusive, toIdInclusive,
+                this.propertyValueCache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_value entries from {} to {}", deleted, fromIdInclusive, toIdInclusive);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyValueInstances(final PropertyValueTableType valueTableType, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        LOGGER.debug("Deleting unreferenced alf_prop_*_value entries of type {} from {} to {}", valueTableType, fromIdInclusive,
+                toIdInclusive);
+
+        final String query;
+        final SimpleCache<Serializable, Object> cache;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                query = DELETE_UNREFERENCED_PROPERTY_DOUBLE_VALUES_IN_RANGE;
+                cache = this.propertyDoubleCache;
+                break;
+            case SERIALIZABLE:
+                query = DELETE_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUES_IN_RANGE;
+                cache = this.propertySerializableCache;
+                break;
+            case STRING:
+                query = DELETE_UNREFERENCED_PROPERTY_STRING_VALUES_IN_RANGE;
+                cache = this.propertyStringCache;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        final int deleted = this.deleteUnreferencedInRange(query, fromIdInclusive, toIdInclusive, cache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_*_value entries of type {} from {} to {}", deleted, valueTableType,
+                fromIdInclusive, toIdInclusive);
+        return deleted;
+    }
+
+    /**
+     * Executes a guarded delete of unreferenced entries within a range of IDs and clears the associated cache if any entries were
+     * deleted.
+     *
+     * @param query
+     *            the delete statement to execute
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range to delete
+     * @param toIdInclusive
+     *            the inclusive to ID of the range to delete
+     * @param cache
+     *            the cache to clear if entries have been deleted - may be {@code null}
+     * @return the number of deleted entries
+     */
+    protected int deleteUnreferencedInRange(final String query, final Long fromIdInclusive, final Long toIdInclusive,
+            final SimpleCache<Serializable, Object> cache)
+    {
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdInclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        this.flushBatchedDeletes();
+        final int deleted = this.sqlSessionTemplate.delete(query, queryBoundsParam);
+        if (deleted > 0)
+        {
+            this.invalidateCache(cache, deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Selects a specific subset of existing IDs higher than the provided offset.
+     *
+     * @param query
+     *            the query to use to retrieve existing IDs
+     * @param maxItems
+     *            the number of IDs to retrieve
+     * @param fromIdExclusive
+     *            the ID to use as the offset (results must be higher than this)
+     * @return the selected IDs in ascending order
+     */
+    protected long[] selectExistingIds(final String query, final int maxItems, final Long fromIdExclusive)
+    {
+        final RowBounds rowBounds = new RowBounds(0, maxItems);
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdExclusive);
+        queryBoundsParam.setMaxItems(Integer.valueOf(maxItems));
+
+        final LongIdCollector collector = new LongIdCollector(maxItems);
+        this.getReadSqlSessionTemplate().select(query, queryBoundsParam, rowBounds, collector);
+        return collector.toArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RoaringIdBitmap loadReferencedPropertyRootIds(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        LOGGER.debug("Loading all referenced alf_prop_root IDs from {} to {}", fromIdInclusive, toIdInclusive);
+        final RoaringIdBitmap referencedIds = this.loadReferencedIds(SELECT_REFERENCED_PROPERTY_ROOT_IDS, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Loaded {} referenced alf_prop_root IDs into bitmap of ~{} bytes", referencedIds.getCardinality(),
+                referencedIds.getEstimatedSizeInBytes());
+        return referencedIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RoaringIdBitmap loadReferencedPropertyValueIds(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        LOGGER.debug("Loading all referenced alf_prop_value IDs from {} to {}", fromIdInclusive, toIdInclusive);
+        final RoaringIdBitmap referencedIds = this.loadReferencedIds(SELECT_REFERENCED_PROPERTY_VALUE_IDS, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Loaded {} referenced alf_prop_value IDs into bitmap of ~{} bytes", referencedIds.getCardinality(),
+                referencedIds.getEstimatedSizeInBytes());
+        return referencedIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RoaringIdBitmap loadReferencedPropertyValueInstanceIds(final PropertyValueTableType valueTableType,
+            final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+
+        final String query;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                query = SELECT_REFERENCED_PROPERTY_DOUBLE_VALUE_IDS;
+                break;
+            case SERIALIZABLE:
+                query = SELECT_REFERENCED_PROPERTY_SERIALIZABLE_VALUE_IDS;
+                break;
+            case STRING:
+                query = SELECT_REFERENCED_PROPERTY_STRING_VALUE_IDS;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        LOGGER.debug("Loading all referenced alf_prop_*_value IDs for {} from {} to {}", valueTableType, fromIdInclusive,
+                toIdInclusive);
+        final RoaringIdBitmap referencedIds = this.loadReferencedIds(query, fromIdInclusive, toIdInclusive);
+        LOGGER.debug("Loaded {} referenced alf_prop_*_value IDs for {} into bitmap of ~{} bytes", referencedIds.getCardinality(),
+                valueTableType, referencedIds.getEstimatedSizeInBytes());
+        return referencedIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyRoots(final long[] ids)
+    {
+        ParameterCheck.mandatory("ids", ids);
+
+        LOGGER.debug("Deleting up to {} unreferenced alf_prop_root entries", ids.length);
+        final int deleted = this.deleteUnreferencedIds(DELETE_UNREFERENCED_PROPERTY_ROOTS_BY_IDS, ids, this.propertyRootCache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_root entries", deleted);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyValues(final long[] ids)
+    {
+        ParameterCheck.mandatory("ids", ids);
+
+        LOGGER.debug("Deleting up to {} unreferenced alf_prop_value entries", ids.length);
+        final int deleted = this.deleteUnreferencedIds(DELETE_UNREFERENCED_PROPERTY_VALUES_BY_IDS, ids, this.propertyValueCache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_value entries", deleted);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteUnusedPropertyValueInstances(final PropertyValueTableType valueTableType, final long[] ids)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+        ParameterCheck.mandatory("ids", ids);
+
+        final String query;
+        final SimpleCache<Serializable, Object> cache;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                query = DELETE_UNREFERENCED_PROPERTY_DOUBLE_VALUES_BY_IDS;
+                cache = this.propertyDoubleCache;
+                break;
+            case SERIALIZABLE:
+                query = DELETE_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUES_BY_IDS;
+                cache = this.propertySerializableCache;
+                break;
+            case STRING:
+                query = DELETE_UNREFERENCED_PROPERTY_STRING_VALUES_BY_IDS;
+                cache = this.propertyStringCache;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        LOGGER.debug("Deleting up to {} unreferenced alf_prop_*_value entries of type {}", ids.length, valueTableType);
+        final int deleted = this.deleteUnreferencedIds(query, ids, cache);
+        LOGGER.debug("Deleted {} unreferenced alf_prop_*_value entries of type {}", deleted, valueTableType);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listPropertyValueIdsLinkedToRoots(final long[] rootIds)
+    {
+        ParameterCheck.mandatory("rootIds", rootIds);
+
+        final LongIdCollector collector = new LongIdCollector();
+        this.selectByIds(SELECT_LINKED_PROPERTY_VALUE_IDS_BY_ROOT_IDS, rootIds, CASCADE_SELECT_CHUNK_SIZE, collector);
+        return collector.toSortedUniqueArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listPropertyValueIdsLinkedToUnusedRoots(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdInclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        final LongIdCollector collector = new LongIdCollector();
+        this.sqlSessionTemplate.select(SELECT_LINKED_PROPERTY_VALUE_IDS_OF_UNREFERENCED_ROOTS_IN_RANGE, queryBoundsParam, collector);
+        return collector.toSortedUniqueArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<PropertyValueTableType, long[]> listPropertyValueInstanceIdsOfUnusedValues(final long[] valueIds)
+    {
+        ParameterCheck.mandatory("valueIds", valueIds);
+
+        final Map<PropertyValueTableType, LongIdCollector> collectors = new EnumMap<>(PropertyValueTableType.class);
+        this.flushBatchedDeletes();
+        this.selectByIds(SELECT_INSTANCE_REFERENCES_OF_UNREFERENCED_VALUES_BY_IDS, valueIds, CASCADE_SELECT_CHUNK_SIZE,
+                resultContext -> collectInstanceReference(resultContext.getResultObject(), collectors));
+        return toSortedUniqueArrays(collectors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<PropertyValueTableType, long[]> listPropertyValueInstanceIdsOfUnusedValues(final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdInclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        final Map<PropertyValueTableType, LongIdCollector> collectors = new EnumMap<>(PropertyValueTableType.class);
+        this.flushBatchedDeletes();
+        this.sqlSessionTemplate.select(SELECT_INSTANCE_REFERENCES_OF_UNREFERENCED_VALUES_IN_RANGE, queryBoundsParam,
+                resultContext -> collectInstanceReference(resultContext.getResultObject(), collectors));
+        return toSortedUniqueArrays(collectors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean streamPropertyRootIds(final Long fromIdExclusive, final Long toIdInclusive, final LongPredicate idConsumer)
+    {
+        return this.streamIds(SELECT_STREAMED_PROPERTY_ROOT_IDS, fromIdExclusive, toIdInclusive, idConsumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean streamPropertyValueIds(final Long fromIdExclusive, final Long toIdInclusive, final LongPredicate idConsumer)
+    {
+        return this.streamIds(SELECT_STREAMED_PROPERTY_VALUE_IDS, fromIdExclusive, toIdInclusive, idConsumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean streamPropertyValueInstanceIds(final PropertyValueTableType valueTableType, final Long fromIdExclusive,
+            final Long toIdInclusive, final LongPredicate idConsumer)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+
+        final String query;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                query = SELECT_STREAMED_PROPERTY_DOUBLE_VALUE_IDS;
+                break;
+            case SERIALIZABLE:
+                query = SELECT_STREAMED_PROPERTY_SERIALIZABLE_VALUE_IDS;
+                break;
+            case STRING:
+                query = SELECT_STREAMED_PROPERTY_STRING_VALUE_IDS;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        return this.streamIds(query, fromIdExclusive, toIdInclusive, idConsumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnusedEntriesEstimate estimateUnusedPropertyRoots(final int sampleRanges, final int rangeWidth)
+    {
+        return this.estimateUnusedEntries("alf_prop_root", this.getMaxPropertyRootId(), sampleRanges, rangeWidth,
+                this::listPropertyRootIdsInRangeAsArray, this::listUsedPropertyRootIdsAsArray);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnusedEntriesEstimate estimateUnusedPropertyValues(final int sampleRanges, final int rangeWidth)
+    {
+        return this.estimateUnusedEntries("alf_prop_value", this.getMaxPropertyValueId(), sampleRanges, rangeWidth,
+                this::listPropertyValueIdsInRangeAsArray, this::listUsedPropertyValueIdsAsArray);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UnusedEntriesEstimate estimateUnusedPropertyValueInstances(final PropertyValueTableType valueTableType, final int sampleRanges,
+            final int rangeWidth)
+    {
+        ParameterCheck.mandatory("valueTableType", valueTableType);
+
+        final String tableName;
+        switch (valueTableType)
+        {
+            case DOUBLE:
+                tableName = "alf_prop_double_value";
+                break;
+            case SERIALIZABLE:
+                tableName = "alf_prop_serializable_value";
+                break;
+            case STRING:
+                tableName = "alf_prop_string_value";
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported value table type: " + valueTableType);
+        }
+
+        return this.estimateUnusedEntries(tableName, this.getMaxPropertyValueInstanceId(valueTableType), sampleRanges, rangeWidth,
+                (fromId, toId) -> this.listPropertyValueInstanceIdsInRangeAsArray(valueTableType, fromId, toId),
+                (fromId, toId) -> this.listUsedPropertyValueInstanceIdsAsArray(valueTableType, fromId, toId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean streamAuditValuesIdsOfAuditEntries(final String applicationName, final Long fromTimeInclusive,
+            final Long toTimeExclusive, final LongPredicate idConsumer)
+    {
+        ParameterCheck.mandatoryString("applicationName", applicationName);
+        ParameterCheck.mandatory("idConsumer", idConsumer);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("applicationName", applicationName);
+        params.put("fromTime", fromTimeInclusive);
+        params.put("toTime", toTimeExclusive);
+
+        // always read from primary database as the audit entries are about to be cleared
+        final boolean[] stopped = new boolean[1];
+        this.sqlSessionTemplate.select(SELECT_AUDIT_VALUES_IDS_OF_AUDIT_ENTRIES, params, resultContext -> {
+            final Object resultObject = resultContext.getResultObject();
+            if (resultObject instanceof Number && !idConsumer.test(((Number) resultObject).longValue()))
+            {
+                stopped[0] = true;
+                resultContext.stop();
+            }
+        });
+        return !stopped[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Long, long[]> listDuplicatePropertyStringValues(final Long fromSurvivorIdExclusive, final Long toSurvivorIdInclusive,
+            final int maxGroups)
+    {
+        ParameterCheck.mandatory("toSurvivorIdInclusive", toSurvivorIdInclusive);
+        if (maxGroups <= 0)
+        {
+            throw new IllegalArgumentException("maxGroups must be a positive integer");
+        }
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromSurvivorIdExclusive);
+        queryBoundsParam.setToId(toSurvivorIdInclusive);
+
+        final Map<Long, LongIdCollector> collectorsBySurvivor = new LinkedHashMap<>();
+        this.sqlSessionTemplate.select(SELECT_DUPLICATE_PROPERTY_STRING_VALUES, queryBoundsParam, resultContext -> {
+            final PropertyStringValueDuplicate duplicate = (PropertyStringValueDuplicate) resultContext.getResultObject();
+            LongIdCollector collector = collectorsBySurvivor.get(duplicate.getSurvivorId());
+            if (collector == null)
+            {
+                if (collectorsBySurvivor.size() >= maxGroups)
+                {
+                    // result is ordered by survivor ID, so all duplicates of the requested groups have been read
+                    resultContext.stop();
+                    return;
+                }
+                collector = new LongIdCollector(4);
+                collectorsBySurvivor.put(duplicate.getSurvivorId(), collector);
+            }
+            collector.add(duplicate.getDuplicateId().longValue());
+        });
+
+        final Map<Long, long[]> duplicateIdsBySurvivor = new LinkedHashMap<>();
+        collectorsBySurvivor.forEach((survivorId, collector) -> duplicateIdsBySurvivor.put(survivorId, collector.toArray()));
+        return duplicateIdsBySurvivor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int mergeDuplicatePropertyStringValues(final long survivorId, final long[] duplicateIds)
+    {
+        ParameterCheck.mandatory("duplicateIds", duplicateIds);
+
+        int repointed = 0;
+        final PropertyStringValueDuplicate duplicate = new PropertyStringValueDuplicate();
+        duplicate.setSurvivorId(Long.valueOf(survivorId));
+        for (final long duplicateId : duplicateIds)
+        {
+            duplicate.setDuplicateId(Long.valueOf(duplicateId));
+            repointed += this.sqlSessionTemplate.update(UPDATE_PROPERTY_VALUE_STRING_REFERENCES, duplicate);
+        }
+
+        if (repointed > 0)
+        {
+            // cached alf_prop_value entries may still hold the old long_value, and cached string value lookups may resolve to duplicates
+            this.invalidateCache(this.propertyValueCache, repointed);
+            this.invalidateCache(this.propertyStringCache, repointed);
+        }
+        return repointed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Long, Long> listUnusedPropertySerializableValueSizes(final long minSizeInclusive, final int maxItems)
+    {
+        LOGGER.debug("Querying up to {} largest unreferenced alf_prop_serializable_value entries of at least {} bytes", maxItems,
+                minSizeInclusive);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("minSize", Long.valueOf(minSizeInclusive));
+        params.put("maxItems", Integer.valueOf(maxItems));
+
+        final Map<Long, Long> sizesById = new LinkedHashMap<>();
+        this.getReadSqlSessionTemplate().select(SELECT_UNREFERENCED_PROPERTY_SERIALIZABLE_VALUE_SIZES, params, resultContext -> {
+            final Object resultObject = resultContext.getResultObject();
+            if (resultObject instanceof PropertyValueInstanceSize)
+            {
+                final PropertyValueInstanceSize valueSize = (PropertyValueInstanceSize) resultObject;
+                if (valueSize.getId() != null)
+                {
+                    sizesById.put(valueSize.getId(), valueSize.getSize() != null ? valueSize.getSize() : Long.valueOf(0));
+                }
+            }
+        });
+
+        LOGGER.debug("Found {} unreferenced alf_prop_serializable_value entries", sizesById.size());
+        return sizesById;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] listExistingPropertySerializableValueIds(final long[] ids)
+    {
+        ParameterCheck.mandatory("ids", ids);
+
+        // always check on primary database as this is used to verify the effect of deletes
+        final LongIdCollector collector = new LongIdCollector();
+        this.flushBatchedDeletes();
+        this.selectByIds(SELECT_EXISTING_PROPERTY_SERIALIZABLE_VALUE_IDS_BY_IDS, ids, CASCADE_SELECT_CHUNK_SIZE, collector);
+        return collector.toSortedUniqueArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushCacheInvalidations()
+    {
+        if (this.cacheInvalidationCoordinator != null)
+        {
+            this.cacheInvalidationCoordinator.flush();
+        }
+
+        if (this.referenceScanCache != null && this.referenceScanCache.isEnabled())
+        {
+            LOGGER.info("Shared reference scan statistics: {} scans performed, {} requests served by shared scans",
+                    this.referenceScanCache.getScans(), this.referenceScanCache.getHits());
+        }
+    }
+
+    /**
+     * Retrieves the SQL session template to use for queries of existing / used IDs.
+     *
+     * @return the SQL session template of the read-only replica if enabled, or the regular SQL session template
+     */
+    protected SqlSessionTemplate getReadSqlSessionTemplate()
+    {
+        return this.readFromReplica && this.readSqlSessionTemplate != null ? this.readSqlSessionTemplate : this.sqlSessionTemplate;
+    }
+
+    /**
+     * Checks whether ID list deletes need to re-check references on the primary database as used IDs may have been determined from a
+     * lagging replica or from shared reference scans which may not include recently created references.
+     *
+     * @return {@code true} if references need to be re-checked
+     */
+    protected boolean isReferenceRecheckRequired()
+    {
+        return (this.readFromReplica && this.recheckReplicaReads) || (this.referenceScanCache != null && this.referenceScanCache.isEnabled());
+    }
+
+    /**
+     * Checks whether used IDs in a range can be determined via shared reference scans.
+     *
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range to check
+     * @param toIdInclusive
+     *            the inclusive to ID of the range to check
+     * @return {@code true} if shared reference scans are enabled and the range is bounded and small enough to not displace all cached
+     *         scan results
+     */
+    protected boolean isSharedReferenceScanApplicable(final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        boolean applicable = this.referenceScanCache != null && this.referenceScanCache.isEnabled() && fromIdInclusive != null
+                && toIdInclusive != null && fromIdInclusive.longValue() >= 0 && fromIdInclusive.longValue() <= toIdInclusive.longValue();
+        if (applicable)
+        {
+            final int blockSize = this.referenceScanCache.getBlockSize();
+            final long blocks = toIdInclusive.longValue() / blockSize - fromIdInclusive.longValue() / blockSize + 1;
+            applicable = blocks <= this.referenceScanCache.getMaxBlocks();
+        }
+        return applicable;
+    }
+
+    /**
+     * Collects all used entry IDs in a range from the shared scans of referencing tables, running any scans for blocks of IDs not
+     * already cached.
+     *
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range to check
+     * @param toIdInclusive
+     *            the inclusive to ID of the range to check
+     * @param idExtractor
+     *            the extractor for the relevant IDs from a scan result
+     * @param scans
+     *            the queries of the scans of referencing tables
+     * @return the sorted, duplicate-free array of used IDs
+     */
+    protected long[] collectSharedReferences(final long fromIdInclusive, final long toIdInclusive,
+            final Function<PropertyReferenceScanCache.ScanResult, long[]> idExtractor, final String... scans)
+    {
+        final int blockSize = this.referenceScanCache.getBlockSize();
+        final LongIdCollector collector = new LongIdCollector();
+        for (long blockIndex = fromIdInclusive / blockSize; blockIndex <= toIdInclusive / blockSize; blockIndex++)
+        {
+            final long blockFromId = blockIndex * blockSize;
+            final long blockToId = blockFromId + blockSize - 1;
+            for (final String scan : scans)
+            {
+                final PropertyReferenceScanCache.ScanResult scanResult = this.referenceScanCache.getOrLoad(scan, blockIndex,
+                        () -> this.scanReferences(scan, blockFromId, blockToId));
+                for (final long id : idExtractor.apply(scanResult))
+                {
+                    if (id >= fromIdInclusive && id <= toIdInclusive)
+                    {
+                        collector.add(id);
+                    }
+                }
+            }
+        }
+        return collector.toSortedUniqueArray();
+    }
+
+    /**
+     * Scans a referencing table for all references to alf_prop_* entries in a block of IDs.
+     *
+     * @param scan
+     *            the query of the scan
+     * @param fromIdInclusive
+     *            the inclusive from ID of the block
+     * @param toIdInclusive
+     *            the inclusive to ID of the block
+     * @return the result of the scan
+     */
+    protected PropertyReferenceScanCache.ScanResult scanReferences(final String scan, final long fromIdInclusive, final long toIdInclusive)
+    {
+        LOGGER.debug("Scanning references via {} from {} to {}", scan, fromIdInclusive, toIdInclusive);
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(Long.valueOf(fromIdInclusive));
+        queryBoundsParam.setToId(Long.valueOf(toIdInclusive));
+
+        final LongIdCollector rootCollector = new LongIdCollector();
+        final LongIdCollector valueCollector = new LongIdCollector();
+        final Map<PropertyValueTableType, LongIdCollector> instanceCollectors = new EnumMap<>(PropertyValueTableType.class);
+        this.getReadSqlSessionTemplate().select(scan, queryBoundsParam, resultContext -> {
+            final Object resultObject = resultContext.getResultObject();
+            if (resultObject instanceof PropertyReferenceRow)
+            {
+                // rows match if any reference column is within the block, so each column needs to be checked individually
+                final PropertyReferenceRow row = (PropertyReferenceRow) resultObject;
+                collectInRange(row.getRootId(), fromIdInclusive, toIdInclusive, rootCollector);
+                collectInRange(row.getValueId1(), fromIdInclusive, toIdInclusive, valueCollector);
+                collectInRange(row.getValueId2(), fromIdInclusive, toIdInclusive, valueCollector);
+                collectInRange(row.getValueId3(), fromIdInclusive, toIdInclusive, valueCollector);
+            }
+            else
+            {
+                collectInstanceReference(resultObject, instanceCollectors);
+            }
+        });
+
+        return new PropertyReferenceScanCache.ScanResult(rootCollector.toSortedUniqueArray(), valueCollector.toSortedUniqueArray(),
+                toSortedUniqueArrays(instanceCollectors));
+    }
+
+    /**
+     * Collects an ID into a collector if it is within a range.
+     *
+     * @param id
+     *            the ID to collect - may be {@code null}
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range
+     * @param toIdInclusive
+     *            the inclusive to ID of the range
+     * @param collector
+     *            the collector
+     */
+    protected static void collectInRange(final Long id, final long fromIdInclusive, final long toIdInclusive,
+            final LongIdCollector collector)
+    {
+        if (id != null && id.longValue() >= fromIdInclusive && id.longValue() <= toIdInclusive)
+        {
+            collector.add(id.longValue());
+        }
+    }
+
+    /**
+     * Invalidates a cache after entries have been deleted from the backing table.
+     *
+     * @param cache
+     *            the cache to invalidate - may be {@code null} if no cache has been configured for the backing table
+     * @param deletedEntries
+     *            the number of deleted entries
+     */
+    protected void invalidateCache(final SimpleCache<Serializable, Object> cache, final int deletedEntries)
+    {
+        if (cache != null)
+        {
+            if (this.cacheInvalidationCoordinator != null)
+            {
+                this.cacheInvalidationCoordinator.invalidate(cache, deletedEntries);
+            }
+            else
+            {
+                // due to complex key->entry + valueKey->entry mappings, it is easier + more efficient to just clear the cache
+                // there is also no way to limit the clearing to a particular cache region in case of cache re-use (default)
+                // (blame Alfresco's cache design)
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Determines the number of IDs to bind in a single ID list statement.
+     *
+     * @param chunkSize
+     *            the maximum number of IDs per statement when using IN-lists
+     * @param idCount
+     *            the total number of IDs to process
+     * @return the effective number of IDs per statement
+     */
+    protected int getIdListChunkSize(final int chunkSize, final int idCount)
+    {
+        return this.idArrayParameters || this.isIdStagingApplicable(idCount) ? Math.max(1, idCount) : chunkSize;
+    }
+
+    /**
+     * Checks whether an ID list is to be {@link #setIdStaging(boolean) staged} instead of being bound as parameters.
+     *
+     * @param idCount
+     *            the number of IDs in the list
+     * @return {@code true} if the ID list is to be staged
+     */
+    protected boolean isIdStagingApplicable(final int idCount)
+    {
+        return this.idStaging && idCount > 0 && idCount >= this.idStagingThreshold
+                && this.idStagingBootstrap.isStagingTableAvailable();
+    }
+
+    /**
+     * Queues the inserts of an ID list into the staging table via the {@link #setBatchSqlSessionTemplate(SqlSessionTemplate) batch
+     * SQL session template}. Since this template queues statements in order, any subsequent statement queued via the same template
+     * is guaranteed to see all staged IDs, while statements run via other templates require the queued statements to be flushed
+     * first.
+     *
+     * @param ids
+     *            the IDs to stage
+     * @return the key identifying the staged IDs
+     */
+    protected Long stageIds(final long[] ids)
+    {
+        final Long stageKey = Long.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+
+        // batch executor binds parameters immediately, so the parameter object can be reused
+        final StagedIdParam stagedIdParam = new StagedIdParam();
+        stagedIdParam.setStageKey(stageKey);
+        for (final long id : ids)
+        {
+            stagedIdParam.setId(Long.valueOf(id));
+            this.batchSqlSessionTemplate.insert(INSERT_STAGED_ID, stagedIdParam);
+        }
+        LOGGER.trace("Staged {} IDs with key {}", ids.length, stageKey);
+        return stageKey;
+    }
+
+    /**
+     * Runs an operation on a staged ID list, staging the IDs before and removing them from the staging table after the operation.
+     *
+     * @param ids
+     *            the IDs to stage
+     * @param operation
+     *            the operation to run using the key identifying the staged IDs
+     * @return the result of the operation
+     */
+    protected <R> R withStagedIds(final long[] ids, final Function<Long, R> operation)
+    {
+        final Long stageKey = this.stageIds(ids);
+        this.batchSqlSessionTemplate.flushStatements();
+        try
+        {
+            return operation.apply(stageKey);
+        }
+        finally
+        {
+            this.batchSqlSessionTemplate.delete(DELETE_STAGED_IDS, stageKey);
+        }
+    }
+
+    /**
+     * Runs an ID list select statement, either splitting the IDs into chunks of a specific size, binding them as a single array
+     * parameter or {@link #setIdStaging(boolean) staging} them, depending on the database and configuration.
+     *
+     * @param query
+     *            the ID list select statement
+     * @param ids
+     *            the IDs to select by
+     * @param chunkSize
+     *            the maximum number of IDs per statement when using IN-lists
+     * @param resultHandler
+     *            the handler for the selected results
+     */
+    protected <T> void selectByIds(final String query, final long[] ids, final int chunkSize, final ResultHandler<T> resultHandler)
+    {
+        if (this.isIdStagingApplicable(ids.length))
+        {
+            this.withStagedIds(ids, stageKey -> {
+                this.sqlSessionTemplate.select(query + STAGED_QUERY_SUFFIX, stageKey, resultHandler);
+                return null;
+            });
+        }
+        else
+        {
+            final int effectiveChunkSize = this.getIdListChunkSize(chunkSize, ids.length);
+            for (int offset = 0; offset < ids.length; offset += effectiveChunkSize)
+            {
+                final long[] chunk = Arrays.copyOfRange(ids, offset, Math.min(ids.length, offset + effectiveChunkSize));
+                this.sqlSessionTemplate.select(query, LongIdArrays.asList(chunk), resultHandler);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a database dialect class (or any of its super classes) represents a database for which the ID list statements
+     * bind a single array parameter.
+     *
+     * @param dialectClass
+     *            the class of the dialect
+     * @return {@code true} if ID lists are bound as a single array parameter
+     */
+    protected static boolean isIdArrayDialect(final Class<?> dialectClass)
+    {
+        boolean idArrayDialect = false;
+        Class<?> currentClass = dialectClass;
+        while (!idArrayDialect && currentClass != null)
+        {
+            idArrayDialect = ID_ARRAY_DIALECT_NAME.equals(currentClass.getSimpleName());
+            currentClass = currentClass.getSuperclass();
+        }
+        return idArrayDialect;
+    }
+
+    /**
+     * Deletes entries via an ID list delete statement. If a {@link #setDeleteChunkSize(int) chunk size} has been configured, the IDs
+     * are split into chunks of exactly that size, padding the last chunk by repeating its last ID, so that the statement text is
+     * always identical regardless of the number of IDs to delete. This allows the database to reuse a single parsed statement and
+     * the {@link #setBatchedDeletes(boolean) batched} mode to group all deletes into a single JDBC batch. Chunking is skipped if ID
+     * lists are bound as a single array parameter or {@link #setIdStaging(boolean) staged}, as the statement text is then identical
+     * for any number of IDs.
+     *
+     * @param query
+     *            the ID list delete statement
+     * @param ids
+     *            the IDs of the entries to delete
+     */
+    protected void deleteIds(final String query, final long[] ids)
+    {
+        if (ids.length == 0)
+        {
+            return;
+        }
+
+        final SqlSessionTemplate template = this.batchedDeletes ? this.batchSqlSessionTemplate : this.sqlSessionTemplate;
+        if (this.isIdStagingApplicable(ids.length))
+        {
+            if (this.batchedDeletes)
+            {
+                // queued in order after the staged IDs and before their removal
+                final Long stageKey = this.stageIds(ids);
+                template.delete(query + STAGED_QUERY_SUFFIX, stageKey);
+                template.delete(DELETE_STAGED_IDS, stageKey);
+            }
+            else
+            {
+                this.withStagedIds(ids, stageKey -> template.delete(query + STAGED_QUERY_SUFFIX, stageKey));
+            }
+        }
+        else if (this.deleteChunkSize <= 0 || this.idArrayParameters)
+        {
+            template.delete(query, LongIdArrays.asList(ids));
+        }
+        else
+        {
+            for (int offset = 0; offset < ids.length; offset += this.deleteChunkSize)
+            {
+                final int length = Math.min(this.deleteChunkSize, ids.length - offset);
+                final long[] chunk = Arrays.copyOfRange(ids, offset, offset + this.deleteChunkSize);
+                if (length < this.deleteChunkSize)
+                {
+                    Arrays.fill(chunk, length, this.deleteChunkSize, chunk[length - 1]);
+                }
+                template.delete(query, LongIdArrays.asList(chunk));
+            }
+        }
+    }
+
+    /**
+     * Sends any ID list deletes queued in {@link #setBatchedDeletes(boolean) batched} mode to the database. This must be called before
+     * any statement of the same transaction which depends on the effect of those deletes, e.g. guarded deletes re-checking references
+     * to downstream entries, as those would otherwise still see the references of the not yet deleted upstream entries.
+     */
+    protected void flushBatchedDeletes()
+    {
+        if (this.batchedDeletes)
+        {
+            this.batchSqlSessionTemplate.flushStatements();
+        }
+    }
+
+    /**
+     * Deletes entries via a guarded ID list delete statement which re-checks references as part of the delete. The IDs are split
+     * into chunks in the same way as for {@link #deleteIds(String, long[]) regular ID list deletes}, but always executed immediately
+     * as the number of deleted entries is required.
+     *
+     * @param query
+     *            the guarded ID list delete statement
+     * @param ids
+     *            the IDs of the candidate entries to delete
+     * @param cache
+     *            the cache to invalidate if any entries have been deleted
+     * @return the number of deleted entries
+     */
+    protected int deleteUnreferencedIds(final String query, final long[] ids, final SimpleCache<Serializable, Object> cache)
+    {
+        int deleted = 0;
+        if (ids.length > 0)
+        {
+            this.flushBatchedDeletes();
+            if (this.isIdStagingApplicable(ids.length))
+            {
+                deleted = this.withStagedIds(ids, stageKey -> this.sqlSessionTemplate.delete(query + STAGED_QUERY_SUFFIX, stageKey))
+                        .intValue();
+            }
+            else if (this.deleteChunkSize <= 0 || this.idArrayParameters)
+            {
+                deleted = this.sqlSessionTemplate.delete(query, LongIdArrays.asList(ids));
+            }
+            else
+            {
+                for (int offset = 0; offset < ids.length; offset += this.deleteChunkSize)
+                {
+                    final int length = Math.min(this.deleteChunkSize, ids.length - offset);
+                    final long[] chunk = Arrays.copyOfRange(ids, offset, offset + this.deleteChunkSize);
+                    if (length < this.deleteChunkSize)
+                    {
+                        Arrays.fill(chunk, length, this.deleteChunkSize, chunk[length - 1]);
+                    }
+                    deleted += this.sqlSessionTemplate.delete(query, LongIdArrays.asList(chunk));
+                }
+            }
+
+            if (deleted > 0)
+            {
+                this.invalidateCache(cache, deleted);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Loads all referenced IDs within a range of IDs selected by a query into a compressed bitmap, streaming the result set of the
+     * query.
+     *
+     * @param query
+     *            the query selecting the referenced IDs
+     * @param fromIdInclusive
+     *            the first referenced ID to include - may be {@code null}
+     * @param toIdInclusive
+     *            the last referenced ID to include - may be {@code null}
+     * @return the bitmap of referenced IDs
+     */
+    protected RoaringIdBitmap loadReferencedIds(final String query, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdInclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        final RoaringIdBitmap referencedIds = new RoaringIdBitmap();
+        this.getReadSqlSessionTemplate().select(query, queryBoundsParam, resultContext -> {
+            final Object resultObject = resultContext.getResultObject();
+            if (resultObject instanceof Number)
+            {
+                referencedIds.add(((Number) resultObject).longValue());
+            }
+        });
+        return referencedIds;
+    }
+
+    /**
+     * Estimates the number of unused entries in a table by checking the references of entries in a random sample of ID ranges
+     * (drawn without replacement), extrapolating the mean number of unused entries per range to all ranges up to the highest ID. The
+     * confidence interval is derived from the sample variance, including the finite population correction.
+     *
+     * @param tableName
+     *            the name of the table for reporting
+     * @param maxId
+     *            the highest ID of the table
+     * @param sampleRanges
+     *            the number of ID ranges to sample
+     * @param rangeWidth
+     *            the width of each ID range
+     * @param existingIdsLookup
+     *            the lookup of existing IDs in an ID range
+     * @param usedIdsLookup
+     *            the lookup of used IDs in an ID range
+     * @return the estimate or {@code null} if the table does not contain any entries
+     */
+    protected UnusedEntriesEstimate estimateUnusedEntries(final String tableName, final Long maxId, final int sampleRanges,
+            final int rangeWidth, final BiFunction<Long, Long, long[]> existingIdsLookup,
+            final BiFunction<Long, Long, long[]> usedIdsLookup)
+    {
+        if (sampleRanges <= 0 || rangeWidth <= 0)
+        {
+            throw new IllegalArgumentException("sampleRanges and rangeWidth must be positive values");
+        }
+
+        if (maxId == null)
+        {
+            LOGGER.debug("Table {} does not contain any entries to estimate", tableName);
+            return null;
+        }
+
+        final long totalRanges = maxId.longValue() / rangeWidth + 1;
+        final long[] rangeIndices = selectSampleRanges(totalRanges, (int) Math.min(sampleRanges, totalRanges));
+        LOGGER.debug("Sampling {} of {} ID ranges of width {} in {}", rangeIndices.length, totalRanges, rangeWidth, tableName);
+
+        long sampledEntries = 0;
+        long sampledUnusedEntries = 0;
+        double sumUnused = 0;
+        double sumSquaredUnused = 0;
+        double sumRuntime = 0;
+        for (final long rangeIndex : rangeIndices)
+        {
+            final Long fromId = Long.valueOf(rangeIndex * rangeWidth);
+            final Long toId = Long.valueOf(rangeIndex * rangeWidth + rangeWidth - 1);
+
+            final long start = System.nanoTime();
+            final long[] existingIds = existingIdsLookup.apply(fromId, toId);
+            int unused = 0;
+            if (existingIds.length != 0)
+            {
+                // narrow reference checks to the actually existing IDs, same as actual cleanup
+                final long[] usedIds = usedIdsLookup.apply(Long.valueOf(existingIds[0]),
+                        Long.valueOf(existingIds[existingIds.length - 1]));
+                unused = LongIdArrays.difference(existingIds, usedIds).length;
+            }
+            final double runtime = (System.nanoTime() - start) / 1_000_000d;
+
+            sampledEntries += existingIds.length;
+            sampledUnusedEntries += unused;
+            sumUnused += unused;
+            sumSquaredUnused += (double) unused * unused;
+            sumRuntime += runtime;
+        }
+
+        final int sampleCount = rangeIndices.length;
+        final double meanUnused = sumUnused / sampleCount;
+        final double sampleVariance = sampleCount > 1
+                ? Math.max(0, (sumSquaredUnused - sampleCount * meanUnused * meanUnused) / (sampleCount - 1))
+                : 0;
+        final double finitePopulationCorrection = totalRanges > 1 ? (double) (totalRanges - sampleCount) / (totalRanges - 1) : 0;
+        final double standardError = totalRanges * Math.sqrt(sampleVariance / sampleCount * finitePopulationCorrection);
+
+        final long estimatedEntries = Math.round(totalRanges * ((double) sampledEntries / sampleCount));
+        final long estimatedUnusedEntries = Math.round(totalRanges * meanUnused);
+        // the unused entries found in the sample are a hard lower bound
+        final long lowerBound = Math.max(sampledUnusedEntries, Math.round(estimatedUnusedEntries - CONFIDENCE_Z_SCORE * standardError));
+        final long upperBound = Math.round(estimatedUnusedEntries + CONFIDENCE_Z_SCORE * standardError);
+        final long estimatedCheckRuntime = Math.round(totalRanges * (sumRuntime / sampleCount));
+
+        final UnusedEntriesEstimate estimate = new UnusedEntriesEstimate(tableName, maxId.longValue(), sampleCount, totalRanges,
+                sampledEntries, sampledUnusedEntries, estimatedEntries, estimatedUnusedEntries, lowerBound, upperBound,
+                estimatedCheckRuntime);
+        LOGGER.debug("Estimated unused entries: {}", estimate);
+        return estimate;
+    }
+
+    /**
+     * Selects distinct random indices of ID ranges to sample using Floyd's algorithm.
+     *
+     * @param totalRanges
+     *            the total number of ID ranges
+     * @param sampleCount
+     *            the number of ID ranges to select
+     * @return the selected indices in ascending order
+     */
+    protected static long[] selectSampleRanges(final long totalRanges, final int sampleCount)
+    {
+        final LongIdCollector collector = new LongIdCollector(sampleCount);
+        if (sampleCount >= totalRanges)
+        {
+            for (long rangeIndex = 0; rangeIndex < totalRanges; rangeIndex++)
+            {
+                collector.add(rangeIndex);
+            }
+        }
+        else
+        {
+            final Set<Long> selected = new HashSet<>();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (long candidateLimit = totalRanges - sampleCount; candidateLimit < totalRanges; candidateLimit++)
+            {
+                final long candidate = random.nextLong(candidateLimit + 1);
+                final Long rangeIndex = Long.valueOf(selected.contains(Long.valueOf(candidate)) ? candidateLimit : candidate);
+                selected.add(rangeIndex);
+                collector.add(rangeIndex.longValue());
+            }
+        }
+        return collector.toSortedUniqueArray();
+    }
 
+    /**
+     * Streams IDs selected by an ordered scan to a consumer, stopping the scan as soon as the consumer rejects an ID.
+     *
+     * @param query
+     *            the query performing the scan
+     * @param fromIdExclusive
+     *            the exclusive ID after which to start - may be {@code null}
+     * @param toIdInclusive
+     *            the inclusive ID at which to end - may be {@code null}
+     * @param idConsumer
+     *            the consumer of IDs
+     * @return {@code true} if all IDs have been streamed, {@code false} if the scan was stopped by the consumer
+     */
+    protected boolean streamIds(final String query, final Long fromIdExclusive, final Long toIdInclusive, final LongPredicate idConsumer)
+    {
+        ParameterCheck.mandatory("idConsumer", idConsumer);
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdExclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        final boolean[] stopped = new boolean[1];
+        this.getReadSqlSessionTemplate().select(query, queryBoundsParam, resultContext -> {
+            final Object resultObject = resultContext.getResultObject();
+            if (resultObject instanceof Number && !idConsumer.test(((Number) resultObject).longValue()))
+            {
+                stopped[0] = true;
+                resultContext.stop();
+            }
+        });
+        return !stopped[0];
+    }
+
+    /**
+     * Selects all existing IDs within a specific range.
+     *
+     * @param query
+     *            the query to use to retrieve existing IDs
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range
+     * @param toIdInclusive
+     *            the inclusive to ID of the range
+     * @return the selected IDs in ascending order
+     */
+    protected long[] selectExistingIdsInRange(final String query, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        ParameterCheck.mandatory("fromIdInclusive", fromIdInclusive);
+        ParameterCheck.mandatory("toIdInclusive", toIdInclusive);
+
+        final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
+        queryBoundsParam.setFromId(fromIdInclusive);
+        queryBoundsParam.setToId(toIdInclusive);
+
+        final long span = toIdInclusive.longValue() - fromIdInclusive.longValue() + 1;
+        final LongIdCollector collector = new LongIdCollector((int) Math.max(1, Math.min(span, 1024)));
+        this.getReadSqlSessionTemplate().select(query, queryBoundsParam, collector);
+        return collector.toArray();
+    }
+
+    /**
+     * Searches for all used entry IDs from foreign key a specific alf_prop_* tables
+     *
+     * @param fromIdInclusive
+     *            the inclusive from ID of the range to check
+     * @param toIdInclusive
+     *            the inclusive to ID of the range to check
+     * @param queries
+     *            the queries to use to retrieve foreign keys in other table
+     * @return the sorted, duplicate-free array of used IDs
+     */
+    protected long[] collectUsedIds(final Long fromIdInclusive, final Long toIdInclusive, final String... queries)
+    {
         final CleanupQueryBoundsParam queryBoundsParam = new CleanupQueryBoundsParam();
         queryBoundsParam.setFromId(fromIdInclusive);
         queryBoundsParam.setToId(toIdInclusive);
 
+        final LongIdCollector collector = new LongIdCollector();
         for (final String query : queries)
         {
-            final List<Long> ids = this.sqlSessionTemplate.selectList(query, queryBoundsParam);
-            usedIds.addAll(ids);
+            this.getReadSqlSessionTemplate().select(query, queryBoundsParam, collector);
+        }
+
+        return collector.toSortedUniqueArray();
+    }
+
+    /**
+     * Collects the ID of an alf_prop_*_value entry referenced from an alf_prop_value entry into the collector for the appropriate type
+     * of value table.
+     *
+     * @param resultObject
+     *            the result object of the query - expected to be a {@link PropertyValueInstanceReference}
+     * @param collectors
+     *            the collectors per type of value table
+     */
+    protected static void collectInstanceReference(final Object resultObject,
+            final Map<PropertyValueTableType, LongIdCollector> collectors)
+    {
+        if (resultObject instanceof PropertyValueInstanceReference)
+        {
+            final PropertyValueInstanceReference reference = (PropertyValueInstanceReference) resultObject;
+            final Integer persistedType = reference.getPersistedType();
+            final Long longValue = reference.getLongValue();
+            if (persistedType != null && longValue != null)
+            {
+                // see org.alfresco.repo.domain.propval.PropertyValueEntity.PersistedType
+                final PropertyValueTableType valueTableType;
+                switch (persistedType.intValue())
+                {
+                    case 2:
+                        valueTableType = PropertyValueTableType.DOUBLE;
+                        break;
+                    case 3:
+                    case 5:
+                    case 6:
+                        valueTableType = PropertyValueTableType.STRING;
+                        break;
+                    case 4:
+                        valueTableType = PropertyValueTableType.SERIALIZABLE;
+                        break;
+                    default:
+                        valueTableType = null;
+                }
+
+                if (valueTableType != null)
+                {
+                    collectors.computeIfAbsent(valueTableType, k -> new LongIdCollector()).add(longValue.longValue());
+                }
+            }
         }
+    }
 
-        final List<Long> result = new ArrayList<>(usedIds);
-        Collections.sort(result);
+    /**
+     * Converts the collected IDs per type of value table into sorted, duplicate-free arrays.
+     *
+     * @param collectors
+     *            the collectors per type of value table
+     * @return the arrays of IDs per type of value table
+     */
+    protected static Map<PropertyValueTableType, long[]> toSortedUniqueArrays(
+            final Map<PropertyValueTableType, LongIdCollector> collectors)
+    {
+        final Map<PropertyValueTableType, long[]> result = new EnumMap<>(PropertyValueTableType.class);
+        collectors.forEach((valueTableType, collector) -> result.put(valueTableType, collector.toSortedUniqueArray()));
         return result;
     }
+
+    /**
+     * Converts an array of IDs into a modifiable list.
+     *
+     * @param ids
+     *            the IDs to convert
+     * @return the list of IDs
+     */
+    protected static List<Long> toList(final long[] ids)
+    {
+        return new ArrayList<>(LongIdArrays.asList(ids));
+    }
+
+    /**
+     * Converts a list of IDs into an array, ignoring any {@code null} elements.
+     *
+     * @param ids
+     *            the IDs to convert
+     * @return the array of IDs
+     */
+    protected static long[] toArray(final List<Long> ids)
+    {
+        final LongIdCollector collector = new LongIdCollector(ids.size());
+        for (final Long id : ids)
+        {
+            if (id != null)
+            {
+                collector.add(id.longValue());
+            }
+        }
+        return collector.toArray();
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.AbstractLifecycleBean;
+import org.alfresco.util.PropertyCheck;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Instances of this class create the table used to stage large ID lists of the incremental cleanup of alf_prop_* tables on databases
+ * for which the dialect-specific SQL supports staging (currently Oracle and MS SQL Server). On Oracle, the table is created as a global
+ * temporary table, so that staged IDs are private to each session and never persisted.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyTablesIdStagingBootstrap extends AbstractLifecycleBean implements InitializingBean
+{
+
+    public static final String STAGING_TABLE_NAME = "acx_cleanup_staged_id";
+
+    private static final String CREATE_STAGING_TABLE = "propertyTableCleanup.create_idStagingTable";
+
+    private static final String CREATE_STAGING_TABLE_INDEX = "propertyTableCleanup.create_idStagingTableIndex";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyTablesIdStagingBootstrap.class);
+
+    protected boolean enabled;
+
+    protected DataSource dataSource;
+
+    protected SqlSessionTemplate sqlSessionTemplate;
+
+    protected TransactionService transactionService;
+
+    protected volatile boolean stagingTableAvailable;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "dataSource", this.dataSource);
+        PropertyCheck.mandatory(this, "sqlSessionTemplate", this.sqlSessionTemplate);
+        PropertyCheck.mandatory(this, "transactionService", this.transactionService);
+    }
+
+    /**
+     * @param enabled
+     *            the enabled to set
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param dataSource
+     *            the dataSource to set
+     */
+    public void setDataSource(final DataSource dataSource)
+    {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param sqlSessionTemplate
+     *            the sqlSessionTemplate to set
+     */
+    public void setSqlSessionTemplate(final SqlSessionTemplate sqlSessionTemplate)
+    {
+        this.sqlSessionTemplate = sqlSessionTemplate;
+    }
+
+    /**
+     * @param transactionService
+     *            the transactionService to set
+     */
+    public void setTransactionService(final TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Checks whether the staging table has been verified to exist / been created during the bootstrap of this instance. Staging of ID
+     * lists must not be used if this is not the case.
+     *
+     * @return {@code true} if the staging table is available, {@code false} otherwise
+     */
+    public boolean isStagingTableAvailable()
+    {
+        return this.stagingTableAvailable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onBootstrap(final ApplicationEvent event)
+    {
+        if (this.enabled)
+        {
+            if (!this.sqlSessionTemplate.getConfiguration().hasStatement(CREATE_STAGING_TABLE))
+            {
+                LOGGER.warn("Staging of ID lists is not supported for the database in use - ID lists will be bound as regular parameters");
+            }
+            else
+            {
+                try
+                {
+                    if (this.stagingTableExists())
+                    {
+                        LOGGER.debug("Staging table {} already exists", STAGING_TABLE_NAME);
+                        this.stagingTableAvailable = true;
+                    }
+                    else if (this.transactionService.isReadOnly())
+                    {
+                        LOGGER.warn("Staging table {} is missing and cannot be created as the repository is in read-only mode",
+                                STAGING_TABLE_NAME);
+                    }
+                    else
+                    {
+                        this.createStagingTable();
+                    }
+                }
+                catch (final SQLException e)
+                {
+                    LOGGER.error("Failed to check existence of staging table {}", STAGING_TABLE_NAME, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onShutdown(final ApplicationEvent event)
+    {
+        // NO-OP
+    }
+
+    protected boolean stagingTableExists() throws SQLException
+    {
+        try (Connection connection = this.dataSource.getConnection())
+        {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            // table names may be stored in upper / lower case depending on database
+            return this.tableExists(metaData, connection.getCatalog(), STAGING_TABLE_NAME)
+                    || this.tableExists(metaData, connection.getCatalog(), STAGING_TABLE_NAME.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    protected boolean tableExists(final DatabaseMetaData metaData, final String catalog, final String tableName) throws SQLException
+    {
+        try (ResultSet tables = metaData.getTables(catalog, null, tableName, null))
+        {
+            return tables.next();
+        }
+    }
+
+    protected void createStagingTable()
+    {
+        LOGGER.info("Creating staging table {}", STAGING_TABLE_NAME);
+        try
+        {
+            this.transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+                this.sqlSessionTemplate.update(CREATE_STAGING_TABLE);
+                this.sqlSessionTemplate.update(CREATE_STAGING_TABLE_INDEX);
+                return null;
+            }, false, true);
+            this.stagingTableAvailable = true;
+        }
+        catch (final RuntimeException e)
+        {
+            LOGGER.error("Failed to create staging table {}", STAGING_TABLE_NAME, e);
+        }
+    }
+}
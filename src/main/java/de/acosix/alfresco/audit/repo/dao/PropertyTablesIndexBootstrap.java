@@ -0,0 +1,414 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.AbstractLifecycleBean;
+import org.alfresco.util.PropertyCheck;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEvent;
+
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+
+/**
+ * Instances of this class check whether the columns used in the reference checks of the incremental cleanup of alf_prop_* tables are
+ * covered by a usable index, i.e. an index with the column(s) in leading position, and optionally create any missing indexes using
+ * dialect-specific DDL. A report of index coverage per reference check is logged before and after any indexes are created. Missing indexes
+ * are only created while holding a cluster-wide lock, so that only one server of a cluster executes the DDL. Dialects which support
+ * creating indexes without blocking concurrent writes outside of a transaction (e.g. {@code create index concurrently} on PostgreSQL)
+ * provide a separate statement, which is executed on a connection in auto-commit mode.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class PropertyTablesIndexBootstrap extends AbstractLifecycleBean implements InitializingBean
+{
+
+    private static final String CREATE_INDEX = "propertyTablesIndexes.create_index";
+
+    private static final String CREATE_INDEX_CONCURRENTLY = "propertyTablesIndexes.create_indexConcurrently";
+
+    private static final QName LOCK_QNAME = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE,
+            PropertyTablesIndexBootstrap.class.getSimpleName());
+
+    // generous as creating an index on a large table may take a while - lock is refreshed before each index
+    private static final long LOCK_TTL = 30 * 60 * 1000l;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyTablesIndexBootstrap.class);
+
+    // index names limited to 30 characters for compatibility with older Oracle versions
+    protected static final List<IndexDefinition> INDEX_DEFINITIONS = Collections.unmodifiableList(Arrays.asList(
+            new IndexDefinition("acx_idx_aud_ent_vals", "alf_audit_entry", "select_usedAuditValues", "audit_values_id"),
+            new IndexDefinition("acx_idx_aud_ent_user", "alf_audit_entry", "select_usedAuditUsers", "audit_user_id"),
+            new IndexDefinition("acx_idx_aud_app_name", "alf_audit_app", "select_usedAuditAppNames", "app_name_id"),
+            new IndexDefinition("acx_idx_aud_app_dis", "alf_audit_app", "select_usedAuditAppDisabledPaths", "disabled_paths_id"),
+            new IndexDefinition("acx_idx_prop_link_key", "alf_prop_link", "select_usedPropLinkKeys", "key_prop_id"),
+            new IndexDefinition("acx_idx_prop_link_val", "alf_prop_link", "select_usedPropLinkValues", "value_prop_id"),
+            new IndexDefinition("acx_idx_prop_uctx_p1", "alf_prop_unique_ctx", "select_usedUniqueContextProps", "prop1_id"),
+            new IndexDefinition("acx_idx_prop_uctx_v1", "alf_prop_unique_ctx", "select_usedUniqueContextValues1", "value1_prop_id"),
+            new IndexDefinition("acx_idx_prop_uctx_v2", "alf_prop_unique_ctx", "select_usedUniqueContextValues2", "value2_prop_id"),
+            new IndexDefinition("acx_idx_prop_uctx_v3", "alf_prop_unique_ctx", "select_usedUniqueContextValues3", "value3_prop_id"),
+            new IndexDefinition("acx_idx_prop_val_per", "alf_prop_value", "select_usedProperty*ValueIds", "persisted_type",
+                    "long_value")));
+
+    protected boolean enabled;
+
+    protected boolean createMissingIndexes;
+
+    protected DataSource dataSource;
+
+    protected SqlSessionTemplate sqlSessionTemplate;
+
+    protected TransactionService transactionService;
+
+    protected JobLockService jobLockService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "dataSource", this.dataSource);
+        PropertyCheck.mandatory(this, "sqlSessionTemplate", this.sqlSessionTemplate);
+        PropertyCheck.mandatory(this, "transactionService", this.transactionService);
+        PropertyCheck.mandatory(this, "jobLockService", this.jobLockService);
+    }
+
+    /**
+     * @param enabled
+     *            the enabled to set
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param createMissingIndexes
+     *            {@code true} if missing indexes should be created, {@code false} if they should only be reported
+     */
+    public void setCreateMissingIndexes(final boolean createMissingIndexes)
+    {
+        this.createMissingIndexes = createMissingIndexes;
+    }
+
+    /**
+     * @param dataSource
+     *            the dataSource to set
+     */
+    public void setDataSource(final DataSource dataSource)
+    {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param sqlSessionTemplate
+     *            the sqlSessionTemplate to set
+     */
+    public void setSqlSessionTemplate(final SqlSessionTemplate sqlSessionTemplate)
+    {
+        this.sqlSessionTemplate = sqlSessionTemplate;
+    }
+
+    /**
+     * @param transactionService
+     *            the transactionService to set
+     */
+    public void setTransactionService(final TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param jobLockService
+     *            the jobLockService to set
+     */
+    public void setJobLockService(final JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onBootstrap(final ApplicationEvent event)
+    {
+        if (this.enabled)
+        {
+            try
+            {
+                if (this.createMissingIndexes && !this.transactionService.isReadOnly())
+                {
+                    this.checkAndCreateIndexesWithLock();
+                }
+                else
+                {
+                    final List<IndexDefinition> missingIndexes = this.checkIndexCoverage("before");
+                    if (!missingIndexes.isEmpty())
+                    {
+                        LOGGER.warn(
+                                "{} indexes supporting the reference checks of the incremental cleanup of alf_prop_* tables are missing - enable creation of missing indexes or create them manually",
+                                missingIndexes.size());
+                    }
+                }
+            }
+            catch (final SQLException e)
+            {
+                LOGGER.error("Failed to check index coverage of reference checks", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onShutdown(final ApplicationEvent event)
+    {
+        // NO-OP
+    }
+
+    protected void checkAndCreateIndexesWithLock() throws SQLException
+    {
+        final String lockToken;
+        try
+        {
+            lockToken = this.jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+        }
+        catch (final LockAcquisitionException e)
+        {
+            LOGGER.info("Index coverage of reference checks is being checked and missing indexes created by another server in the cluster");
+            return;
+        }
+
+        try
+        {
+            // checked while holding the lock, so indexes created by another server are never created twice
+            final List<IndexDefinition> missingIndexes = this.checkIndexCoverage("before");
+            if (!missingIndexes.isEmpty())
+            {
+                for (final IndexDefinition missingIndex : missingIndexes)
+                {
+                    this.jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL);
+                    this.createIndex(missingIndex);
+                }
+                this.checkIndexCoverage("after");
+            }
+        }
+        finally
+        {
+            this.jobLockService.releaseLock(lockToken, LOCK_QNAME);
+        }
+    }
+
+    protected List<IndexDefinition> checkIndexCoverage(final String reportLabel) throws SQLException
+    {
+        final List<IndexDefinition> missingIndexes = new ArrayList<>();
+        try (Connection connection = this.dataSource.getConnection())
+        {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            final Map<String, List<List<String>>> indexColumnsByTable = new HashMap<>();
+
+            for (final IndexDefinition indexDefinition : INDEX_DEFINITIONS)
+            {
+                List<List<String>> tableIndexColumns = indexColumnsByTable.get(indexDefinition.getTableName());
+                if (tableIndexColumns == null)
+                {
+                    tableIndexColumns = this.loadIndexColumns(metaData, connection, indexDefinition.getTableName());
+                    indexColumnsByTable.put(indexDefinition.getTableName(), tableIndexColumns);
+                }
+
+                final boolean covered = tableIndexColumns.stream().anyMatch(indexDefinition::isCoveredBy);
+                LOGGER.info("Index coverage {} bootstrap: {} on {}({}) - {}", reportLabel, indexDefinition.getUsingQuery(),
+                        indexDefinition.getTableName(), String.join(", ", indexDefinition.getColumnNames()),
+                        covered ? "covered" : "NOT covered (full scan per range check)");
+                if (!covered)
+                {
+                    missingIndexes.add(indexDefinition);
+                }
+            }
+        }
+        return missingIndexes;
+    }
+
+    protected List<List<String>> loadIndexColumns(final DatabaseMetaData metaData, final Connection connection, final String tableName)
+            throws SQLException
+    {
+        // table names may be stored in upper / lower case depending on database
+        List<List<String>> indexColumns = this.loadIndexColumns(metaData, connection.getCatalog(), tableName);
+        if (indexColumns.isEmpty())
+        {
+            indexColumns = this.loadIndexColumns(metaData, connection.getCatalog(), tableName.toUpperCase(Locale.ENGLISH));
+        }
+        return indexColumns;
+    }
+
+    protected List<List<String>> loadIndexColumns(final DatabaseMetaData metaData, final String catalog, final String tableName)
+            throws SQLException
+    {
+        final Map<String, Map<Short, String>> columnsByIndex = new HashMap<>();
+        try (ResultSet indexInfo = metaData.getIndexInfo(catalog, null, tableName, false, true))
+        {
+            while (indexInfo.next())
+            {
+                final String indexName = indexInfo.getString("INDEX_NAME");
+                final String columnName = indexInfo.getString("COLUMN_NAME");
+                if (indexName != null && columnName != null)
+                {
+                    columnsByIndex.computeIfAbsent(indexName, k -> new TreeMap<>()).put(indexInfo.getShort("ORDINAL_POSITION"),
+                            columnName.toLowerCase(Locale.ENGLISH));
+                }
+            }
+        }
+
+        final List<List<String>> indexColumns = new ArrayList<>();
+        columnsByIndex.values().forEach(columns -> indexColumns.add(new ArrayList<>(columns.values())));
+        return indexColumns;
+    }
+
+    protected void createIndex(final IndexDefinition indexDefinition)
+    {
+        LOGGER.info("Creating index {} on {}({})", indexDefinition.getIndexName(), indexDefinition.getTableName(),
+                String.join(", ", indexDefinition.getColumnNames()));
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put("indexName", indexDefinition.getIndexName());
+        params.put("tableName", indexDefinition.getTableName());
+        params.put("columnNames", String.join(", ", indexDefinition.getColumnNames()));
+
+        try
+        {
+            if (this.sqlSessionTemplate.getConfiguration().hasStatement(CREATE_INDEX_CONCURRENTLY))
+            {
+                this.createIndexConcurrently(params);
+            }
+            else
+            {
+                this.transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+                    this.sqlSessionTemplate.update(CREATE_INDEX, params);
+                    return null;
+                }, false, true);
+            }
+        }
+        catch (final SQLException | RuntimeException e)
+        {
+            LOGGER.error("Failed to create index {}", indexDefinition.getIndexName(), e);
+        }
+    }
+
+    protected void createIndexConcurrently(final Map<String, Object> params) throws SQLException
+    {
+        // statement only uses direct substitutions, so the SQL can be executed without binding any parameters
+        final String sql = this.sqlSessionTemplate.getConfiguration().getMappedStatement(CREATE_INDEX_CONCURRENTLY).getBoundSql(params)
+                .getSql();
+        try (Connection connection = this.dataSource.getConnection())
+        {
+            // must not run within a transaction block
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement())
+            {
+                statement.execute(sql);
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Instances of this class define an index required to efficiently perform a reference check.
+     *
+     * @author Axel Faust
+     */
+    protected static class IndexDefinition
+    {
+
+        protected final String indexName;
+
+        protected final String tableName;
+
+        protected final String usingQuery;
+
+        protected final List<String> columnNames;
+
+        protected IndexDefinition(final String indexName, final String tableName, final String usingQuery, final String... columnNames)
+        {
+            this.indexName = indexName;
+            this.tableName = tableName;
+            this.usingQuery = usingQuery;
+            this.columnNames = Collections.unmodifiableList(Arrays.asList(columnNames));
+        }
+
+        public String getIndexName()
+        {
+            return this.indexName;
+        }
+
+        public String getTableName()
+        {
+            return this.tableName;
+        }
+
+        public String getUsingQuery()
+        {
+            return this.usingQuery;
+        }
+
+        public List<String> getColumnNames()
+        {
+            return this.columnNames;
+        }
+
+        /**
+         * Checks whether this index definition is covered by an existing index, i.e. an index with all columns of this index
+         * definition in leading position.
+         *
+         * @param indexColumns
+         *            the lower-cased columns of an existing index in order of their position
+         * @return {@code true} if the existing index covers this index definition
+         */
+        public boolean isCoveredBy(final List<String> indexColumns)
+        {
+            return indexColumns.size() >= this.columnNames.size()
+                    && indexColumns.subList(0, this.columnNames.size()).equals(this.columnNames);
+        }
+    }
+}
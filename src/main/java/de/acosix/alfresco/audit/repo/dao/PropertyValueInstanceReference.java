@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+
+/**
+ * A simple result entity for the reference from an alf_prop_value entry to an alf_prop_*_value entry via its persisted type and
+ * long_value column.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyValueInstanceReference implements Serializable
+{
+
+    private static final long serialVersionUID = -2710618837391226744L;
+
+    protected Integer persistedType;
+
+    protected Long longValue;
+
+    /**
+     * Retrieves the persisted type of the referencing alf_prop_value entry
+     *
+     * @return the persisted type
+     */
+    public Integer getPersistedType()
+    {
+        return this.persistedType;
+    }
+
+    /**
+     * Sets the persisted type of the referencing alf_prop_value entry
+     *
+     * @param persistedType
+     *            the persisted type
+     */
+    public void setPersistedType(final Integer persistedType)
+    {
+        this.persistedType = persistedType;
+    }
+
+    /**
+     * Retrieves the long_value of the referencing alf_prop_value entry
+     *
+     * @return the long_value
+     */
+    public Long getLongValue()
+    {
+        return this.longValue;
+    }
+
+    /**
+     * Sets the long_value of the referencing alf_prop_value entry
+     *
+     * @param longValue
+     *            the long_value
+     */
+    public void setLongValue(final Long longValue)
+    {
+        this.longValue = longValue;
+    }
+
+}
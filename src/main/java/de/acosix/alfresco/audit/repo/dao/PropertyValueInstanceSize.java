@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+
+/**
+ * A simple result entity for the stored size of an alf_prop_*_value entry.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyValueInstanceSize implements Serializable
+{
+
+    private static final long serialVersionUID = -6325171907443391582L;
+
+    protected Long id;
+
+    protected Long size;
+
+    /**
+     * Retrieves the ID of the alf_prop_*_value entry
+     *
+     * @return the ID
+     */
+    public Long getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * Sets the ID of the alf_prop_*_value entry
+     *
+     * @param id
+     *            the ID
+     */
+    public void setId(final Long id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the stored size of the value of the alf_prop_*_value entry in bytes
+     *
+     * @return the size
+     */
+    public Long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Sets the stored size of the value of the alf_prop_*_value entry in bytes
+     *
+     * @param size
+     *            the size
+     */
+    public void setSize(final Long size)
+    {
+        this.size = size;
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Instances of this class represent a compressed set of non-negative IDs, following the structure of Roaring bitmaps: IDs are
+ * partitioned by their high-order bits into chunks of 65536 IDs, and each chunk is stored either as a sorted array of the low-order
+ * bits (for sparse chunks) or as a plain bitmap (for dense chunks). This keeps the memory footprint small for both sparse and dense
+ * distributions of IDs.
+ *
+ * Instances of this class are not thread-safe for modifications, but may be read concurrently once fully populated and safely
+ * published.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class RoaringIdBitmap
+{
+
+    private static final int CHUNK_BITS = 16;
+
+    private static final int LOW_BITS_MASK = (1 << CHUNK_BITS) - 1;
+
+    private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+    private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+
+    protected final Map<Long, Container> containers = new HashMap<>();
+
+    protected long cardinality;
+
+    /**
+     * Adds an ID to this bitmap.
+     *
+     * @param id
+     *            the ID to add
+     */
+    public void add(final long id)
+    {
+        if (id < 0)
+        {
+            throw new IllegalArgumentException("Negative IDs are not supported");
+        }
+
+        final Long key = Long.valueOf(id >>> CHUNK_BITS);
+        final int low = (int) (id & LOW_BITS_MASK);
+
+        final Container container = this.containers.get(key);
+        if (container == null)
+        {
+            final ArrayContainer newContainer = new ArrayContainer();
+            newContainer.add(low);
+            this.containers.put(key, newContainer);
+            this.cardinality++;
+        }
+        else if (!container.contains(low))
+        {
+            final Container effectiveContainer = container.add(low);
+            if (effectiveContainer != container)
+            {
+                this.containers.put(key, effectiveContainer);
+            }
+            this.cardinality++;
+        }
+    }
+
+    /**
+     * Checks whether an ID is contained in this bitmap.
+     *
+     * @param id
+     *            the ID to check
+     * @return {@code true} if the ID is contained, {@code false} otherwise
+     */
+    public boolean contains(final long id)
+    {
+        boolean contained = false;
+        if (id >= 0)
+        {
+            final Container container = this.containers.get(Long.valueOf(id >>> CHUNK_BITS));
+            contained = container != null && container.contains((int) (id & LOW_BITS_MASK));
+        }
+        return contained;
+    }
+
+    /**
+     * Determines the IDs of an array which are not contained in this bitmap.
+     *
+     * @param ids
+     *            the IDs to check
+     * @return the IDs not contained in this bitmap, in the same order as provided
+     */
+    public long[] filterNotContained(final long[] ids)
+    {
+        final long[] result = new long[ids.length];
+        int resultCount = 0;
+        for (final long id : ids)
+        {
+            if (!this.contains(id))
+            {
+                result[resultCount++] = id;
+            }
+        }
+        return resultCount == result.length ? result : Arrays.copyOf(result, resultCount);
+    }
+
+    /**
+     * Retrieves the number of IDs contained in this bitmap.
+     *
+     * @return the number of IDs
+     */
+    public long getCardinality()
+    {
+        return this.cardinality;
+    }
+
+    /**
+     * Estimates the memory consumed by the containers of this bitmap.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedSizeInBytes()
+    {
+        long size = 0;
+        for (final Container container : this.containers.values())
+        {
+            // include rough overhead of map entry and key
+            size += container.getEstimatedSizeInBytes() + 64;
+        }
+        return size;
+    }
+
+    /**
+     * Base class for containers of the low-order bits of IDs within a single chunk.
+     *
+     * @author Axel Faust
+     */
+    protected abstract static class Container
+    {
+
+        /**
+         * Adds a value to this container.
+         *
+         * @param value
+         *            the value to add - must not already be contained
+         * @return the container that effectively contains the value, which may be a new container if this container had to be
+         *         converted into a different representation
+         */
+        protected abstract Container add(int value);
+
+        protected abstract boolean contains(int value);
+
+        protected abstract long getEstimatedSizeInBytes();
+    }
+
+    /**
+     * Container for sparse chunks, storing values in a sorted array.
+     *
+     * @author Axel Faust
+     */
+    protected static class ArrayContainer extends Container
+    {
+
+        protected char[] values = new char[4];
+
+        protected int size;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Container add(final int value)
+        {
+            final Container result;
+            if (this.size >= MAX_ARRAY_CONTAINER_SIZE)
+            {
+                final BitmapContainer bitmapContainer = new BitmapContainer();
+                for (int idx = 0; idx < this.size; idx++)
+                {
+                    bitmapContainer.add(this.values[idx]);
+                }
+                bitmapContainer.add(value);
+                result = bitmapContainer;
+            }
+            else
+            {
+                final int insertionPoint = -(Arrays.binarySearch(this.values, 0, this.size, (char) value) + 1);
+                if (this.size == this.values.length)
+                {
+                    this.values = Arrays.copyOf(this.values, Math.min(MAX_ARRAY_CONTAINER_SIZE, this.values.length * 2));
+                }
+                System.arraycopy(this.values, insertionPoint, this.values, insertionPoint + 1, this.size - insertionPoint);
+                this.values[insertionPoint] = (char) value;
+                this.size++;
+                result = this;
+            }
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean contains(final int value)
+        {
+            return Arrays.binarySearch(this.values, 0, this.size, (char) value) >= 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getEstimatedSizeInBytes()
+        {
+            return 32 + this.values.length * 2l;
+        }
+    }
+
+    /**
+     * Container for dense chunks, storing values in a plain bitmap.
+     *
+     * @author Axel Faust
+     */
+    protected static class BitmapContainer extends Container
+    {
+
+        protected final long[] words = new long[BITMAP_WORDS];
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Container add(final int value)
+        {
+            this.words[value >>> 6] |= 1l << value;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean contains(final int value)
+        {
+            return (this.words[value >>> 6] & (1l << value)) != 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getEstimatedSizeInBytes()
+        {
+            return 24 + BITMAP_WORDS * 8l;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.io.Serializable;
+
+/**
+ * A simple entity for inserting an ID into the staging table of ID lists.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class StagedIdParam implements Serializable
+{
+
+    private static final long serialVersionUID = -3021876544120658913L;
+
+    protected Long stageKey;
+
+    protected Long id;
+
+    /**
+     * Retrieves the key identifying the ID list the ID belongs to
+     *
+     * @return the stage key
+     */
+    public Long getStageKey()
+    {
+        return this.stageKey;
+    }
+
+    /**
+     * Sets the key identifying the ID list the ID belongs to
+     *
+     * @param stageKey
+     *            the stage key
+     */
+    public void setStageKey(final Long stageKey)
+    {
+        this.stageKey = stageKey;
+    }
+
+    /**
+     * Retrieves the staged ID
+     *
+     * @return the ID
+     */
+    public Long getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * Sets the staged ID
+     *
+     * @param id
+     *            the ID
+     */
+    public void setId(final Long id)
+    {
+        this.id = id;
+    }
+}
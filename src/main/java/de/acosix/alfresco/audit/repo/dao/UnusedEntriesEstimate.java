@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import java.util.Locale;
+
+/**
+ * Instances of this class represent the result of estimating the number of unused entries in an alf_prop_* table by sampling random
+ * ranges of IDs, including a 95% confidence interval for the estimate and the expected runtime of checking all entries.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class UnusedEntriesEstimate
+{
+
+    protected final String tableName;
+
+    protected final long maxId;
+
+    protected final int sampledRanges;
+
+    protected final long totalRanges;
+
+    protected final long sampledEntries;
+
+    protected final long sampledUnusedEntries;
+
+    protected final long estimatedEntries;
+
+    protected final long estimatedUnusedEntries;
+
+    protected final long estimatedUnusedEntriesLowerBound;
+
+    protected final long estimatedUnusedEntriesUpperBound;
+
+    protected final long estimatedCheckRuntime;
+
+    public UnusedEntriesEstimate(final String tableName, final long maxId, final int sampledRanges, final long totalRanges,
+            final long sampledEntries, final long sampledUnusedEntries, final long estimatedEntries, final long estimatedUnusedEntries,
+            final long estimatedUnusedEntriesLowerBound, final long estimatedUnusedEntriesUpperBound, final long estimatedCheckRuntime)
+    {
+        this.tableName = tableName;
+        this.maxId = maxId;
+        this.sampledRanges = sampledRanges;
+        this.totalRanges = totalRanges;
+        this.sampledEntries = sampledEntries;
+        this.sampledUnusedEntries = sampledUnusedEntries;
+        this.estimatedEntries = estimatedEntries;
+        this.estimatedUnusedEntries = estimatedUnusedEntries;
+        this.estimatedUnusedEntriesLowerBound = estimatedUnusedEntriesLowerBound;
+        this.estimatedUnusedEntriesUpperBound = estimatedUnusedEntriesUpperBound;
+        this.estimatedCheckRuntime = estimatedCheckRuntime;
+    }
+
+    /**
+     * @return the name of the estimated table
+     */
+    public String getTableName()
+    {
+        return this.tableName;
+    }
+
+    /**
+     * @return the highest ID of the table at the time of sampling
+     */
+    public long getMaxId()
+    {
+        return this.maxId;
+    }
+
+    /**
+     * @return the number of sampled ID ranges
+     */
+    public int getSampledRanges()
+    {
+        return this.sampledRanges;
+    }
+
+    /**
+     * @return the total number of ID ranges of the sample width up to the highest ID
+     */
+    public long getTotalRanges()
+    {
+        return this.totalRanges;
+    }
+
+    /**
+     * @return the number of existing entries in the sampled ranges
+     */
+    public long getSampledEntries()
+    {
+        return this.sampledEntries;
+    }
+
+    /**
+     * @return the number of unused entries in the sampled ranges
+     */
+    public long getSampledUnusedEntries()
+    {
+        return this.sampledUnusedEntries;
+    }
+
+    /**
+     * @return the estimated total number of existing entries
+     */
+    public long getEstimatedEntries()
+    {
+        return this.estimatedEntries;
+    }
+
+    /**
+     * @return the estimated total number of unused entries
+     */
+    public long getEstimatedUnusedEntries()
+    {
+        return this.estimatedUnusedEntries;
+    }
+
+    /**
+     * @return the lower bound of the 95% confidence interval of the estimated total number of unused entries
+     */
+    public long getEstimatedUnusedEntriesLowerBound()
+    {
+        return this.estimatedUnusedEntriesLowerBound;
+    }
+
+    /**
+     * @return the upper bound of the 95% confidence interval of the estimated total number of unused entries
+     */
+    public long getEstimatedUnusedEntriesUpperBound()
+    {
+        return this.estimatedUnusedEntriesUpperBound;
+    }
+
+    /**
+     * @return the estimated runtime in milliseconds of checking all ID ranges sequentially, excluding the time for deleting entries
+     */
+    public long getEstimatedCheckRuntime()
+    {
+        return this.estimatedCheckRuntime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.ENGLISH,
+                "%s: ~%d unused of ~%d entries (95%% CI %d - %d) based on %d unused of %d entries in %d of %d ID ranges up to ID %d, estimated check runtime %d ms",
+                this.tableName, this.estimatedUnusedEntries, this.estimatedEntries, this.estimatedUnusedEntriesLowerBound,
+                this.estimatedUnusedEntriesUpperBound, this.sampledUnusedEntries, this.sampledEntries, this.sampledRanges,
+                this.totalRanges, this.maxId, this.estimatedCheckRuntime);
+    }
+}
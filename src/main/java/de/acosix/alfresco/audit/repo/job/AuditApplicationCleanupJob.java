@@ -30,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.dao.PropertyRootCleanupCandidateQueue;
 import de.acosix.alfresco.utility.repo.job.GenericJob;
 import de.acosix.alfresco.utility.repo.job.JobUtilities;
 
@@ -96,6 +97,16 @@ public class AuditApplicationCleanupJob implements GenericJob
         final ZonedDateTime cutOffDate = now.minus(cutOffPeriod);
         final long epochMillis = cutOffDate.toInstant().toEpochMilli();
 
+        final String captureCleanupCandidatesStr = JobUtilities.getJobDataValue(context, "captureCleanupCandidates", String.class, false);
+        if (Boolean.parseBoolean(captureCleanupCandidatesStr))
+        {
+            final PropertyRootCleanupCandidateQueue candidateQueue = JobUtilities.getJobDataValue(context,
+                    "propertyRootCleanupCandidateQueue", PropertyRootCleanupCandidateQueue.class);
+            final int candidates = candidateQueue.enqueueAuditEntryValues(auditApplicationName, null, Long.valueOf(epochMillis));
+            LOGGER.debug("Captured {} alf_prop_root entries of audit entries of application {} as cleanup candidates", candidates,
+                    auditApplicationName);
+        }
+
         LOGGER.debug("Clearing all audit entries of application {} until {}", auditApplicationName, cutOffDate);
         auditService.clearAudit(auditApplicationName, null, Long.valueOf(epochMillis));
     }
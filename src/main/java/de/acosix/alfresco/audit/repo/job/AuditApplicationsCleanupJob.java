@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.dao.PropertyRootCleanupCandidateQueue;
 import de.acosix.alfresco.utility.repo.job.GenericJob;
 import de.acosix.alfresco.utility.repo.job.JobUtilities;
 
@@ -60,6 +61,8 @@ public class AuditApplicationsCleanupJob implements GenericJob {
 	private static final String PROCESS_ALL_KNOWN_APPS_ENTRY = "processAllKnownApps";
 	private static final String DEFAULT_TIMEZONE = "Z";
 	private static final String ENABLED_ENTRY = "enabled";
+	private static final String CAPTURE_CANDIDATES_ENTRY = "captureCleanupCandidates";
+	private static final String CANDIDATE_QUEUE_ENTRY = "propertyRootCleanupCandidateQueue";
 	private static final String COMMA = ",";
 
 	/**
@@ -106,6 +109,12 @@ public class AuditApplicationsCleanupJob implements GenericJob {
 		final String targetApplicationsStr = JobUtilities.getJobDataValue(context, TARGET_APPS_ENTRY, String.class);
 		final String processAllKnownAppsStr = JobUtilities.getJobDataValue(context, PROCESS_ALL_KNOWN_APPS_ENTRY, String.class);
 
+		final boolean captureCleanupCandidates = Boolean
+				.parseBoolean(JobUtilities.getJobDataValue(context, CAPTURE_CANDIDATES_ENTRY, String.class, false));
+		final PropertyRootCleanupCandidateQueue candidateQueue = captureCleanupCandidates
+				? JobUtilities.getJobDataValue(context, CANDIDATE_QUEUE_ENTRY, PropertyRootCleanupCandidateQueue.class)
+				: null;
+
 		final List<String> targetApplications;
 
 		if (Boolean.parseBoolean(processAllKnownAppsStr)) {
@@ -128,6 +137,12 @@ public class AuditApplicationsCleanupJob implements GenericJob {
 			final ZonedDateTime cutOffDate = now.minus(cutOffPeriod);
 			final long epochMilli = cutOffDate.toInstant().toEpochMilli();
 
+			if (captureCleanupCandidates) {
+				final int candidates = candidateQueue.enqueueAuditEntryValues(targetApplication, null, Long.valueOf(epochMilli));
+				LOGGER.debug("Audit Applications Cleanup Job - Captured {} alf_prop_root entries of application {} as cleanup candidates",
+						candidates, targetApplication);
+			}
+
 			LOGGER.debug("Audit Applications Cleanup Job - Clearing all audit entries of application {} until {}",
 					targetApplication, cutOffDate);
 			auditService.clearAudit(targetApplication, null, Long.valueOf(epochMilli));
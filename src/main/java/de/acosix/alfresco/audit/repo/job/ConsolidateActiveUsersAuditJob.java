@@ -20,12 +20,14 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.audit.AuditComponent;
@@ -54,6 +56,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.batch.AdjustableSemaphore;
+import de.acosix.alfresco.audit.repo.batch.DataSourceBackPressure;
 import de.acosix.alfresco.utility.repo.batch.PersonBatchWorkProvider;
 import de.acosix.alfresco.utility.repo.job.GenericJob;
 import de.acosix.alfresco.utility.repo.job.JobUtilities;
@@ -119,13 +123,17 @@ public class ConsolidateActiveUsersAuditJob implements GenericJob
         final PersonService personService = JobUtilities.getJobDataValue(context, "personService", PersonService.class);
         final SearchService searchService = JobUtilities.getJobDataValue(context, "searchService", SearchService.class);
 
-        final String workerThreadsParam = JobUtilities.getJobDataValue(context, "workerThreads", String.class, true);
-        final String batchSizeParam = JobUtilities.getJobDataValue(context, "batchSize", String.class, true);
+        final String workerThreadsParam = JobTuning.getJobDataValue(context, "workerThreads", true);
+        final String batchSizeParam = JobTuning.getJobDataValue(context, "batchSize", true);
 
         final String timeframeHoursParam = JobUtilities.getJobDataValue(context, "timeframeHours", String.class, true);
 
-        final int workerThreads = workerThreadsParam != null ? Math.min(1, Integer.parseInt(workerThreadsParam, 10)) : 4;
-        final int batchSize = batchSizeParam != null ? Math.min(1, Integer.parseInt(batchSizeParam, 10)) : 10;
+        final DataSourceBackPressure backPressure = JobUtilities.getJobDataValue(context, "backPressure", DataSourceBackPressure.class,
+                false);
+        final JobTuning jobTuning = JobUtilities.getJobDataValue(context, "jobTuning", JobTuning.class, false);
+
+        final int workerThreads = workerThreadsParam != null ? Math.max(1, Integer.parseInt(workerThreadsParam, 10)) : 4;
+        final int batchSize = batchSizeParam != null ? Math.max(1, Integer.parseInt(batchSizeParam, 10)) : 10;
 
         final int timeframeHours = timeframeHoursParam != null ? Integer.parseInt(timeframeHoursParam, 10) : 1;
         if (timeframeHours <= 0)
@@ -142,14 +150,49 @@ public class ConsolidateActiveUsersAuditJob implements GenericJob
             throw new IllegalArgumentException("Number of hours in a day must be divisible by timeframeHours");
         }
 
+        // start additional idle workers if the number of active workers may be increased at runtime
+        final int workerPoolSize = jobTuning != null ? jobTuning.getWorkerPoolSize(workerThreads) : workerThreads;
         final BatchProcessor<NodeRef> processor = new BatchProcessor<>(ConsolidateActiveUsersAuditJob.class.getName(),
                 retryingTransactionHelper, new PersonBatchWorkProvider(namespaceService, nodeService, personService, searchService),
-                workerThreads, batchSize, null, LogFactory.getLog(ConsolidateActiveUsersAuditJob.class.getName() + ".batchProcessor"),
+                workerPoolSize, batchSize, null, LogFactory.getLog(ConsolidateActiveUsersAuditJob.class.getName() + ".batchProcessor"),
                 Math.max(25, workerThreads * batchSize * 2));
 
+        final WorkerLimit workerLimit = new WorkerLimit(workerThreads, workerPoolSize);
         final PersonConsolidationAuditWorker worker = new PersonConsolidationAuditWorker(nodeService, auditService, auditComponent,
-                timeframeHours);
-        processor.process(worker, true);
+                timeframeHours, backPressure, workerLimit);
+        final long pausedTimeBefore = backPressure != null ? backPressure.getPausedTime() : 0;
+        if (jobTuning != null)
+        {
+            final Map<String, Supplier<?>> progress = new LinkedHashMap<>();
+            progress.put("processedUsers", processor::getSuccessfullyProcessedEntries);
+            progress.put("failedUsers", processor::getTotalErrors);
+            progress.put("activeWorkers", workerLimit::getActiveWorkers);
+            jobTuning.startRun(progress, (name, value) -> {
+                // batchSize is fixed for the batch processor and only applies to the next run
+                if ("workerThreads".equals(name))
+                {
+                    workerLimit.setActiveWorkers(Integer.parseInt(value, 10));
+                }
+            });
+        }
+        try
+        {
+            processor.process(worker, true);
+        }
+        finally
+        {
+            if (jobTuning != null)
+            {
+                jobTuning.endRun();
+            }
+        }
+
+        if (backPressure != null && backPressure.getPausedTime() > pausedTimeBefore)
+        {
+            // shared with any other jobs running concurrently, so only an indicator for this run
+            LOGGER.info("Workers were paused for {} ms in total due to a saturated database connection pool",
+                    backPressure.getPausedTime() - pausedTimeBefore);
+        }
     }
 
     protected static class PersonConsolidationAuditWorker extends BatchProcessWorkerAdaptor<NodeRef>
@@ -163,13 +206,52 @@ public class ConsolidateActiveUsersAuditJob implements GenericJob
 
         private final int timeframeHours;
 
+        private final DataSourceBackPressure backPressure;
+
+        private final WorkerLimit workerLimit;
+
+        private final ThreadLocal<Boolean> permitAcquired = new ThreadLocal<>();
+
         protected PersonConsolidationAuditWorker(final NodeService nodeService, final AuditService auditService,
-                final AuditComponent auditComponent, final int timeframeHours)
+                final AuditComponent auditComponent, final int timeframeHours, final DataSourceBackPressure backPressure,
+                final WorkerLimit workerLimit)
         {
             this.nodeService = nodeService;
             this.auditService = auditService;
             this.auditComponent = auditComponent;
             this.timeframeHours = timeframeHours;
+            this.backPressure = backPressure;
+            this.workerLimit = workerLimit;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void beforeProcess() throws Throwable
+        {
+            // wait before the transaction of the batch starts so that paused / surplus workers do not hold on to a pooled connection
+            if (this.backPressure != null)
+            {
+                this.backPressure.awaitCapacity();
+            }
+            this.workerLimit.acquire();
+            this.permitAcquired.set(Boolean.TRUE);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterProcess() throws Throwable
+        {
+            if (Boolean.TRUE.equals(this.permitAcquired.get()))
+            {
+                this.permitAcquired.remove();
+                this.workerLimit.release();
+            }
         }
 
         /**
@@ -339,4 +421,63 @@ public class ConsolidateActiveUsersAuditJob implements GenericJob
             }, aqp, Integer.MAX_VALUE);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Instances of this class limit the number of concurrently active workers, allowing the limit to be changed while the job is
+     * running, bounded by the number of worker threads started by the batch processor.
+     *
+     * @author Axel Faust
+     */
+    protected static class WorkerLimit
+    {
+
+        protected final int workerPoolSize;
+
+        protected final AdjustableSemaphore permits;
+
+        protected int activeWorkers;
+
+        protected WorkerLimit(final int activeWorkers, final int workerPoolSize)
+        {
+            this.workerPoolSize = workerPoolSize;
+            this.activeWorkers = activeWorkers;
+            this.permits = new AdjustableSemaphore(activeWorkers);
+        }
+
+        public void acquire()
+        {
+            this.permits.acquireUninterruptibly();
+        }
+
+        public void release()
+        {
+            this.permits.release();
+        }
+
+        public synchronized int getActiveWorkers()
+        {
+            return this.activeWorkers;
+        }
+
+        /**
+         * Changes the number of concurrently active workers.
+         *
+         * @param activeWorkers
+         *            the number of concurrently active workers
+         */
+        public synchronized void setActiveWorkers(final int activeWorkers)
+        {
+            final int effectiveActiveWorkers = Math.max(1, Math.min(activeWorkers, this.workerPoolSize));
+            if (effectiveActiveWorkers > this.activeWorkers)
+            {
+                this.permits.release(effectiveActiveWorkers - this.activeWorkers);
+            }
+            else if (effectiveActiveWorkers < this.activeWorkers)
+            {
+                this.permits.reducePermits(this.activeWorkers - effectiveActiveWorkers);
+            }
+            this.activeWorkers = effectiveActiveWorkers;
+            LOGGER.info("Changed concurrent workers to {}", effectiveActiveWorkers);
+        }
+    }
+}
@@ -16,18 +16,39 @@
 package de.acosix.alfresco.audit.repo.job;
 
 import java.io.Serializable;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.batch.BatchProcessor;
 import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
 import org.alfresco.service.namespace.QName;
@@ -37,7 +58,14 @@ import org.apache.commons.logging.LogFactory;
 import org.slf4j.Logger;
 
 import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.batch.AdjustableSemaphore;
+import de.acosix.alfresco.audit.repo.batch.DataSourceBackPressure;
+import de.acosix.alfresco.audit.repo.dao.LongIdArrays;
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupConcurrencyBudget;
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+import de.acosix.alfresco.audit.repo.dao.RoaringIdBitmap;
+import de.acosix.alfresco.audit.repo.dao.UnusedEntriesEstimate;
 import de.acosix.alfresco.utility.repo.job.GenericJob;
 import de.acosix.alfresco.utility.repo.job.JobUtilities;
 import de.acosix.alfresco.utility.repo.job.JobUtilities.LockReleasedCheck;
@@ -64,20 +92,35 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
     public void execute(final Object context)
     {
         final Logger logger = this.getLogger();
-        final QName lockQName = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE, this.getClass().getSimpleName());
         try
         {
+            final String shardCountStr = JobUtilities.getJobDataValue(context, "shardCount", String.class, false);
+            final String deadlineStr = JobUtilities.getJobDataValue(context, "deadline", String.class, false);
+            final String dryRunStr = JobUtilities.getJobDataValue(context, "dryRun", String.class, false);
+            final int shardCount = shardCountStr != null && !shardCountStr.trim().isEmpty() ? Integer.parseInt(shardCountStr.trim(), 10)
+                    : 1;
+            // determined once so that all shards processed in this execution share the same deadline
+            final long deadline = deadlineStr != null && !deadlineStr.trim().isEmpty() ? determineDeadline(deadlineStr.trim()) : -1;
+            if (deadline > 0 && deadline <= System.currentTimeMillis())
+            {
+                logger.info("Deadline {} has already passed - not processing any work items", deadlineStr.trim());
+                return;
+            }
+
             logger.debug("Running incremental cleanup");
             AuthenticationUtil.runAsSystem(() -> {
-                JobUtilities.runWithJobLock(context, lockQName, lockReleaseCheck -> {
-                    final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
-                            TransactionService.class);
-                    final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
-                    retryingTransactionHelper.doInTransaction(() -> {
-                        this.doCleanup(context, retryingTransactionHelper, lockReleaseCheck);
-                        return null;
-                    });
-                });
+                if (Boolean.parseBoolean(dryRunStr != null ? dryRunStr.trim() : null))
+                {
+                    this.executeDryRun(context);
+                }
+                else if (shardCount > 1)
+                {
+                    this.executeSharded(context, shardCount, deadline);
+                }
+                else
+                {
+                    this.executeUnsharded(context, deadline);
+                }
                 return null;
             });
         }
@@ -94,6 +137,183 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
         }
     }
 
+    /**
+     * Estimates the number of unused entries by sampling random ID ranges instead of running the cleanup, and logs the estimate
+     * together with the expected runtime of a cleanup run based on the configured settings. No entries are deleted and the progress
+     * of the cleanup is not affected.
+     *
+     * @param context
+     *            the job execution context
+     */
+    protected void executeDryRun(final Object context)
+    {
+        final QName lockQName = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE, this.getClass().getSimpleName());
+        JobUtilities.runWithJobLock(context, lockQName, lockReleaseCheck -> {
+            final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                    TransactionService.class);
+            final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                    PropertyTablesCleanupDAO.class);
+            final String sampleRangesStr = JobUtilities.getJobDataValue(context, "dryRunSampleRanges", String.class);
+            final String idsPerWorkItemStr = JobTuning.getJobDataValue(context, "idsPerWorkItem", true);
+            final String workerCountStr = JobTuning.getJobDataValue(context, "workerCount", true);
+            final String checkItemsLimitStr = JobTuning.getJobDataValue(context, "checkItemsLimit", true);
+
+            final int sampleRanges = Integer.parseInt(sampleRangesStr, 10);
+            final int idsPerWorkItem = Integer.parseInt(idsPerWorkItemStr, 10);
+            final int workerCount = Integer.parseInt(workerCountStr, 10);
+            final int checkItemsLimit = Integer.parseInt(checkItemsLimitStr, 10);
+
+            final UnusedEntriesEstimate estimate = transactionService.getRetryingTransactionHelper()
+                    .doInTransaction(() -> this.estimateUnusedEntries(propertyTablesCleanupDAO, sampleRanges, idsPerWorkItem), true);
+            if (estimate == null)
+            {
+                this.getLogger().info("Dry run: no entries exist to estimate");
+            }
+            else
+            {
+                this.getLogger().info("Dry run: {}", estimate);
+
+                final long parallelCheckRuntime = estimate.getEstimatedCheckRuntime() / Math.max(1, workerCount);
+                this.getLogger().info("Dry run: checking all entries with {} workers would take ~{} ms", workerCount,
+                        parallelCheckRuntime);
+                if (checkItemsLimit > 0 && estimate.getEstimatedEntries() > 0)
+                {
+                    final long runtimePerRun = parallelCheckRuntime * Math.min(checkItemsLimit, estimate.getEstimatedEntries())
+                            / estimate.getEstimatedEntries();
+                    final long runs = (estimate.getEstimatedEntries() + checkItemsLimit - 1) / checkItemsLimit;
+                    this.getLogger().info("Dry run: with checkItemsLimit {}, a run would take ~{} ms and {} runs would be required",
+                            checkItemsLimit, runtimePerRun, runs);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the cleanup across the entire ID space, guarded by a single cluster-wide lock for this job.
+     *
+     * @param context
+     *            the job execution context
+     * @param deadline
+     *            the epoch milliseconds at which to stop processing or {@code -1} if no deadline applies
+     */
+    protected void executeUnsharded(final Object context, final long deadline)
+    {
+        final QName lockQName = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE, this.getClass().getSimpleName());
+        JobUtilities.runWithJobLock(context, lockQName, lockReleaseCheck -> {
+            final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                    TransactionService.class);
+            final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+            try
+            {
+                // read-only as all state changes are performed in separate transactions
+                retryingTransactionHelper.doInTransaction(() -> {
+                    this.doCleanup(context, retryingTransactionHelper, lockReleaseCheck, null, deadline);
+                    return null;
+                }, true);
+            }
+            finally
+            {
+                this.flushCacheInvalidations(context, retryingTransactionHelper);
+            }
+        });
+    }
+
+    /**
+     * Runs the cleanup for all shards of the ID space which are not currently being processed by another server in the cluster.
+     * The ID space up to the current highest ID is split into the configured number of shards, with the last shard being open-ended
+     * to cover any entries created in the meantime. Each shard is guarded by its own cluster-wide lock and keeps track of its own
+     * progress, so that multiple servers can process different shards in parallel. Shards are checked in an order starting from a
+     * random shard to reduce contention between servers triggered at the same time.
+     *
+     * @param context
+     *            the job execution context
+     * @param shardCount
+     *            the number of shards
+     * @param deadline
+     *            the epoch milliseconds at which to stop processing or {@code -1} if no deadline applies
+     */
+    protected void executeSharded(final Object context, final int shardCount, final long deadline)
+    {
+        final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                TransactionService.class);
+        final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                PropertyTablesCleanupDAO.class);
+        final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+
+        final Long maxId = retryingTransactionHelper.doInTransaction(() -> this.getMaxId(propertyTablesCleanupDAO), true);
+        if (maxId == null)
+        {
+            this.getLogger().debug("No entries exist - skipping sharded cleanup");
+            return;
+        }
+
+        final String simpleJobClassName = this.getClass().getSimpleName();
+        final long shardWidth = maxId.longValue() / shardCount + 1;
+        final int firstShardIndex = ThreadLocalRandom.current().nextInt(shardCount);
+        int processedShards = 0;
+        try
+        {
+            for (int offset = 0; offset < shardCount; offset++)
+            {
+                if (deadline > 0 && System.currentTimeMillis() >= deadline)
+                {
+                    this.getLogger().info("Stopped sharded incremental cleanup due to deadline after processing {} shards",
+                            processedShards);
+                    break;
+                }
+
+                final int shardIndex = (firstShardIndex + offset) % shardCount;
+                final CleanupShard shard = new CleanupShard(shardIndex, shardIndex * shardWidth,
+                        shardIndex == shardCount - 1 ? null : Long.valueOf((shardIndex + 1) * shardWidth - 1));
+                final QName shardLockQName = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE,
+                        simpleJobClassName + "-" + shard.getName());
+                try
+                {
+                    JobUtilities.runWithJobLock(context, shardLockQName, lockReleaseCheck -> {
+                        // read-only as all state changes are performed in separate transactions
+                        retryingTransactionHelper.doInTransaction(() -> {
+                            this.doCleanup(context, retryingTransactionHelper, lockReleaseCheck, shard, deadline);
+                            return null;
+                        }, true);
+                    });
+                    processedShards++;
+                }
+                catch (final LockAcquisitionException e)
+                {
+                    this.getLogger().debug("Skipping {} as it is currently being processed elsewhere", shard);
+                }
+            }
+        }
+        finally
+        {
+            if (processedShards > 0)
+            {
+                this.flushCacheInvalidations(context, retryingTransactionHelper);
+            }
+        }
+
+        this.getLogger().info("Completed sharded incremental cleanup, processing {} of {} shards", processedShards, shardCount);
+    }
+
+    protected void flushCacheInvalidations(final Object context, final RetryingTransactionHelper retryingTransactionHelper)
+    {
+        // separate transaction so deferred invalidations for committed deletes are not lost if the run failed
+        final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                PropertyTablesCleanupDAO.class);
+        try
+        {
+            retryingTransactionHelper.doInTransaction(() -> {
+                propertyTablesCleanupDAO.flushCacheInvalidations();
+                return null;
+            }, false, true);
+        }
+        catch (final RuntimeException e)
+        {
+            // must not replace any exception of the actual run
+            this.getLogger().error("Failed to flush pending cache invalidations", e);
+        }
+    }
+
     /**
      * Retrieves the logger to be used for jobs of this class.
      *
@@ -119,9 +339,22 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
      *            the number of IDs to retrieve
      * @param startId
      *            the offset
-     * @return the batch of IDs
+     * @return the batch of IDs in ascending order
+     */
+    abstract protected long[] getIdBatch(PropertyTablesCleanupDAO cleanupDAO, int maxItems, Long startId);
+
+    /**
+     * Retrieves all existing entry IDs within a specific range of IDs
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param fromIdInclusive
+     *            the first ID to include
+     * @param toIdInclusive
+     *            the last ID to include
+     * @return the existing IDs in ascending order
      */
-    abstract protected List<Long> getIdBatch(PropertyTablesCleanupDAO cleanupDAO, int maxItems, Long startId);
+    abstract protected long[] getIdsInRange(PropertyTablesCleanupDAO cleanupDAO, Long fromIdInclusive, Long toIdInclusive);
 
     /**
      * Retrieves entry IDs that are actively referenced
@@ -132,9 +365,9 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
      *            the first ID to include in checks
      * @param toIdInclusive
      *            the last ID to include in checks
-     * @return the used IDs
+     * @return the used IDs in ascending order without duplicates
      */
-    abstract protected List<Long> getUsedEntries(PropertyTablesCleanupDAO cleanupDAO, Long fromIdInclusive, Long toIdInclusive);
+    abstract protected long[] getUsedEntries(PropertyTablesCleanupDAO cleanupDAO, Long fromIdInclusive, Long toIdInclusive);
 
     /**
      * Deletes a set of entries
@@ -144,114 +377,882 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
      * @param batchIds
      *            the batch of IDs of entries to delete
      */
-    abstract protected void deleteEntries(PropertyTablesCleanupDAO cleanupDAO, List<Long> batchIds);
+    abstract protected void deleteEntries(PropertyTablesCleanupDAO cleanupDAO, long[] batchIds);
+
+    /**
+     * Deletes all entries within a range of IDs that are not actively referenced, performing the reference checks as part of the
+     * delete operation itself.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param fromIdInclusive
+     *            the first ID to include in the delete
+     * @param toIdInclusive
+     *            the last ID to include in the delete
+     * @return the number of deleted entries
+     */
+    abstract protected int deleteUnusedEntries(PropertyTablesCleanupDAO cleanupDAO, Long fromIdInclusive, Long toIdInclusive);
+
+    /**
+     * Loads the IDs of all entries within a range of IDs that are actively referenced into a compressed bitmap.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param fromIdInclusive
+     *            the first ID to include - may be {@code null}
+     * @param toIdInclusive
+     *            the last ID to include - may be {@code null}
+     * @return the bitmap of referenced IDs
+     */
+    abstract protected RoaringIdBitmap getReferencedEntries(PropertyTablesCleanupDAO cleanupDAO, Long fromIdInclusive,
+            Long toIdInclusive);
+
+    /**
+     * Deletes a set of candidate entries that are not actively referenced, re-checking the references as part of the delete
+     * operation itself.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param candidateIds
+     *            the IDs of candidate entries to delete
+     * @return the number of deleted entries
+     */
+    abstract protected int deleteUnusedEntries(PropertyTablesCleanupDAO cleanupDAO, long[] candidateIds);
+
+    /**
+     * Estimates the number of unused entries by sampling random ID ranges, without deleting any entries.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param sampleRanges
+     *            the number of ID ranges to sample
+     * @param rangeWidth
+     *            the width of each sampled ID range
+     * @return the estimate or {@code null} if no entries exist
+     */
+    abstract protected UnusedEntriesEstimate estimateUnusedEntries(PropertyTablesCleanupDAO cleanupDAO, int sampleRanges, int rangeWidth);
+
+    /**
+     * Streams the IDs of entries in ascending order via a single, incrementally fetched scan.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param fromIdExclusive
+     *            the exclusive ID after which to start - may be {@code null}
+     * @param toIdInclusive
+     *            the inclusive ID at which to end - may be {@code null}
+     * @param idConsumer
+     *            the consumer of IDs, returning {@code false} to stop the scan
+     * @return {@code true} if all IDs have been streamed, {@code false} if the scan was stopped by the consumer
+     */
+    abstract protected boolean streamIds(PropertyTablesCleanupDAO cleanupDAO, Long fromIdExclusive, Long toIdInclusive,
+            LongPredicate idConsumer);
+
+    /**
+     * Collects the IDs of entries in downstream alf_prop_* tables which may become unreferenced by deleting a set of entries. This
+     * operation is called before the entries are deleted and only if cascading cleanup has been enabled. The default implementation
+     * does not collect any candidates.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param ids
+     *            the IDs of (candidate) entries about to be deleted
+     * @return the downstream candidates or {@code null} if this job does not support cascading cleanup
+     */
+    protected CascadeCandidates collectCascadeCandidates(final PropertyTablesCleanupDAO cleanupDAO, final long[] ids)
+    {
+        return null;
+    }
+
+    /**
+     * Collects the IDs of entries in downstream alf_prop_* tables which may become unreferenced by deleting all unreferenced entries
+     * within a range of IDs. This operation is called before the entries are deleted and only if cascading cleanup has been enabled.
+     * The default implementation does not collect any candidates.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param fromIdInclusive
+     *            the first ID to include
+     * @param toIdInclusive
+     *            the last ID to include
+     * @return the downstream candidates or {@code null} if this job does not support cascading cleanup
+     */
+    protected CascadeCandidates collectCascadeCandidates(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return null;
+    }
 
     protected void doCleanup(final Object context, final RetryingTransactionHelper retryingTransactionHelper,
-            final LockReleasedCheck lockReleaseCheck)
+            final LockReleasedCheck lockReleaseCheck, final CleanupShard shard, final long deadline)
     {
         final AttributeService attributeService = JobUtilities.getJobDataValue(context, "attributeService", AttributeService.class);
         final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
                 PropertyTablesCleanupDAO.class);
 
-        final String batchSizeStr = JobUtilities.getJobDataValue(context, "batchSize", String.class);
-        final String idsPerWorkItemStr = JobUtilities.getJobDataValue(context, "idsPerWorkItem", String.class);
-        final String workerCountStr = JobUtilities.getJobDataValue(context, "workerCount", String.class);
-        final String checkItemsLimitStr = JobUtilities.getJobDataValue(context, "checkItemsLimit", String.class);
+        final String batchSizeStr = JobTuning.getJobDataValue(context, "batchSize", true);
+        final String idsPerWorkItemStr = JobTuning.getJobDataValue(context, "idsPerWorkItem", true);
+        final String workerCountStr = JobTuning.getJobDataValue(context, "workerCount", true);
+        final String checkItemsLimitStr = JobTuning.getJobDataValue(context, "checkItemsLimit", true);
+        final String cleanupModeStr = JobUtilities.getJobDataValue(context, "cleanupMode", String.class, false);
+        final String partitioningModeStr = JobUtilities.getJobDataValue(context, "partitioningMode", String.class, false);
+        final String targetLatencyStr = JobUtilities.getJobDataValue(context, "targetLatency", String.class, false);
+        final String cascadeCleanupStr = JobUtilities.getJobDataValue(context, "cascadeCleanup", String.class, false);
+        final String prefetchDepthStr = JobUtilities.getJobDataValue(context, "prefetchDepth", String.class, false);
+        final PropertyTablesCleanupConcurrencyBudget concurrencyBudget = JobUtilities.getJobDataValue(context, "concurrencyBudget",
+                PropertyTablesCleanupConcurrencyBudget.class, false);
+        final DataSourceBackPressure backPressure = JobUtilities.getJobDataValue(context, "backPressure", DataSourceBackPressure.class,
+                false);
+        final JobTuning jobTuning = JobUtilities.getJobDataValue(context, "jobTuning", JobTuning.class, false);
 
         final int batchSize = Integer.parseInt(batchSizeStr, 10);
         final int workerCount = Integer.parseInt(workerCountStr, 10);
         final int idsPerWorkItem = Integer.parseInt(idsPerWorkItemStr, 10);
         final int checkItemsLimit = Integer.parseInt(checkItemsLimitStr, 10);
+        final CleanupMode cleanupMode = cleanupModeStr != null && !cleanupModeStr.trim().isEmpty()
+                ? CleanupMode.valueOf(cleanupModeStr.trim().toUpperCase(Locale.ENGLISH))
+                : CleanupMode.SELECT_AND_DELETE;
+        final PartitioningMode partitioningMode = partitioningModeStr != null && !partitioningModeStr.trim().isEmpty()
+                ? PartitioningMode.valueOf(partitioningModeStr.trim().toUpperCase(Locale.ENGLISH))
+                : PartitioningMode.EXISTING_IDS;
+        final long targetLatency = targetLatencyStr != null && !targetLatencyStr.trim().isEmpty()
+                ? Long.parseLong(targetLatencyStr.trim(), 10)
+                : -1;
+        final boolean cascadeCleanup = Boolean.parseBoolean(cascadeCleanupStr != null ? cascadeCleanupStr.trim() : null);
+        final int prefetchDepth = prefetchDepthStr != null && !prefetchDepthStr.trim().isEmpty()
+                ? Integer.parseInt(prefetchDepthStr.trim(), 10)
+                : 0;
 
         final String simpleJobClassName = this.getClass().getSimpleName();
+        final String lastIdAttributeName = shard != null ? ATTR_LAST_ID + "-" + shard.getName() : ATTR_LAST_ID;
         final Serializable attribute = attributeService.getAttribute(AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName,
-                ATTR_LAST_ID);
-        final Long lastId = DefaultTypeConverter.INSTANCE.convert(Long.class, attribute);
+                lastIdAttributeName);
+        final Long storedLastId = DefaultTypeConverter.INSTANCE.convert(Long.class, attribute);
+        final Long lastId = shard != null ? shard.getEffectiveStartId(storedLastId) : storedLastId;
+        final Long endId = shard != null ? shard.getToId() : null;
 
         this.getLogger().info(
-                "Running incremental cleanup from last ID {} with batchSize {}, workerCount {}, idsPerWorkItem {} and checkItemsLimit {}",
-                lastId, batchSizeStr, workerCountStr, idsPerWorkItemStr, checkItemsLimitStr);
-
-        final EntryIdsWorkProvider workProvider = new EntryIdsWorkProvider(this, propertyTablesCleanupDAO, workerCount, batchSize,
-                idsPerWorkItem, checkItemsLimit, lastId);
-        final EntryIdsBatchWorker batchWorker = new EntryIdsBatchWorker(this, propertyTablesCleanupDAO);
-        final BatchProcessor<List<Long>> batchProcessor = new BatchProcessor<>(simpleJobClassName, retryingTransactionHelper, workProvider,
-                workerCount, batchSize, null, LogFactory.getLog(this.getClass().getName() + ".batchProcessor"),
+                "Running incremental cleanup{} from last ID {} with batchSize {}, workerCount {}, idsPerWorkItem {}, checkItemsLimit {}, cleanupMode {} and partitioningMode {}",
+                shard != null ? " of " + shard : "", lastId, batchSizeStr, workerCountStr, idsPerWorkItemStr, checkItemsLimitStr,
+                cleanupMode, partitioningMode);
+
+        final long pausedTimeBefore = backPressure != null ? backPressure.getPausedTime() : 0;
+        final CleanupThrottleController throttleController = new CleanupThrottleController(this.getLogger(), lockReleaseCheck,
+                workerCount, idsPerWorkItem, targetLatency, deadline);
+        throttleController.setConcurrencyBudget(concurrencyBudget);
+        throttleController.setBackPressure(backPressure);
+        // start additional idle workers if the number of active workers may be increased at runtime
+        final int workerPoolSize = jobTuning != null ? jobTuning.getWorkerPoolSize(workerCount) : workerCount;
+        throttleController.setWorkerPoolSize(workerPoolSize);
+        final CleanupProgressTracker progressTracker = new CleanupProgressTracker(attributeService, retryingTransactionHelper,
+                simpleJobClassName, lastIdAttributeName, lastId);
+
+        final CleanupWorkProvider workProvider;
+        switch (partitioningMode)
+        {
+            case ID_RANGES:
+                workProvider = new IdRangeWorkProvider(this, propertyTablesCleanupDAO, workerCount, batchSize, idsPerWorkItem,
+                        checkItemsLimit, lastId, endId);
+                break;
+            case STREAMED_IDS:
+                workProvider = new StreamedIdsWorkProvider(this, propertyTablesCleanupDAO, workerCount, batchSize, idsPerWorkItem,
+                        checkItemsLimit, lastId, endId);
+                break;
+            case EXISTING_IDS:
+            default:
+                workProvider = new EntryIdsWorkProvider(this, propertyTablesCleanupDAO, workerCount, batchSize, idsPerWorkItem,
+                        checkItemsLimit, lastId, endId);
+        }
+        workProvider.setProgressTracker(progressTracker);
+        workProvider.setThrottleController(throttleController);
+        workProvider.setRetryingTransactionHelper(retryingTransactionHelper);
+        workProvider.setPrefetchDepth(prefetchDepth);
+        final EntryIdsBatchWorker batchWorker = new EntryIdsBatchWorker(this, propertyTablesCleanupDAO, cleanupMode);
+        if (cleanupMode == CleanupMode.MARK_AND_SWEEP)
+        {
+            // only mark references within the ID range of the shard - the sweep never checks any IDs outside of it
+            final RoaringIdBitmap referencedIds = this.getReferencedEntries(propertyTablesCleanupDAO,
+                    shard != null ? Long.valueOf(shard.getFromId()) : null, endId);
+            this.getLogger().info("Loaded {} referenced IDs into bitmap of ~{} bytes for sweep", referencedIds.getCardinality(),
+                    referencedIds.getEstimatedSizeInBytes());
+            batchWorker.setReferencedIds(referencedIds);
+        }
+        batchWorker.setCascadeCleanup(cascadeCleanup);
+        batchWorker.setProgressTracker(progressTracker);
+        batchWorker.setThrottleController(throttleController);
+        final String processName = shard != null ? simpleJobClassName + "-" + shard.getName() : simpleJobClassName;
+        final BatchProcessor<CleanupWorkItem> batchProcessor = new BatchProcessor<>(processName, retryingTransactionHelper,
+                workProvider, workerPoolSize, batchSize, null, LogFactory.getLog(this.getClass().getName() + ".batchProcessor"),
                 Math.max(25, batchSize * workerCount * 2));
-        batchProcessor.process(batchWorker, true);
+        if (jobTuning != null)
+        {
+            final Map<String, Supplier<?>> progress = new LinkedHashMap<>();
+            progress.put("shard", () -> shard != null ? shard.getName() : null);
+            progress.put("startId", () -> lastId);
+            progress.put("committedLastId", progressTracker::getCommittedLastId);
+            progress.put("maxId", workProvider::getMaxId);
+            progress.put("processedWorkItems", batchProcessor::getSuccessfullyProcessedEntries);
+            progress.put("failedWorkItems", batchProcessor::getTotalErrors);
+            progress.put("deletedEntries", batchWorker::getDeletedEntries);
+            progress.put("activeWorkers", throttleController::getActiveWorkers);
+            progress.put("idsPerWorkItem", throttleController::getIdsPerWorkItem);
+            jobTuning.startRun(progress, (name, value) -> {
+                // batchSize / checkItemsLimit are fixed for the work provider / batch processor and only apply to the next run
+                if ("workerCount".equals(name))
+                {
+                    throttleController.setWorkerCount(Integer.parseInt(value, 10));
+                }
+                else if ("idsPerWorkItem".equals(name))
+                {
+                    throttleController.setBaseIdsPerWorkItem(Integer.parseInt(value, 10));
+                }
+            });
+        }
+        try
+        {
+            batchProcessor.process(batchWorker, true);
+        }
+        finally
+        {
+            workProvider.close();
+            if (jobTuning != null)
+            {
+                jobTuning.endRun();
+            }
+        }
+        final long pausedTime = backPressure != null ? backPressure.getPausedTime() - pausedTimeBefore : 0;
 
-        final Long newLastId = workProvider.getLastId();
+        // only committed work counts - any work items not committed (failed / aborted) will be checked again in the next run
+        final Long newLastId = progressTracker.getCommittedLastId();
         final Long maxId = workProvider.getMaxId();
 
-        if (EqualsHelper.nullSafeEquals(lastId, newLastId) || EqualsHelper.nullSafeEquals(newLastId, maxId))
+        if (!progressTracker.hasRegisteredWork() || EqualsHelper.nullSafeEquals(newLastId, maxId))
         {
             // just delete the attribute so next time we start from the beginning
-            attributeService.removeAttribute(AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName, ATTR_LAST_ID);
+            progressTracker.reset();
+        }
+        else if (EqualsHelper.nullSafeEquals(lastId, newLastId))
+        {
+            this.getLogger().warn("Incremental cleanup did not complete any work items - next run will resume from last ID {}", lastId);
         }
         else
         {
-            // store the last ID so next time we start from there
-            attributeService.setAttribute(newLastId, AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName, ATTR_LAST_ID);
+            // store the last ID so next time we start from there (typically already done via checkpoints)
+            progressTracker.checkpoint();
+        }
+
+        if (batchWorker.getSkippedWorkItems() > 0)
+        {
+            this.getLogger().info("Stopped incremental cleanup due to deadline / lock release, skipping {} already scheduled work items",
+                    batchWorker.getSkippedWorkItems());
         }
 
         this.getLogger().info("Completed incremental cleanup with last processed ID {} and deleted {} unused entries", newLastId,
                 batchWorker.getDeletedEntries());
+        this.getLogger().info("Feeding of work items waited {} ms in total for work items to be loaded, {} of {} requests were starved",
+                workProvider.getFeedWaitTime(), workProvider.getStarvedFeedRequests(), workProvider.getFeedRequests());
+        if (pausedTime > 0)
+        {
+            // shared with any other jobs running concurrently, so only an indicator for this run
+            this.getLogger().info("Workers were paused for {} ms in total due to a saturated database connection pool", pausedTime);
+        }
+        if (cascadeCleanup)
+        {
+            this.getLogger().info("Deleted {} unused entries in downstream alf_prop_* tables via cascading cleanup",
+                    batchWorker.getCascadeDeletedEntries());
+        }
     }
 
-    protected static class EntryIdsWorkProvider implements BatchProcessWorkProvider<List<Long>>
+    /**
+     * Deletes all downstream candidates collected before entries have been deleted which are no longer referenced, in the order of
+     * dependencies between the alf_prop_* tables. Any alf_prop_value candidates are processed first, collecting the alf_prop_*_value
+     * entries referenced by those which are no longer referenced as additional candidates before deleting them.
+     *
+     * @param cleanupDAO
+     *            the cleanup DAO
+     * @param cascadeCandidates
+     *            the downstream candidates
+     * @return the number of deleted downstream entries
+     */
+    protected static int deleteCascadeCandidates(final PropertyTablesCleanupDAO cleanupDAO, final CascadeCandidates cascadeCandidates)
     {
+        int deleted = 0;
 
-        protected final IncrementalPropertyTableCleanupJob job;
+        final long[] propertyValueIds = cascadeCandidates.getPropertyValueIds();
+        if (propertyValueIds.length != 0)
+        {
+            cascadeCandidates.addPropertyValueInstanceIds(cleanupDAO.listPropertyValueInstanceIdsOfUnusedValues(propertyValueIds));
+            deleted += cleanupDAO.deleteUnusedPropertyValues(propertyValueIds);
+        }
 
-        protected final PropertyTablesCleanupDAO cleanupDAO;
+        for (final Map.Entry<PropertyValueTableType, long[]> instanceIdsEntry : cascadeCandidates.getPropertyValueInstanceIds()
+                .entrySet())
+        {
+            if (instanceIdsEntry.getValue().length != 0)
+            {
+                deleted += cleanupDAO.deleteUnusedPropertyValueInstances(instanceIdsEntry.getKey(), instanceIdsEntry.getValue());
+            }
+        }
 
-        protected final int parallelFactor;
+        return deleted;
+    }
 
-        protected final int batchSize;
+    /**
+     * Determines the effective deadline for a cleanup run from a wall-clock time of day as the next occurrence of that time of day after
+     * the start of the run, so that the same deadline (e.g. {@code 05:00}) applies to runs scheduled both before and after midnight.
+     *
+     * @param deadlineTime
+     *            the time of day in ISO format (e.g. {@code 05:00}), interpreted in the default time zone of the server
+     * @return the epoch milliseconds of the deadline
+     */
+    protected static long determineDeadline(final String deadlineTime)
+    {
+        return determineDeadline(deadlineTime, ZonedDateTime.now());
+    }
 
-        protected final int idsPerWorkItem;
+    /**
+     * Determines the effective deadline for a cleanup run from a wall-clock time of day as the next occurrence of that time of day after
+     * the start of the run.
+     *
+     * @param deadlineTime
+     *            the time of day in ISO format (e.g. {@code 05:00})
+     * @param runStart
+     *            the start of the run, defining the time zone in which to interpret the time of day
+     * @return the epoch milliseconds of the deadline
+     */
+    protected static long determineDeadline(final String deadlineTime, final ZonedDateTime runStart)
+    {
+        final LocalTime time = LocalTime.parse(deadlineTime);
+        ZonedDateTime deadline = runStart.with(time);
+        if (!deadline.isAfter(runStart))
+        {
+            deadline = deadline.plusDays(1);
+        }
+        return deadline.toInstant().toEpochMilli();
+    }
 
-        protected final int checkItemsLimit;
+    /**
+     * Defines the modes of checking and deleting unused entries supported by incremental cleanup jobs.
+     *
+     * @author Axel Faust
+     */
+    public static enum CleanupMode
+    {
+        /** select referenced IDs from all referencing tables and delete the remaining IDs via an ID list */
+        SELECT_AND_DELETE,
+        /** delete all unreferenced entries within the range of a work item via a single statement with embedded reference checks */
+        GUARDED_DELETE,
+        /**
+         * load all referenced IDs into an in-memory bitmap once per run and delete entries not contained in it via ID lists, re-checking
+         * references as part of the delete to account for references created after the bitmap was loaded
+         */
+        MARK_AND_SWEEP;
+    }
 
-        protected final Long startId;
+    /**
+     * Defines the modes of partitioning the entries to check into work items supported by incremental cleanup jobs.
+     *
+     * @author Axel Faust
+     */
+    public static enum PartitioningMode
+    {
+        /** select existing IDs in ascending order and split them into work items of a fixed number of IDs */
+        EXISTING_IDS,
+        /** split the ID space up to the highest ID into work items of a fixed ID range without selecting existing IDs */
+        ID_RANGES,
+        /**
+         * read existing IDs in ascending order via incrementally fetched scans of bounded ID windows in a background thread and split
+         * them into work items of a fixed number of IDs as they arrive
+         */
+        STREAMED_IDS;
+    }
 
-        protected final Long maxId;
+    /**
+     * Instances of this class represent a shard of the ID space of a sharded cleanup, which is processed under its own cluster-wide
+     * lock and keeps track of its own progress.
+     *
+     * @author Axel Faust
+     */
+    protected static class CleanupShard
+    {
 
-        protected volatile Long lastId;
+        protected final int index;
 
-        protected volatile int estimated = -1;
+        protected final long fromId;
 
-        protected final AtomicInteger loadedIds = new AtomicInteger(0);
+        protected final Long toId;
 
-        public EntryIdsWorkProvider(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
-                final int parallelFactor, final int batchSize, final int idsPerWorkItem, final int checkItemsLimit, final Long startId)
+        public CleanupShard(final int index, final long fromId, final Long toId)
         {
-            this.job = job;
-            this.cleanupDAO = cleanupDAO;
-            this.parallelFactor = parallelFactor;
-            this.batchSize = batchSize;
-            this.idsPerWorkItem = idsPerWorkItem;
-            this.checkItemsLimit = checkItemsLimit;
-            this.startId = startId;
+            this.index = index;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
 
-            this.maxId = this.job.getMaxId(cleanupDAO);
+        public int getIndex()
+        {
+            return this.index;
         }
 
-        public Long getLastId()
+        public long getFromId()
         {
-            return this.lastId;
+            return this.fromId;
         }
 
-        public Long getMaxId()
+        /**
+         * Retrieves the last ID of this shard.
+         *
+         * @return the last ID or {@code null} if this shard is open-ended
+         */
+        public Long getToId()
         {
-            return this.maxId;
+            return this.toId;
+        }
+
+        public String getName()
+        {
+            return "shard" + this.index;
+        }
+
+        /**
+         * Determines the exclusive ID from which to start processing this shard based on the last ID persisted for it. As shard
+         * boundaries are derived from the current highest ID, they may have shifted since progress was last persisted, so the
+         * persisted ID is only used if it lies within the boundaries of this shard.
+         *
+         * @param lastId
+         *            the last ID persisted for this shard - may be {@code null}
+         * @return the exclusive ID from which to start processing or {@code null} if processing should start from the very first ID
+         */
+        public Long getEffectiveStartId(final Long lastId)
+        {
+            final Long effectiveStartId;
+            if (lastId != null && lastId.longValue() >= this.fromId && (this.toId == null || lastId.longValue() <= this.toId.longValue()))
+            {
+                effectiveStartId = lastId;
+            }
+            else
+            {
+                effectiveStartId = this.fromId > 0 ? Long.valueOf(this.fromId - 1) : null;
+            }
+            return effectiveStartId;
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public int getTotalEstimatedWorkSize()
+        public String toString()
+        {
+            return this.getName() + " (" + this.fromId + "-" + (this.toId != null ? String.valueOf(this.toId) : "") + ")";
+        }
+    }
+
+    /**
+     * Instances of this class hold the IDs of entries in downstream alf_prop_* tables which may have become unreferenced by deleting
+     * entries in the table handled by a job, and which should be checked in a targeted manner instead of waiting for a full scan by
+     * the job for the downstream table.
+     *
+     * @author Axel Faust
+     */
+    protected static class CascadeCandidates
+    {
+
+        protected final long[] propertyValueIds;
+
+        protected final Map<PropertyValueTableType, long[]> propertyValueInstanceIds = new EnumMap<>(PropertyValueTableType.class);
+
+        public CascadeCandidates(final long[] propertyValueIds)
+        {
+            this.propertyValueIds = propertyValueIds;
+        }
+
+        public CascadeCandidates(final Map<PropertyValueTableType, long[]> propertyValueInstanceIds)
+        {
+            this.propertyValueIds = LongIdArrays.EMPTY;
+            this.addPropertyValueInstanceIds(propertyValueInstanceIds);
+        }
+
+        public long[] getPropertyValueIds()
+        {
+            return this.propertyValueIds;
+        }
+
+        public Map<PropertyValueTableType, long[]> getPropertyValueInstanceIds()
+        {
+            return this.propertyValueInstanceIds;
+        }
+
+        /**
+         * Adds IDs of alf_prop_*_value entries to the candidates.
+         *
+         * @param instanceIds
+         *            the sorted, duplicate-free IDs per type of value table
+         */
+        public void addPropertyValueInstanceIds(final Map<PropertyValueTableType, long[]> instanceIds)
+        {
+            instanceIds
+                    .forEach((valueTableType, ids) -> this.propertyValueInstanceIds.merge(valueTableType, ids, LongIdArrays::union));
+        }
+    }
+
+    /**
+     * Instances of this class represent a single unit of work, consisting of either a set of existing IDs or a range of IDs for
+     * which the existing IDs still need to be determined.
+     *
+     * @author Axel Faust
+     */
+    protected static class CleanupWorkItem
+    {
+
+        protected final long fromId;
+
+        protected final long toId;
+
+        protected final long[] ids;
+
+        public CleanupWorkItem(final long[] ids)
+        {
+            // ensure they are sorted
+            Arrays.sort(ids);
+
+            this.ids = ids;
+            this.fromId = ids[0];
+            this.toId = ids[ids.length - 1];
+        }
+
+        public CleanupWorkItem(final long fromId, final long toId)
+        {
+            this.ids = null;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        public long getFromId()
+        {
+            return this.fromId;
+        }
+
+        public long getToId()
+        {
+            return this.toId;
+        }
+
+        /**
+         * Retrieves the existing IDs of this work item.
+         *
+         * @return the existing IDs in ascending order or {@code null} if this work item only represents a range of IDs
+         */
+        public long[] getIds()
+        {
+            return this.ids;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return this.fromId + "-" + this.toId;
+        }
+    }
+
+    /**
+     * Base class for providers of work items for a cleanup run. Work items are loaded either synchronously on the thread feeding the
+     * batch processor, or - if a {@link #setPrefetchDepth(int) prefetch depth} has been set - asynchronously on a background thread
+     * into a bounded queue, so that the next set of work items is already available when the workers have completed the current set.
+     * Time spent by the feeding thread waiting on work items to be loaded, during which workers may run out of work, is tracked for
+     * reporting.
+     *
+     * @author Axel Faust
+     */
+    protected abstract static class CleanupWorkProvider implements BatchProcessWorkProvider<CleanupWorkItem>
+    {
+
+        private static final long PREFETCH_POLL_TIMEOUT_MILLIS = 100;
+
+        protected final IncrementalPropertyTableCleanupJob job;
+
+        protected final PropertyTablesCleanupDAO cleanupDAO;
+
+        protected final int parallelFactor;
+
+        protected final int batchSize;
+
+        protected final int idsPerWorkItem;
+
+        protected final int checkItemsLimit;
+
+        protected final Long startId;
+
+        protected final Long endId;
+
+        protected final Long maxId;
+
+        protected volatile Long lastId;
+
+        protected volatile int estimated = -1;
+
+        protected CleanupProgressTracker progressTracker;
+
+        protected CleanupThrottleController throttleController;
+
+        protected RetryingTransactionHelper retryingTransactionHelper;
+
+        protected int prefetchDepth;
+
+        protected BlockingQueue<Collection<CleanupWorkItem>> prefetchQueue;
+
+        protected Thread prefetchThread;
+
+        protected volatile boolean prefetchCompleted;
+
+        protected volatile boolean cancelled;
+
+        protected volatile RuntimeException loadFailure;
+
+        protected final AtomicLong feedWaitTime = new AtomicLong();
+
+        protected final AtomicInteger feedRequests = new AtomicInteger();
+
+        protected final AtomicInteger starvedFeedRequests = new AtomicInteger();
+
+        protected CleanupWorkProvider(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
+                final int parallelFactor, final int batchSize, final int idsPerWorkItem, final int checkItemsLimit, final Long startId,
+                final Long endId)
+        {
+            this.job = job;
+            this.cleanupDAO = cleanupDAO;
+            this.parallelFactor = parallelFactor;
+            this.batchSize = batchSize;
+            this.idsPerWorkItem = idsPerWorkItem;
+            this.checkItemsLimit = checkItemsLimit;
+            this.startId = startId;
+            this.endId = endId;
+
+            final Long currentMaxId = this.job.getMaxId(cleanupDAO);
+            this.maxId = currentMaxId != null && endId != null && endId.longValue() < currentMaxId.longValue() ? endId : currentMaxId;
+        }
+
+        public Long getLastId()
+        {
+            return this.lastId;
+        }
+
+        public Long getMaxId()
+        {
+            return this.maxId;
+        }
+
+        public void setProgressTracker(final CleanupProgressTracker progressTracker)
+        {
+            this.progressTracker = progressTracker;
+        }
+
+        public void setThrottleController(final CleanupThrottleController throttleController)
+        {
+            this.throttleController = throttleController;
+        }
+
+        public void setRetryingTransactionHelper(final RetryingTransactionHelper retryingTransactionHelper)
+        {
+            this.retryingTransactionHelper = retryingTransactionHelper;
+        }
+
+        /**
+         * Sets the number of sets of work items to load ahead of processing on a background thread.
+         *
+         * @param prefetchDepth
+         *            the number of sets of work items to prefetch or {@code 0} to load work items synchronously
+         */
+        public void setPrefetchDepth(final int prefetchDepth)
+        {
+            this.prefetchDepth = prefetchDepth;
+        }
+
+        /**
+         * Retrieves the total time the feeding thread of the batch processor had to wait for work items to be loaded.
+         *
+         * @return the wait time in milliseconds
+         */
+        public long getFeedWaitTime()
+        {
+            return TimeUnit.NANOSECONDS.toMillis(this.feedWaitTime.get());
+        }
+
+        /**
+         * Retrieves the number of requests for work items by the feeding thread of the batch processor.
+         *
+         * @return the number of requests
+         */
+        public int getFeedRequests()
+        {
+            return this.feedRequests.get();
+        }
+
+        /**
+         * Retrieves the number of requests for work items by the feeding thread of the batch processor which could not be served
+         * immediately, i.e. where work items still had to be loaded or prefetching had not yet completed.
+         *
+         * @return the number of starved requests
+         */
+        public int getStarvedFeedRequests()
+        {
+            return this.starvedFeedRequests.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Collection<CleanupWorkItem> getNextWork()
+        {
+            if (this.throttleController != null && this.throttleController.shouldStop())
+            {
+                return Collections.emptyList();
+            }
+
+            this.feedRequests.incrementAndGet();
+            final long start = System.nanoTime();
+            final Collection<CleanupWorkItem> workItems = this.prefetchDepth > 0 && this.retryingTransactionHelper != null
+                    ? this.takePrefetchedWork()
+                    : this.loadNextWork();
+            final long waitTime = System.nanoTime() - start;
+            this.feedWaitTime.addAndGet(waitTime);
+            if (waitTime >= TimeUnit.MILLISECONDS.toNanos(1))
+            {
+                this.starvedFeedRequests.incrementAndGet();
+            }
+
+            if (this.progressTracker != null)
+            {
+                this.progressTracker.register(workItems);
+            }
+            return workItems;
+        }
+
+        /**
+         * Releases any resources held by this provider after processing has completed or been aborted, stopping any background
+         * loading of work items.
+         */
+        public void close()
+        {
+            this.cancelled = true;
+            if (this.prefetchThread != null)
+            {
+                try
+                {
+                    this.prefetchThread.join(TimeUnit.SECONDS.toMillis(30));
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        protected Collection<CleanupWorkItem> takePrefetchedWork()
+        {
+            if (this.prefetchQueue == null)
+            {
+                this.prefetchQueue = new ArrayBlockingQueue<>(this.prefetchDepth);
+                this.prefetchThread = new Thread(this::prefetch, this.job.getClass().getSimpleName() + "-WorkPrefetch");
+                this.prefetchThread.setDaemon(true);
+                this.prefetchThread.start();
+            }
+
+            Collection<CleanupWorkItem> workItems = null;
+            try
+            {
+                while (workItems == null && !(this.prefetchCompleted && this.prefetchQueue.isEmpty()))
+                {
+                    workItems = this.prefetchQueue.poll(PREFETCH_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                this.cancelled = true;
+            }
+
+            if (workItems == null)
+            {
+                if (this.loadFailure != null)
+                {
+                    throw this.loadFailure;
+                }
+                workItems = Collections.emptyList();
+            }
+            return workItems;
+        }
+
+        protected void prefetch()
+        {
+            try
+            {
+                boolean moreWork = true;
+                while (moreWork && !this.cancelled && (this.throttleController == null || !this.throttleController.shouldStop()))
+                {
+                    final Collection<CleanupWorkItem> workItems = this.retryingTransactionHelper
+                            .doInTransaction(this::loadNextWork, true, true);
+                    moreWork = !workItems.isEmpty();
+                    boolean queued = !moreWork;
+                    while (!queued && !this.cancelled)
+                    {
+                        queued = this.prefetchQueue.offer(workItems, PREFETCH_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (final RuntimeException e)
+            {
+                this.job.getLogger().error("Failed to prefetch work items for cleanup", e);
+                this.loadFailure = e;
+            }
+            finally
+            {
+                this.prefetchCompleted = true;
+            }
+        }
+
+        /**
+         * Loads the next set of work items to process.
+         *
+         * @return the work items in ascending order of their ID ranges
+         */
+        abstract protected Collection<CleanupWorkItem> loadNextWork();
+
+        /**
+         * Retrieves the number of IDs to include in a work item, taking into account any adjustments by the throttle controller.
+         *
+         * @return the number of IDs per work item
+         */
+        protected int getIdsPerWorkItem()
+        {
+            return this.throttleController != null ? this.throttleController.getIdsPerWorkItem() : this.idsPerWorkItem;
+        }
+    }
+
+    protected static class EntryIdsWorkProvider extends CleanupWorkProvider
+    {
+
+        protected final AtomicInteger loadedIds = new AtomicInteger(0);
+
+        public EntryIdsWorkProvider(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
+                final int parallelFactor, final int batchSize, final int idsPerWorkItem, final int checkItemsLimit, final Long startId,
+                final Long endId)
+        {
+            super(job, cleanupDAO, parallelFactor, batchSize, idsPerWorkItem, checkItemsLimit, startId, endId);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTotalEstimatedWorkSize()
         {
             if (this.estimated == -1)
             {
@@ -294,37 +1295,43 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
          * {@inheritDoc}
          */
         @Override
-        public Collection<List<Long>> getNextWork()
+        protected Collection<CleanupWorkItem> loadNextWork()
         {
-            final List<List<Long>> workItems = new ArrayList<>();
+            final List<CleanupWorkItem> workItems = new ArrayList<>();
 
-            if (this.maxId != null && this.loadedIds.get() < this.checkItemsLimit)
+            // a bounded provider must not go beyond the end of its ID space
+            final boolean endReached = this.maxId != null && this.endId != null && this.lastId != null
+                    && this.lastId.longValue() >= this.maxId.longValue();
+            if (this.maxId != null && !endReached && (this.checkItemsLimit <= 0 || this.loadedIds.get() < this.checkItemsLimit))
             {
-                final int baseMaxItems = this.parallelFactor * this.batchSize * this.idsPerWorkItem;
+                final int idsPerWorkItem = this.getIdsPerWorkItem();
+                final int baseMaxItems = this.parallelFactor * this.batchSize * idsPerWorkItem;
                 final int maxItems = this.checkItemsLimit > 0 ? Math.min(baseMaxItems, this.checkItemsLimit - this.loadedIds.get())
                         : baseMaxItems;
 
-                final List<Long> ids = maxItems > 0
+                long[] ids = maxItems > 0
                         ? this.job.getIdBatch(this.cleanupDAO, maxItems, this.lastId != null ? this.lastId : this.startId)
-                        : Collections.<Long> emptyList();
+                        : LongIdArrays.EMPTY;
+                if (this.endId != null && ids.length > 0 && ids[ids.length - 1] > this.maxId.longValue())
+                {
+                    final int insertionPoint = Arrays.binarySearch(ids, this.maxId.longValue());
+                    ids = Arrays.copyOf(ids, insertionPoint >= 0 ? insertionPoint + 1 : -(insertionPoint + 1));
+                }
 
-                final int loaded = ids.size();
+                final int loaded = ids.length;
 
-                while (!ids.isEmpty())
+                for (int offset = 0; offset < loaded; offset += idsPerWorkItem)
                 {
-                    final List<Long> subList = ids.subList(0, Math.min(this.idsPerWorkItem, ids.size()));
-                    workItems.add(new ArrayList<>(subList));
-                    subList.clear();
+                    workItems.add(new CleanupWorkItem(Arrays.copyOfRange(ids, offset, Math.min(offset + idsPerWorkItem, loaded))));
                 }
 
-                if (!workItems.isEmpty())
+                if (loaded > 0)
                 {
-                    final List<Long> lastBatch = workItems.get(workItems.size() - 1);
-                    this.lastId = lastBatch.get(lastBatch.size() - 1);
+                    this.lastId = Long.valueOf(ids[loaded - 1]);
                 }
                 else if (this.loadedIds.get() == 0)
                 {
-                    this.lastId = this.job.getMaxId(this.cleanupDAO);
+                    this.lastId = this.endId != null ? this.maxId : this.job.getMaxId(this.cleanupDAO);
                 }
 
                 this.loadedIds.addAndGet(loaded);
@@ -335,49 +1342,999 @@ public abstract class IncrementalPropertyTableCleanupJob implements GenericJob
 
     }
 
-    protected static class EntryIdsBatchWorker extends BatchProcessWorkerAdaptor<List<Long>>
+    /**
+     * Instances of this class partition the ID space between the last processed ID and the highest ID at the start of the job into
+     * work items of fixed-width ID ranges, leaving the lookup of existing IDs to the individual workers. In this mode, the
+     * {@code idsPerWorkItem} and {@code checkItemsLimit} parameters refer to the width of the ID ranges instead of the number of
+     * actually existing IDs.
+     *
+     * @author Axel Faust
+     */
+    protected static class IdRangeWorkProvider extends CleanupWorkProvider
     {
 
-        protected final IncrementalPropertyTableCleanupJob job;
-
-        protected final PropertyTablesCleanupDAO cleanupDAO;
+        protected final long firstId;
 
-        protected final AtomicInteger deletedEntries = new AtomicInteger();
+        protected final long lastRangeId;
 
-        public EntryIdsBatchWorker(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO)
+        public IdRangeWorkProvider(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
+                final int parallelFactor, final int batchSize, final int idsPerWorkItem, final int checkItemsLimit, final Long startId,
+                final Long endId)
         {
-            this.job = job;
-            this.cleanupDAO = cleanupDAO;
-        }
+            super(job, cleanupDAO, parallelFactor, batchSize, idsPerWorkItem, checkItemsLimit, startId, endId);
 
-        public int getDeletedEntries()
-        {
-            return this.deletedEntries.get();
+            this.firstId = startId != null ? startId.longValue() + 1 : 0;
+            if (this.maxId != null)
+            {
+                final long maxIdValue = this.maxId.longValue();
+                this.lastRangeId = checkItemsLimit > 0 ? Math.min(maxIdValue, this.firstId + checkItemsLimit - 1) : maxIdValue;
+            }
+            else
+            {
+                this.lastRangeId = -1;
+            }
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void process(final List<Long> ids)
+        public int getTotalEstimatedWorkSize()
         {
-            // ensure they are sorted
-            Collections.sort(ids);
+            if (this.estimated == -1)
+            {
+                final long span = this.lastRangeId - this.firstId + 1;
+                this.estimated = span > 0 ? (int) ((span + this.idsPerWorkItem - 1) / this.idsPerWorkItem) : 0;
+            }
+            return this.estimated;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Collection<CleanupWorkItem> loadNextWork()
+        {
+            final List<CleanupWorkItem> workItems = new ArrayList<>();
+
+            long nextFromId = this.lastId != null ? this.lastId.longValue() + 1 : this.firstId;
+            final int maxWorkItems = this.parallelFactor * this.batchSize;
+            final int idsPerWorkItem = this.getIdsPerWorkItem();
+            while (nextFromId <= this.lastRangeId && workItems.size() < maxWorkItems)
+            {
+                final long toId = Math.min(this.lastRangeId, nextFromId + idsPerWorkItem - 1);
+                workItems.add(new CleanupWorkItem(nextFromId, toId));
+                nextFromId = toId + 1;
+            }
+
+            if (!workItems.isEmpty())
+            {
+                this.lastId = Long.valueOf(workItems.get(workItems.size() - 1).getToId());
+            }
+            else if (this.lastId == null)
+            {
+                // nothing to process at all
+                this.lastId = this.startId != null ? this.startId : this.maxId;
+            }
+
+            return workItems;
+        }
+    }
+
+    /**
+     * Instances of this class read existing IDs via ordered scans with incrementally fetched result sets in a background thread,
+     * handing over work items of a fixed number of IDs to the batch processor as they arrive. This avoids running a new, paginated
+     * query for every batch of work items. The number of work items buffered ahead of processing is bounded, so a scan is paused while
+     * workers are busy. In order to not keep a transaction and cursor open for the entire run, each scan only covers a bounded window
+     * of the ID space and runs in its own transaction.
+     *
+     * @author Axel Faust
+     */
+    protected static class StreamedIdsWorkProvider extends CleanupWorkProvider
+    {
+
+        private static final long POLL_TIMEOUT_MILLIS = 100;
+
+        // width of the ID window covered by a single scan, as multiple of the number of IDs per work item
+        private static final int WINDOW_WORK_ITEMS = 100;
+
+        protected final BlockingQueue<long[]> workItemQueue;
+
+        protected final AtomicInteger streamedIds = new AtomicInteger(0);
+
+        protected Thread streamThread;
+
+        protected boolean streamStarted;
+
+        protected volatile boolean streamCompleted;
+
+        protected volatile Throwable streamFailure;
+
+        protected volatile Long lastStreamedId;
+
+        protected long[] buffer;
+
+        protected int bufferCount;
+
+        public StreamedIdsWorkProvider(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
+                final int parallelFactor, final int batchSize, final int idsPerWorkItem, final int checkItemsLimit, final Long startId,
+                final Long endId)
+        {
+            super(job, cleanupDAO, parallelFactor, batchSize, idsPerWorkItem, checkItemsLimit, startId, endId);
+            this.workItemQueue = new ArrayBlockingQueue<>(Math.max(1, parallelFactor * batchSize * 2));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setPrefetchDepth(final int prefetchDepth)
+        {
+            // IDs are already streamed in a background thread
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            if (this.estimated == -1)
+            {
+                if (this.maxId == null)
+                {
+                    this.estimated = 0;
+                }
+                else
+                {
+                    // upper bound as actual IDs may be sparse
+                    long estimated = this.maxId.longValue() - (this.startId != null ? this.startId.longValue() : 0);
+                    estimated = this.checkItemsLimit > 0 ? Math.min(estimated, this.checkItemsLimit) : estimated;
+                    this.estimated = (int) Math.max(0, (estimated + this.idsPerWorkItem - 1) / this.idsPerWorkItem);
+                }
+            }
+            return this.estimated;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Collection<CleanupWorkItem> loadNextWork()
+        {
+            if (!this.streamStarted)
+            {
+                this.startStream();
+            }
+
+            final List<CleanupWorkItem> workItems = new ArrayList<>();
+            final int maxWorkItems = this.parallelFactor * this.batchSize;
+            try
+            {
+                // wait for the first work item, but only take what is immediately available beyond that
+                long[] ids = null;
+                while (ids == null && !(this.streamCompleted && this.workItemQueue.isEmpty()))
+                {
+                    ids = this.workItemQueue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                while (ids != null)
+                {
+                    workItems.add(new CleanupWorkItem(ids));
+                    ids = workItems.size() < maxWorkItems ? this.workItemQueue.poll() : null;
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                this.cancelled = true;
+            }
+
+            if (workItems.isEmpty() && this.streamFailure != null)
+            {
+                throw new IllegalStateException("Failed to stream IDs for cleanup", this.streamFailure);
+            }
 
-            final Long fromId = ids.get(0);
-            final Long toId = ids.get(ids.size() - 1);
+            if (!workItems.isEmpty())
+            {
+                this.lastId = Long.valueOf(workItems.get(workItems.size() - 1).getToId());
+            }
+            else if (this.lastId == null)
+            {
+                // nothing to process at all
+                this.lastId = this.startId != null ? this.startId : this.maxId;
+            }
 
-            final List<Long> usedIds = this.job.getUsedEntries(this.cleanupDAO, fromId, toId);
-            ids.removeAll(usedIds);
+            return workItems;
+        }
 
-            this.job.getLogger().debug("Found {} unused entries between {} and {}", ids.size(), fromId, toId);
-            if (!ids.isEmpty())
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close()
+        {
+            super.close();
+            if (this.streamThread != null)
             {
-                this.job.getLogger().trace("Unused entries: {}", ids);
-                this.job.deleteEntries(this.cleanupDAO, ids);
+                try
+                {
+                    this.streamThread.join(TimeUnit.SECONDS.toMillis(30));
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        protected void startStream()
+        {
+            this.streamStarted = true;
+            if (this.maxId == null)
+            {
+                this.streamCompleted = true;
+            }
+            else
+            {
+                this.streamThread = new Thread(this::stream, this.job.getClass().getSimpleName() + "-IdStream");
+                this.streamThread.setDaemon(true);
+                this.streamThread.start();
             }
-            this.deletedEntries.addAndGet(ids.size());
         }
 
+        protected void stream()
+        {
+            try
+            {
+                this.buffer = new long[this.getIdsPerWorkItem()];
+                Long windowFromIdExclusive = this.startId;
+                boolean moreIds = true;
+                while (moreIds && !this.cancelled)
+                {
+                    final Long fromIdExclusive = windowFromIdExclusive;
+                    final long windowWidth = (long) this.getIdsPerWorkItem() * WINDOW_WORK_ITEMS;
+                    final Long toIdInclusive = Long.valueOf(
+                            Math.min(this.maxId.longValue(), (fromIdExclusive != null ? fromIdExclusive.longValue() : 0) + windowWidth));
+
+                    final int windowBufferCount = this.bufferCount;
+                    final Long windowLastStreamedId = this.lastStreamedId;
+                    final boolean windowCompleted = this.retryingTransactionHelper.doInTransaction(() -> {
+                        Long resumeFromIdExclusive = fromIdExclusive;
+                        if (!EqualsHelper.nullSafeEquals(this.lastStreamedId, windowLastStreamedId))
+                        {
+                            // retry after IDs have already been handed over - resume after the last of them
+                            this.bufferCount = 0;
+                            resumeFromIdExclusive = this.lastStreamedId;
+                        }
+                        else
+                        {
+                            // in case of a retry, discard IDs buffered in the failed attempt
+                            this.bufferCount = windowBufferCount;
+                        }
+                        return Boolean.valueOf(this.job.streamIds(this.cleanupDAO, resumeFromIdExclusive, toIdInclusive, this::accept));
+                    }, true, true).booleanValue();
+
+                    moreIds = windowCompleted && toIdInclusive.longValue() < this.maxId.longValue();
+                    windowFromIdExclusive = toIdInclusive;
+                }
+
+                // IDs of an incomplete work item are buffered across windows until the scan ends
+                if (!this.cancelled)
+                {
+                    this.handOver();
+                }
+            }
+            catch (final RuntimeException e)
+            {
+                this.job.getLogger().error("Failed to stream IDs for cleanup", e);
+                this.streamFailure = e;
+            }
+            finally
+            {
+                this.streamCompleted = true;
+            }
+        }
+
+        protected boolean accept(final long id)
+        {
+            boolean accepted = !this.cancelled
+                    && (this.checkItemsLimit <= 0 || this.streamedIds.get() + this.bufferCount < this.checkItemsLimit);
+            if (accepted)
+            {
+                if (this.bufferCount == this.buffer.length)
+                {
+                    this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+                }
+                this.buffer[this.bufferCount++] = id;
+
+                // size of work items may be adapted by throttle controller at any time
+                if (this.bufferCount >= this.getIdsPerWorkItem())
+                {
+                    accepted = this.handOver();
+                }
+            }
+            return accepted;
+        }
+
+        protected boolean handOver()
+        {
+            boolean handedOver = this.bufferCount == 0;
+            if (!handedOver)
+            {
+                final long[] ids = Arrays.copyOf(this.buffer, this.bufferCount);
+                try
+                {
+                    while (!handedOver && !this.cancelled)
+                    {
+                        handedOver = this.workItemQueue.offer(ids, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    this.cancelled = true;
+                }
+
+                if (handedOver)
+                {
+                    this.lastStreamedId = Long.valueOf(ids[ids.length - 1]);
+                    this.streamedIds.addAndGet(ids.length);
+                    this.bufferCount = 0;
+                }
+            }
+            return handedOver;
+        }
+    }
+
+    protected static class EntryIdsBatchWorker extends BatchProcessWorkerAdaptor<CleanupWorkItem>
+    {
+
+        protected final IncrementalPropertyTableCleanupJob job;
+
+        protected final PropertyTablesCleanupDAO cleanupDAO;
+
+        protected final CleanupMode cleanupMode;
+
+        protected final AtomicInteger deletedEntries = new AtomicInteger();
+
+        protected final AtomicInteger skippedWorkItems = new AtomicInteger();
+
+        protected final AtomicInteger cascadeDeletedEntries = new AtomicInteger();
+
+        protected boolean cascadeCleanup;
+
+        protected CleanupProgressTracker progressTracker;
+
+        protected CleanupThrottleController throttleController;
+
+        protected RoaringIdBitmap referencedIds;
+
+        protected final ThreadLocal<ThrottledBatch> currentBatch = new ThreadLocal<>();
+
+        public EntryIdsBatchWorker(final IncrementalPropertyTableCleanupJob job, final PropertyTablesCleanupDAO cleanupDAO,
+                final CleanupMode cleanupMode)
+        {
+            this.job = job;
+            this.cleanupDAO = cleanupDAO;
+            this.cleanupMode = cleanupMode;
+        }
+
+        public int getDeletedEntries()
+        {
+            return this.deletedEntries.get();
+        }
+
+        public int getSkippedWorkItems()
+        {
+            return this.skippedWorkItems.get();
+        }
+
+        public int getCascadeDeletedEntries()
+        {
+            return this.cascadeDeletedEntries.get();
+        }
+
+        public void setCascadeCleanup(final boolean cascadeCleanup)
+        {
+            this.cascadeCleanup = cascadeCleanup;
+        }
+
+        public void setProgressTracker(final CleanupProgressTracker progressTracker)
+        {
+            this.progressTracker = progressTracker;
+        }
+
+        public void setThrottleController(final CleanupThrottleController throttleController)
+        {
+            this.throttleController = throttleController;
+        }
+
+        public void setReferencedIds(final RoaringIdBitmap referencedIds)
+        {
+            this.referencedIds = referencedIds;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getIdentifier(final CleanupWorkItem workItem)
+        {
+            return workItem.toString();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void beforeProcess()
+        {
+            // acquired before the transaction of the batch starts so that waiting workers do not hold on to a pooled connection
+            if (this.throttleController != null && !this.throttleController.shouldStop())
+            {
+                this.throttleController.acquireWorker();
+                this.currentBatch.set(new ThrottledBatch(System.currentTimeMillis()));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void process(final CleanupWorkItem workItem)
+        {
+            if (this.throttleController != null && this.throttleController.shouldStop())
+            {
+                // work item is not tracked as completed and will be processed in the next run
+                this.skippedWorkItems.incrementAndGet();
+                return;
+            }
+
+            if (this.progressTracker != null)
+            {
+                this.progressTracker.trackCompletion(workItem);
+            }
+
+            final ThrottledBatch batch = this.currentBatch.get();
+            if (batch != null)
+            {
+                batch.addWorkItem(workItem);
+            }
+            this.processWorkItem(workItem);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void afterProcess()
+        {
+            final ThrottledBatch batch = this.currentBatch.get();
+            if (batch != null)
+            {
+                this.currentBatch.remove();
+                // called after the transaction of the batch has completed, so latency includes the time to commit
+                this.throttleController.releaseWorker(batch.getWorkItemLatency(System.currentTimeMillis()));
+            }
+        }
+
+        protected void processWorkItem(final CleanupWorkItem workItem)
+        {
+            if (this.cleanupMode == CleanupMode.GUARDED_DELETE)
+            {
+                final Long fromId = Long.valueOf(workItem.getFromId());
+                final Long toId = Long.valueOf(workItem.getToId());
+                final CascadeCandidates cascadeCandidates = this.cascadeCleanup
+                        ? this.job.collectCascadeCandidates(this.cleanupDAO, fromId, toId)
+                        : null;
+                final int deleted = this.job.deleteUnusedEntries(this.cleanupDAO, fromId, toId);
+                this.job.getLogger().debug("Deleted {} unused entries between {} and {}", deleted, fromId, toId);
+                this.deletedEntries.addAndGet(deleted);
+                this.processCascadeCandidates(cascadeCandidates);
+                return;
+            }
+
+            long[] ids = workItem.getIds();
+            if (ids == null)
+            {
+                ids = this.job.getIdsInRange(this.cleanupDAO, Long.valueOf(workItem.getFromId()), Long.valueOf(workItem.getToId()));
+                if (ids.length == 0)
+                {
+                    this.job.getLogger().debug("No entries exist between {} and {}", workItem.getFromId(), workItem.getToId());
+                    return;
+                }
+            }
+
+            if (this.cleanupMode == CleanupMode.MARK_AND_SWEEP)
+            {
+                final long[] candidateIds = this.referencedIds.filterNotContained(ids);
+                if (candidateIds.length != 0)
+                {
+                    final CascadeCandidates cascadeCandidates = this.cascadeCleanup
+                            ? this.job.collectCascadeCandidates(this.cleanupDAO, candidateIds)
+                            : null;
+                    final int deleted = this.job.deleteUnusedEntries(this.cleanupDAO, candidateIds);
+                    this.job.getLogger().debug("Deleted {} of {} unreferenced candidate entries between {} and {}", deleted,
+                            candidateIds.length, ids[0], ids[ids.length - 1]);
+                    this.deletedEntries.addAndGet(deleted);
+                    this.processCascadeCandidates(cascadeCandidates);
+                }
+                return;
+            }
+
+            // narrow reference checks to the actually existing IDs
+            final Long fromId = Long.valueOf(ids[0]);
+            final Long toId = Long.valueOf(ids[ids.length - 1]);
+
+            final long[] usedIds = this.job.getUsedEntries(this.cleanupDAO, fromId, toId);
+            final long[] unusedIds = LongIdArrays.difference(ids, usedIds);
+
+            this.job.getLogger().debug("Found {} unused entries between {} and {}", unusedIds.length, fromId, toId);
+            if (unusedIds.length != 0)
+            {
+                this.job.getLogger().trace("Unused entries: {}", unusedIds);
+                final CascadeCandidates cascadeCandidates = this.cascadeCleanup
+                        ? this.job.collectCascadeCandidates(this.cleanupDAO, unusedIds)
+                        : null;
+                this.job.deleteEntries(this.cleanupDAO, unusedIds);
+                this.processCascadeCandidates(cascadeCandidates);
+            }
+            this.deletedEntries.addAndGet(unusedIds.length);
+        }
+
+        protected void processCascadeCandidates(final CascadeCandidates cascadeCandidates)
+        {
+            if (cascadeCandidates != null)
+            {
+                // same transaction as the delete of the upstream entries, so downstream entries are never orphaned by a rollback
+                final int deleted = deleteCascadeCandidates(this.cleanupDAO, cascadeCandidates);
+                this.job.getLogger().debug("Deleted {} unused downstream entries via cascading cleanup", deleted);
+                this.cascadeDeletedEntries.addAndGet(deleted);
+            }
+        }
+
+    }
+
+    /**
+     * Instances of this class track the work items processed by a worker in the transaction of a single batch while the worker holds
+     * a permit of the {@link CleanupThrottleController throttle controller}.
+     *
+     * @author Axel Faust
+     */
+    protected static class ThrottledBatch
+    {
+
+        protected final long start;
+
+        // identity-based to not count work items twice when the transaction is retried
+        protected final Set<CleanupWorkItem> workItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        public ThrottledBatch(final long start)
+        {
+            this.start = start;
+        }
+
+        public void addWorkItem(final CleanupWorkItem workItem)
+        {
+            this.workItems.add(workItem);
+        }
+
+        /**
+         * Determines the average latency of the work items processed in the batch.
+         *
+         * @param end
+         *            the epoch milliseconds at which the transaction of the batch completed
+         * @return the average latency per work item in milliseconds, or {@code -1} if no work item has been processed
+         */
+        public long getWorkItemLatency(final long end)
+        {
+            return this.workItems.isEmpty() ? -1 : (end - this.start) / this.workItems.size();
+        }
+    }
+
+    /**
+     * Instances of this class track the progress of a cleanup run and persist the highest ID up to which all work items have been
+     * committed as a checkpoint after each batch transaction. As batches are processed in parallel and may complete out of order,
+     * the checkpoint only ever advances over a contiguous sequence of committed work items, so that a restarted run resumes exactly
+     * after the last committed range without skipping any failed or aborted work item.
+     *
+     * @author Axel Faust
+     */
+    protected static class CleanupProgressTracker
+    {
+
+        protected final String txnResourceKey = CleanupProgressTracker.class.getName() + "-" + System.identityHashCode(this);
+
+        protected final AttributeService attributeService;
+
+        protected final RetryingTransactionHelper retryingTransactionHelper;
+
+        protected final String simpleJobClassName;
+
+        protected final String lastIdAttributeName;
+
+        protected final Deque<Long> pendingToIds = new ArrayDeque<>();
+
+        protected final Set<Long> committedToIds = new HashSet<>();
+
+        protected final Object checkpointLock = new Object();
+
+        protected boolean registeredWork;
+
+        protected Long committedLastId;
+
+        protected Long persistedLastId;
+
+        public CleanupProgressTracker(final AttributeService attributeService, final RetryingTransactionHelper retryingTransactionHelper,
+                final String simpleJobClassName, final String lastIdAttributeName, final Long startId)
+        {
+            this.attributeService = attributeService;
+            this.retryingTransactionHelper = retryingTransactionHelper;
+            this.simpleJobClassName = simpleJobClassName;
+            this.lastIdAttributeName = lastIdAttributeName;
+            this.committedLastId = startId;
+            this.persistedLastId = startId;
+        }
+
+        /**
+         * Registers work items in the order in which they have been provided for processing.
+         *
+         * @param workItems
+         *            the work items to register
+         */
+        public synchronized void register(final Collection<CleanupWorkItem> workItems)
+        {
+            for (final CleanupWorkItem workItem : workItems)
+            {
+                this.pendingToIds.add(Long.valueOf(workItem.getToId()));
+                this.registeredWork = true;
+            }
+        }
+
+        /**
+         * Tracks the completion of a work item upon the commit of the current transaction.
+         *
+         * @param workItem
+         *            the work item being processed in the current transaction
+         */
+        public void trackCompletion(final CleanupWorkItem workItem)
+        {
+            List<CleanupWorkItem> txnWorkItems = AlfrescoTransactionSupport.getResource(this.txnResourceKey);
+            if (txnWorkItems == null)
+            {
+                txnWorkItems = new ArrayList<>();
+                AlfrescoTransactionSupport.bindResource(this.txnResourceKey, txnWorkItems);
+
+                final List<CleanupWorkItem> committedWorkItems = txnWorkItems;
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void afterCommit()
+                    {
+                        CleanupProgressTracker.this.committed(committedWorkItems);
+                        CleanupProgressTracker.this.checkpoint();
+                    }
+                });
+            }
+            txnWorkItems.add(workItem);
+        }
+
+        public synchronized boolean hasRegisteredWork()
+        {
+            return this.registeredWork;
+        }
+
+        public synchronized Long getCommittedLastId()
+        {
+            return this.committedLastId;
+        }
+
+        /**
+         * Persists the current checkpoint if it has advanced since it was last persisted.
+         */
+        public void checkpoint()
+        {
+            // serialise persistence, but not with regards to tracking of committed work items
+            synchronized (this.checkpointLock)
+            {
+                final Long lastId = this.getCommittedLastId();
+                if (lastId != null && !EqualsHelper.nullSafeEquals(lastId, this.persistedLastId))
+                {
+                    this.retryingTransactionHelper.doInTransaction(() -> {
+                        this.attributeService.setAttribute(lastId, AuditModuleConstants.SERVICE_NAMESPACE, this.simpleJobClassName,
+                                this.lastIdAttributeName);
+                        return null;
+                    }, false, true);
+                    this.persistedLastId = lastId;
+                }
+            }
+        }
+
+        /**
+         * Removes any persisted checkpoint so the next run starts from the beginning.
+         */
+        public void reset()
+        {
+            synchronized (this.checkpointLock)
+            {
+                this.retryingTransactionHelper.doInTransaction(() -> {
+                    this.attributeService.removeAttribute(AuditModuleConstants.SERVICE_NAMESPACE, this.simpleJobClassName,
+                            this.lastIdAttributeName);
+                    return null;
+                }, false, true);
+                this.persistedLastId = null;
+            }
+        }
+
+        protected synchronized void committed(final List<CleanupWorkItem> workItems)
+        {
+            for (final CleanupWorkItem workItem : workItems)
+            {
+                this.committedToIds.add(Long.valueOf(workItem.getToId()));
+            }
+
+            while (!this.pendingToIds.isEmpty() && this.committedToIds.remove(this.pendingToIds.peekFirst()))
+            {
+                this.committedLastId = this.pendingToIds.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Instances of this class adapt the processing of a cleanup run to the observed latency of individual work items and enforce a
+     * wall-clock deadline for the run. While the latency of work items exceeds the target latency, the controller first shrinks the
+     * ID range of new work items and then reduces the number of workers allowed to process work items concurrently. While the
+     * latency stays below the target, it first restores the number of concurrent workers and then widens the ID range again.
+     *
+     * @author Axel Faust
+     */
+    protected static class CleanupThrottleController
+    {
+
+        protected static final int RANGE_ADJUSTMENT_FACTOR = 10;
+
+        protected static final double LATENCY_WEIGHT = 0.3;
+
+        protected static final double LATENCY_TOLERANCE = 0.25;
+
+        protected final Logger logger;
+
+        protected final LockReleasedCheck lockReleaseCheck;
+
+        protected int maxWorkers;
+
+        protected int workerPoolSize;
+
+        protected int minIdsPerWorkItem;
+
+        protected int maxIdsPerWorkItem;
+
+        protected final long targetLatency;
+
+        protected final long deadline;
+
+        protected final AdjustableSemaphore workerPermits;
+
+        protected PropertyTablesCleanupConcurrencyBudget concurrencyBudget;
+
+        protected DataSourceBackPressure backPressure;
+
+        protected volatile int idsPerWorkItem;
+
+        protected int activeWorkers;
+
+        protected double averageLatency = -1;
+
+        protected int samplesSinceAdjustment;
+
+        public CleanupThrottleController(final Logger logger, final LockReleasedCheck lockReleaseCheck, final int workerCount,
+                final int idsPerWorkItem, final long targetLatency, final long deadline)
+        {
+            this.logger = logger;
+            this.lockReleaseCheck = lockReleaseCheck;
+            this.maxWorkers = workerCount;
+            this.workerPoolSize = workerCount;
+            this.activeWorkers = workerCount;
+            this.idsPerWorkItem = idsPerWorkItem;
+            this.minIdsPerWorkItem = Math.max(1, idsPerWorkItem / RANGE_ADJUSTMENT_FACTOR);
+            this.maxIdsPerWorkItem = idsPerWorkItem * RANGE_ADJUSTMENT_FACTOR;
+            this.targetLatency = targetLatency;
+            this.deadline = deadline;
+            this.workerPermits = new AdjustableSemaphore(workerCount);
+        }
+
+        /**
+         * Sets the global budget of concurrently processed work items shared with other cleanup jobs.
+         *
+         * @param concurrencyBudget
+         *            the shared budget - may be {@code null} if no global limit applies
+         */
+        public void setConcurrencyBudget(final PropertyTablesCleanupConcurrencyBudget concurrencyBudget)
+        {
+            this.concurrencyBudget = concurrencyBudget;
+        }
+
+        /**
+         * Sets the back-pressure component pausing workers while the database connection pool is saturated.
+         *
+         * @param backPressure
+         *            the back-pressure component - may be {@code null} if workers should never be paused
+         */
+        public void setBackPressure(final DataSourceBackPressure backPressure)
+        {
+            this.backPressure = backPressure;
+        }
+
+        /**
+         * Checks whether a cleanup run should stop processing any further work items.
+         *
+         * @return {@code true} if the deadline for the run has passed or the job lock has been released
+         */
+        public boolean shouldStop()
+        {
+            return (this.deadline > 0 && System.currentTimeMillis() >= this.deadline)
+                    || (this.lockReleaseCheck != null && this.lockReleaseCheck.isLockReleased());
+        }
+
+        /**
+         * Sets the number of worker threads started by the batch processor, which limits any increase of the number of concurrently
+         * active workers at runtime.
+         *
+         * @param workerPoolSize
+         *            the number of worker threads
+         */
+        public synchronized void setWorkerPoolSize(final int workerPoolSize)
+        {
+            this.workerPoolSize = Math.max(this.maxWorkers, workerPoolSize);
+        }
+
+        /**
+         * Changes the number of concurrently active workers of a run in progress, bounded by the number of worker threads started by
+         * the batch processor. This also sets the upper limit for any adaptation based on the target latency.
+         *
+         * @param workerCount
+         *            the number of concurrently active workers
+         */
+        public synchronized void setWorkerCount(final int workerCount)
+        {
+            final int effectiveWorkerCount = Math.max(1, Math.min(workerCount, this.workerPoolSize));
+            if (effectiveWorkerCount > this.activeWorkers)
+            {
+                this.workerPermits.release(effectiveWorkerCount - this.activeWorkers);
+            }
+            else if (effectiveWorkerCount < this.activeWorkers)
+            {
+                this.workerPermits.reducePermits(this.activeWorkers - effectiveWorkerCount);
+            }
+            this.maxWorkers = effectiveWorkerCount;
+            this.activeWorkers = effectiveWorkerCount;
+            this.samplesSinceAdjustment = 0;
+            this.logger.info("Changed concurrent workers to {}", effectiveWorkerCount);
+        }
+
+        /**
+         * Changes the number of IDs per work item of a run in progress, applying to work items loaded from now on. This also sets the
+         * base for any adaptation based on the target latency.
+         *
+         * @param idsPerWorkItem
+         *            the number of IDs per work item
+         */
+        public synchronized void setBaseIdsPerWorkItem(final int idsPerWorkItem)
+        {
+            final int effectiveIdsPerWorkItem = Math.max(1, idsPerWorkItem);
+            this.idsPerWorkItem = effectiveIdsPerWorkItem;
+            this.minIdsPerWorkItem = Math.max(1, effectiveIdsPerWorkItem / RANGE_ADJUSTMENT_FACTOR);
+            this.maxIdsPerWorkItem = effectiveIdsPerWorkItem * RANGE_ADJUSTMENT_FACTOR;
+            this.samplesSinceAdjustment = 0;
+            this.logger.info("Changed idsPerWorkItem to {}", effectiveIdsPerWorkItem);
+        }
+
+        public int getIdsPerWorkItem()
+        {
+            return this.idsPerWorkItem;
+        }
+
+        public synchronized int getActiveWorkers()
+        {
+            return this.activeWorkers;
+        }
+
+        /**
+         * Acquires a permit to process a batch of work items, blocking while the database connection pool is saturated, if the number
+         * of concurrent workers has been reduced or the global budget of concurrently processed work items is exhausted. This operation
+         * must be called before the transaction of the batch is started so that a blocked worker does not hold a database connection.
+         */
+        public void acquireWorker()
+        {
+            // wait before acquiring any permits so paused workers do not block capacity of other jobs
+            if (this.backPressure != null)
+            {
+                this.backPressure.awaitCapacity();
+            }
+            this.workerPermits.acquireUninterruptibly();
+            if (this.concurrencyBudget != null)
+            {
+                this.concurrencyBudget.acquire();
+            }
+        }
+
+        /**
+         * Releases a permit to process a batch of work items after its transaction has completed and records the average latency of
+         * processing the work items.
+         *
+         * @param latency
+         *            the latency of processing the work item in milliseconds, or a negative value if no work item has been processed
+         */
+        public void releaseWorker(final long latency)
+        {
+            if (this.concurrencyBudget != null)
+            {
+                this.concurrencyBudget.release();
+            }
+            this.workerPermits.release();
+            if (this.targetLatency > 0 && latency >= 0)
+            {
+                this.recordLatency(latency);
+            }
+        }
+
+        protected synchronized void recordLatency(final long latency)
+        {
+            this.averageLatency = this.averageLatency < 0 ? latency
+                    : LATENCY_WEIGHT * latency + (1 - LATENCY_WEIGHT) * this.averageLatency;
+
+            // adjust at most once per round of concurrent workers so effects of previous adjustments can be observed
+            this.samplesSinceAdjustment++;
+            if (this.samplesSinceAdjustment >= this.activeWorkers)
+            {
+                this.samplesSinceAdjustment = 0;
+                if (this.averageLatency > this.targetLatency * (1 + LATENCY_TOLERANCE))
+                {
+                    this.throttle();
+                }
+                else if (this.averageLatency < this.targetLatency * (1 - LATENCY_TOLERANCE))
+                {
+                    this.accelerate();
+                }
+            }
+        }
+
+        protected void throttle()
+        {
+            if (this.idsPerWorkItem > this.minIdsPerWorkItem)
+            {
+                this.idsPerWorkItem = Math.max(this.minIdsPerWorkItem, this.idsPerWorkItem * 3 / 4);
+                this.logger.debug("Average latency {} ms above target - reduced idsPerWorkItem to {}", this.averageLatency,
+                        this.idsPerWorkItem);
+            }
+            else if (this.activeWorkers > 1)
+            {
+                this.workerPermits.reducePermits(1);
+                this.activeWorkers--;
+                this.logger.debug("Average latency {} ms above target - reduced concurrent workers to {}", this.averageLatency,
+                        this.activeWorkers);
+            }
+        }
+
+        protected void accelerate()
+        {
+            if (this.activeWorkers < this.maxWorkers)
+            {
+                this.workerPermits.release();
+                this.activeWorkers++;
+                this.logger.debug("Average latency {} ms below target - increased concurrent workers to {}", this.averageLatency,
+                        this.activeWorkers);
+            }
+            else if (this.idsPerWorkItem < this.maxIdsPerWorkItem)
+            {
+                this.idsPerWorkItem = Math.min(this.maxIdsPerWorkItem, Math.max(this.idsPerWorkItem + 1, this.idsPerWorkItem * 5 / 4));
+                this.logger.debug("Average latency {} ms below target - increased idsPerWorkItem to {}", this.averageLatency,
+                        this.idsPerWorkItem);
+            }
+        }
     }
 }
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.PropertyCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+
+/**
+ * Instances of this class allow the tunable settings of a maintenance job to be inspected and overridden at runtime via JMX, and
+ * expose the progress of a run in progress. Jobs look up an instance via the {@code jobTuning} key of their job data map and resolve
+ * their settings via {@link #getJobDataValue(Object, String, boolean)}, so that overrides take precedence over the configured values.
+ * While a job is running, it may register a listener to apply changes of settings to the run in progress.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public class JobTuning implements JobTuningMBean, InitializingBean
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobTuning.class);
+
+    // settings for which 0 is not a valid value (in contrast to e.g. limits, where 0 disables the limit)
+    private static final Set<String> POSITIVE_SETTINGS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList("batchSize", "idsPerWorkItem", "workerCount", "workerThreads")));
+
+    protected String jobName;
+
+    protected Set<String> tunableSettings = Collections.emptySet();
+
+    protected int maxWorkerCount;
+
+    protected final Map<String, String> configuredSettings = new ConcurrentHashMap<>();
+
+    protected final Map<String, String> overriddenSettings = new ConcurrentHashMap<>();
+
+    protected volatile Map<String, Supplier<?>> progressSuppliers = Collections.emptyMap();
+
+    protected volatile BiConsumer<String, String> settingsListener;
+
+    protected volatile boolean running;
+
+    protected volatile Instant runStartTime;
+
+    /**
+     * Resolves a setting of a job, taking into account any override via the {@link JobTuning} instance registered in the job data map.
+     *
+     * @param context
+     *            the job execution context
+     * @param key
+     *            the key of the setting in the job data map
+     * @param mandatory
+     *            {@code true} if the setting must be configured in the job data map
+     * @return the overridden or configured value of the setting
+     */
+    public static String getJobDataValue(final Object context, final String key, final boolean mandatory)
+    {
+        final String configuredValue = JobUtilities.getJobDataValue(context, key, String.class, mandatory);
+        final JobTuning jobTuning = JobUtilities.getJobDataValue(context, "jobTuning", JobTuning.class, false);
+        return jobTuning != null ? jobTuning.resolveSetting(key, configuredValue) : configuredValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "jobName", this.jobName);
+    }
+
+    /**
+     * @param jobName
+     *            the jobName to set
+     */
+    public void setJobName(final String jobName)
+    {
+        this.jobName = jobName;
+    }
+
+    /**
+     * @param tunableSettings
+     *            the names of the settings which may be overridden
+     */
+    public void setTunableSettings(final List<String> tunableSettings)
+    {
+        this.tunableSettings = tunableSettings != null ? Collections.unmodifiableSet(new LinkedHashSet<>(tunableSettings))
+                : Collections.emptySet();
+    }
+
+    /**
+     * @param maxWorkerCount
+     *            the number of worker threads to start for a run of the job, so that the number of concurrently active workers can be
+     *            increased up to this limit while the job is running - if lower than the configured number of workers of a run, no
+     *            additional threads are started
+     */
+    public void setMaxWorkerCount(final int maxWorkerCount)
+    {
+        this.maxWorkerCount = maxWorkerCount;
+    }
+
+    /**
+     * Retrieves the number of worker threads to start for a run of the job.
+     *
+     * @param workerCount
+     *            the effective number of workers at the start of the run
+     * @return the number of worker threads to start
+     */
+    public int getWorkerPoolSize(final int workerCount)
+    {
+        return Math.max(workerCount, this.maxWorkerCount);
+    }
+
+    /**
+     * Resolves the effective value of a setting, recording the configured value for reporting.
+     *
+     * @param name
+     *            the name of the setting
+     * @param configuredValue
+     *            the configured value of the setting
+     * @return the overridden value if the setting has been overridden, or the configured value
+     */
+    public String resolveSetting(final String name, final String configuredValue)
+    {
+        ParameterCheck.mandatoryString("name", name);
+
+        if (configuredValue != null)
+        {
+            this.configuredSettings.put(name, configuredValue);
+        }
+        else
+        {
+            this.configuredSettings.remove(name);
+        }
+        final String overriddenValue = this.overriddenSettings.get(name);
+        return overriddenValue != null ? overriddenValue : configuredValue;
+    }
+
+    /**
+     * Registers the start of a run of the job.
+     *
+     * @param progressSuppliers
+     *            the suppliers of progress metrics of the run, mapped by the name of the metric
+     * @param settingsListener
+     *            the listener to be notified with the name and effective value of a setting when it is overridden / reset while the
+     *            job is running - may be {@code null} if no changes can be applied to the run in progress
+     */
+    public void startRun(final Map<String, Supplier<?>> progressSuppliers, final BiConsumer<String, String> settingsListener)
+    {
+        this.progressSuppliers = progressSuppliers != null ? new LinkedHashMap<>(progressSuppliers) : Collections.emptyMap();
+        this.settingsListener = settingsListener;
+        this.runStartTime = Instant.now();
+        this.running = true;
+    }
+
+    /**
+     * Registers the end of a run of the job. Progress metrics remain available until the next run.
+     */
+    public void endRun()
+    {
+        this.running = false;
+        this.settingsListener = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getJobName()
+    {
+        return this.jobName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getSettings()
+    {
+        final List<String> settings = new ArrayList<>();
+        for (final String name : this.tunableSettings)
+        {
+            final String configuredValue = this.configuredSettings.get(name);
+            final String overriddenValue = this.overriddenSettings.get(name);
+            if (overriddenValue != null)
+            {
+                settings.add(name + "=" + overriddenValue + " (configured: " + configuredValue + ")");
+            }
+            else
+            {
+                settings.add(name + "=" + configuredValue);
+            }
+        }
+        return settings.toArray(new String[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void overrideSetting(final String name, final String value)
+    {
+        ParameterCheck.mandatoryString("name", name);
+        ParameterCheck.mandatoryString("value", value);
+        if (!this.tunableSettings.contains(name))
+        {
+            throw new IllegalArgumentException("Setting " + name + " of " + this.jobName + " is not tunable - supported settings are "
+                    + this.tunableSettings);
+        }
+
+        final String trimmedValue = value.trim();
+        final int intValue;
+        try
+        {
+            intValue = Integer.parseInt(trimmedValue, 10);
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Value of " + name + " must be an integer", e);
+        }
+        if (POSITIVE_SETTINGS.contains(name) && intValue <= 0)
+        {
+            throw new IllegalArgumentException("Value of " + name + " must be a positive integer");
+        }
+        else if (intValue < 0)
+        {
+            throw new IllegalArgumentException("Value of " + name + " must not be negative");
+        }
+
+        LOGGER.info("Overriding setting {} of {} with {}", name, this.jobName, trimmedValue);
+        this.overriddenSettings.put(name, trimmedValue);
+        this.notifySettingsListener(name, trimmedValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetSetting(final String name)
+    {
+        ParameterCheck.mandatoryString("name", name);
+
+        if (this.overriddenSettings.remove(name) != null)
+        {
+            LOGGER.info("Reset override of setting {} of {}", name, this.jobName);
+            final String configuredValue = this.configuredSettings.get(name);
+            if (configuredValue != null)
+            {
+                this.notifySettingsListener(name, configuredValue);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRunning()
+    {
+        return this.running;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getRunStartTime()
+    {
+        final Instant runStartTime = this.runStartTime;
+        return runStartTime != null ? runStartTime.toString() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getProgress()
+    {
+        final List<String> progress = new ArrayList<>();
+        this.progressSuppliers.forEach((name, supplier) -> progress.add(name + "=" + supplier.get()));
+        return progress.toArray(new String[0]);
+    }
+
+    protected void notifySettingsListener(final String name, final String value)
+    {
+        final BiConsumer<String, String> listener = this.settingsListener;
+        if (listener != null)
+        {
+            listener.accept(name, value);
+        }
+    }
+}
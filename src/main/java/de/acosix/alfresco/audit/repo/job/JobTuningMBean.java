@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+/**
+ * Management interface for the runtime tuning of a maintenance job via JMX.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ */
+public interface JobTuningMBean
+{
+
+    /**
+     * Retrieves the name of the tuned job.
+     *
+     * @return the name of the job
+     */
+    String getJobName();
+
+    /**
+     * Retrieves the effective values of all tunable settings of the job, as used by the current / last run of the job.
+     *
+     * @return the settings in the form {@code name=value}, noting the configured value for any overridden settings
+     */
+    String[] getSettings();
+
+    /**
+     * Overrides a tunable setting of the job. Settings controlling the parallelism and work item sizes of a job are applied to a run in
+     * progress, while all other settings are applied with the next run of the job. Overrides are not persisted and are lost on restart.
+     *
+     * @param name
+     *            the name of the setting
+     * @param value
+     *            the value to set
+     */
+    void overrideSetting(String name, String value);
+
+    /**
+     * Removes the override of a tunable setting of the job, restoring the configured value (for a run in progress only if the setting
+     * is applied to a run in progress).
+     *
+     * @param name
+     *            the name of the setting
+     */
+    void resetSetting(String name);
+
+    /**
+     * Checks whether the job is currently running on this server.
+     *
+     * @return {@code true} if the job is running
+     */
+    boolean isRunning();
+
+    /**
+     * Retrieves the start time of the current / last run of the job on this server.
+     *
+     * @return the start time in ISO 8601 format, or {@code null} if the job has not run since startup
+     */
+    String getRunStartTime();
+
+    /**
+     * Retrieves the progress of the current / last run of the job on this server.
+     *
+     * @return the progress metrics in the form {@code name=value}
+     */
+    String[] getProgress();
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.utility.repo.job.GenericJob;
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+import de.acosix.alfresco.utility.repo.job.JobUtilities.LockReleasedCheck;
+
+/**
+ * This job removes obsolete attributes from the {@link AttributeService}, i.e. the alf_prop_unique_ctx entries (and indirectly the
+ * alf_prop_root / alf_prop_value entries only they keep alive) of data nobody will ever read again. Two kinds of attributes are
+ * considered obsolete:
+ * <ul>
+ * <li>attributes stored under a configured list of keys, typically the namespaces of modules that have been uninstalled</li>
+ * <li>progress of shards of the {@link IncrementalPropertyTableCleanupJob incremental cleanup jobs} that no longer exist since the
+ * number of shards has been reduced</li>
+ * </ul>
+ * Attributes are removed via the {@link AttributeService} in batches, each in its own transaction. The alf_prop_root / alf_prop_value
+ * entries which are no longer referenced after the removal are left to the regular incremental cleanup jobs.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class ObsoleteAttributesCleanupJob implements GenericJob
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObsoleteAttributesCleanupJob.class);
+
+    private static final QName LOCK_QNAME = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE,
+            ObsoleteAttributesCleanupJob.class.getSimpleName());
+
+    // mirrors the attribute names used by IncrementalPropertyTableCleanupJob for sharded runs
+    private static final String ATTR_SHARD_LAST_ID_PREFIX = "lastId-shard";
+
+    private static final String KEY_SEPARATOR = "|";
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final Object context)
+    {
+        try
+        {
+            LOGGER.debug("Running cleanup of obsolete attributes");
+            AuthenticationUtil.runAsSystem(() -> {
+                JobUtilities.runWithJobLock(context, LOCK_QNAME, lockReleaseCheck -> {
+                    final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                            TransactionService.class);
+                    this.doCleanup(context, transactionService.getRetryingTransactionHelper(), lockReleaseCheck);
+                });
+                return null;
+            });
+        }
+        catch (final RuntimeException e)
+        {
+            if (!(e instanceof LockAcquisitionException))
+            {
+                LOGGER.warn("Cleanup of obsolete attributes failed", e);
+            }
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Cleanup of obsolete attributes failed", e);
+        }
+    }
+
+    protected void doCleanup(final Object context, final RetryingTransactionHelper retryingTransactionHelper,
+            final LockReleasedCheck lockReleaseCheck)
+    {
+        final AttributeService attributeService = JobUtilities.getJobDataValue(context, "attributeService", AttributeService.class);
+        final String obsoleteKeysStr = JobUtilities.getJobDataValue(context, "obsoleteKeys", String.class, false);
+        final String batchSizeStr = JobUtilities.getJobDataValue(context, "batchSize", String.class);
+        final String engineShardCountStr = JobUtilities.getJobDataValue(context, "engineShardCount", String.class, false);
+        @SuppressWarnings("unchecked")
+        final Map<String, String> shardCounts = JobUtilities.getJobDataValue(context, "shardCounts", Map.class, false);
+
+        final int batchSize = Integer.parseInt(batchSizeStr.trim(), 10);
+        if (batchSize <= 0)
+        {
+            throw new IllegalStateException("batchSize must be a positive integer");
+        }
+        final List<Serializable[]> obsoleteKeys = parseObsoleteKeys(obsoleteKeysStr);
+        final int engineShardCount = parseShardCount(engineShardCountStr);
+
+        LOGGER.info("Running cleanup of obsolete attributes for {} configured keys with batchSize {}", obsoleteKeys.size(), batchSize);
+
+        int removedAttributes = 0;
+        for (final Serializable[] keys : obsoleteKeys)
+        {
+            if (lockReleaseCheck.isLockReleased())
+            {
+                break;
+            }
+
+            final int removed = this.removeAttributes(attributeService, retryingTransactionHelper, lockReleaseCheck, batchSize, keys);
+            LOGGER.debug("Removed {} attributes of obsolete key {}", removed, (Object) keys);
+            removedAttributes += removed;
+        }
+
+        int removedCheckpoints = 0;
+        if (shardCounts != null)
+        {
+            for (final Map.Entry<String, String> shardCountEntry : shardCounts.entrySet())
+            {
+                if (lockReleaseCheck.isLockReleased())
+                {
+                    break;
+                }
+
+                // progress may be tracked by standalone runs of the job or runs via the cleanup engine
+                final int shardCount = Math.max(parseShardCount(shardCountEntry.getValue()), engineShardCount);
+                removedCheckpoints += this.removeStaleShardCheckpoints(attributeService, retryingTransactionHelper,
+                        shardCountEntry.getKey(), shardCount);
+            }
+        }
+
+        LOGGER.info("Completed cleanup of obsolete attributes, removing {} attributes of obsolete keys and {} stale shard checkpoints{}",
+                removedAttributes, removedCheckpoints,
+                lockReleaseCheck.isLockReleased() ? " - cleanup will continue with the next run" : "");
+    }
+
+    protected int removeAttributes(final AttributeService attributeService, final RetryingTransactionHelper retryingTransactionHelper,
+            final LockReleasedCheck lockReleaseCheck, final int batchSize, final Serializable[] keys)
+    {
+        int removed = 0;
+        boolean done = false;
+        while (!done && !lockReleaseCheck.isLockReleased())
+        {
+            final int removedInBatch = retryingTransactionHelper.doInTransaction(() -> {
+                final List<Serializable[]> batchKeys = new ArrayList<>(batchSize);
+                attributeService.getAttributes((id, value, attributeKeys) -> {
+                    if (batchKeys.size() < batchSize)
+                    {
+                        batchKeys.add(attributeKeys);
+                    }
+                    return batchKeys.size() < batchSize;
+                }, keys);
+
+                batchKeys.forEach(attributeService::removeAttribute);
+                return batchKeys.size();
+            }, false, true);
+
+            removed += removedInBatch;
+            done = removedInBatch < batchSize;
+        }
+        return removed;
+    }
+
+    protected int removeStaleShardCheckpoints(final AttributeService attributeService,
+            final RetryingTransactionHelper retryingTransactionHelper, final String simpleJobClassName, final int shardCount)
+    {
+        final int removed = retryingTransactionHelper.doInTransaction(() -> {
+            final List<Serializable> staleAttributeNames = new ArrayList<>();
+            attributeService.getAttributes((id, value, attributeKeys) -> {
+                if (attributeKeys.length == 3 && isStaleShardCheckpoint(attributeKeys[2], shardCount))
+                {
+                    staleAttributeNames.add(attributeKeys[2]);
+                }
+                return true;
+            }, AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName);
+
+            staleAttributeNames.forEach(attributeName -> attributeService.removeAttribute(AuditModuleConstants.SERVICE_NAMESPACE,
+                    simpleJobClassName, attributeName));
+            return staleAttributeNames.size();
+        }, false, true);
+
+        if (removed > 0)
+        {
+            LOGGER.debug("Removed {} stale shard checkpoints of {} which currently uses {} shards", removed, simpleJobClassName,
+                    shardCount);
+        }
+        return removed;
+    }
+
+    protected static boolean isStaleShardCheckpoint(final Serializable attributeName, final int shardCount)
+    {
+        boolean stale = false;
+        if (attributeName instanceof String && ((String) attributeName).startsWith(ATTR_SHARD_LAST_ID_PREFIX))
+        {
+            final String shardIndexStr = ((String) attributeName).substring(ATTR_SHARD_LAST_ID_PREFIX.length());
+            try
+            {
+                final int shardIndex = Integer.parseInt(shardIndexStr, 10);
+                // unsharded runs (shardCount of 1) do not use any shard checkpoints
+                stale = shardCount <= 1 || shardIndex >= shardCount;
+            }
+            catch (final NumberFormatException e)
+            {
+                LOGGER.debug("Ignoring attribute {} not matching the pattern of shard checkpoints", attributeName);
+            }
+        }
+        return stale;
+    }
+
+    protected static List<Serializable[]> parseObsoleteKeys(final String obsoleteKeysStr)
+    {
+        if (obsoleteKeysStr == null || obsoleteKeysStr.trim().isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        final List<Serializable[]> obsoleteKeys = new ArrayList<>();
+        for (final String obsoleteKeyStr : obsoleteKeysStr.split(","))
+        {
+            if (!obsoleteKeyStr.trim().isEmpty())
+            {
+                final String[] keySegments = obsoleteKeyStr.trim().split("\\" + KEY_SEPARATOR);
+                if (keySegments.length > 3)
+                {
+                    throw new IllegalStateException("Obsolete key " + obsoleteKeyStr.trim() + " consists of more than 3 key segments");
+                }
+
+                final Serializable[] keys = new Serializable[keySegments.length];
+                for (int idx = 0; idx < keySegments.length; idx++)
+                {
+                    keys[idx] = keySegments[idx].trim();
+                }
+                // guard against accidentally removing the progress and state of the jobs of this module
+                if (AuditModuleConstants.SERVICE_NAMESPACE.equals(keys[0]))
+                {
+                    throw new IllegalStateException("Attributes of namespace " + AuditModuleConstants.SERVICE_NAMESPACE
+                            + " cannot be configured as obsolete keys");
+                }
+                obsoleteKeys.add(keys);
+            }
+        }
+        return obsoleteKeys;
+    }
+
+    protected static int parseShardCount(final String shardCountStr)
+    {
+        return shardCountStr != null && !shardCountStr.trim().isEmpty() ? Integer.parseInt(shardCountStr.trim(), 10) : 1;
+    }
+}
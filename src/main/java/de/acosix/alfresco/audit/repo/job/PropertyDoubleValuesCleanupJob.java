@@ -15,13 +15,15 @@
  */
 package de.acosix.alfresco.audit.repo.job;
 
-import java.util.List;
+import java.util.function.LongPredicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+import de.acosix.alfresco.audit.repo.dao.RoaringIdBitmap;
+import de.acosix.alfresco.audit.repo.dao.UnusedEntriesEstimate;
 
 /**
  * This job performs a cleanup of unused alf_prop_double_value entries (e.g. as a result of cleared audit entries). It uses
@@ -58,27 +60,85 @@ public class PropertyDoubleValuesCleanupJob extends IncrementalPropertyTableClea
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
+    protected long[] getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
     {
-        return cleanupDAO.listPropertyValueInstanceIds(PropertyValueTableType.DOUBLE, maxItems, startId);
+        return cleanupDAO.listPropertyValueInstanceIdsAsArray(PropertyValueTableType.DOUBLE, maxItems, startId);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+    protected long[] getIdsInRange(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.listPropertyValueInstanceIdsInRangeAsArray(PropertyValueTableType.DOUBLE, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long[] getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
             final Long toIdInclusive)
     {
-        return cleanupDAO.listUsedPropertyValueInstanceIds(PropertyValueTableType.DOUBLE, fromIdInclusive, toIdInclusive);
+        return cleanupDAO.listUsedPropertyValueInstanceIdsAsArray(PropertyValueTableType.DOUBLE, fromIdInclusive, toIdInclusive);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final List<Long> batchIds)
+    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] batchIds)
     {
         cleanupDAO.deletePropertyValueInstances(PropertyValueTableType.DOUBLE, batchIds);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.DOUBLE, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected RoaringIdBitmap getReferencedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return cleanupDAO.loadReferencedPropertyValueInstanceIds(PropertyValueTableType.DOUBLE, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] candidateIds)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.DOUBLE, candidateIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected UnusedEntriesEstimate estimateUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final int sampleRanges,
+            final int rangeWidth)
+    {
+        return cleanupDAO.estimateUnusedPropertyValueInstances(PropertyValueTableType.DOUBLE, sampleRanges, rangeWidth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean streamIds(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdExclusive, final Long toIdInclusive,
+            final LongPredicate idConsumer)
+    {
+        return cleanupDAO.streamPropertyValueInstanceIds(PropertyValueTableType.DOUBLE, fromIdExclusive, toIdInclusive,
+                idConsumer);
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.dao.PropertyRootCleanupCandidateQueue;
+import de.acosix.alfresco.audit.repo.dao.PropertyRootCleanupCandidateQueue.CandidateChunk;
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
+import de.acosix.alfresco.audit.repo.job.IncrementalPropertyTableCleanupJob.CascadeCandidates;
+import de.acosix.alfresco.utility.repo.job.GenericJob;
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+import de.acosix.alfresco.utility.repo.job.JobUtilities.LockReleasedCheck;
+
+/**
+ * This job performs a targeted cleanup of alf_prop_root entries which have been captured as candidates by the cleanup of audit
+ * applications before the referencing audit entries were cleared. Only the captured entries are checked and deleted if no longer
+ * referenced, optionally including the alf_prop_value / alf_prop_*_value entries orphaned by deleting them, so that the work required
+ * is proportional to the amount of audit data actually cleared instead of the total size of the alf_prop_* tables.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyRootCandidatesCleanupJob implements GenericJob
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyRootCandidatesCleanupJob.class);
+
+    private static final QName LOCK_QNAME = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE,
+            PropertyRootCandidatesCleanupJob.class.getSimpleName());
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final Object context)
+    {
+        try
+        {
+            LOGGER.debug("Running cleanup of captured alf_prop_root candidates");
+            AuthenticationUtil.runAsSystem(() -> {
+                JobUtilities.runWithJobLock(context, LOCK_QNAME, lockReleaseCheck -> {
+                    final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                            TransactionService.class);
+                    final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+                    final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context,
+                            "propertyTablesCleanupDAO", PropertyTablesCleanupDAO.class);
+                    try
+                    {
+                        this.doCleanup(context, retryingTransactionHelper, lockReleaseCheck);
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            retryingTransactionHelper.doInTransaction(() -> {
+                                propertyTablesCleanupDAO.flushCacheInvalidations();
+                                return null;
+                            }, false, true);
+                        }
+                        catch (final RuntimeException e)
+                        {
+                            // must not replace any exception of the actual cleanup
+                            LOGGER.error("Failed to flush pending cache invalidations", e);
+                        }
+                    }
+                });
+                return null;
+            });
+        }
+        catch (final RuntimeException e)
+        {
+            if (!(e instanceof LockAcquisitionException))
+            {
+                LOGGER.warn("Cleanup of captured alf_prop_root candidates failed", e);
+            }
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Cleanup of captured alf_prop_root candidates failed", e);
+        }
+    }
+
+    protected void doCleanup(final Object context, final RetryingTransactionHelper retryingTransactionHelper,
+            final LockReleasedCheck lockReleaseCheck)
+    {
+        final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                PropertyTablesCleanupDAO.class);
+        final PropertyRootCleanupCandidateQueue candidateQueue = JobUtilities.getJobDataValue(context,
+                "propertyRootCleanupCandidateQueue", PropertyRootCleanupCandidateQueue.class);
+        final String chunksLimitStr = JobUtilities.getJobDataValue(context, "chunksLimit", String.class, false);
+        final String cascadeCleanupStr = JobUtilities.getJobDataValue(context, "cascadeCleanup", String.class, false);
+
+        final int chunksLimit = chunksLimitStr != null && !chunksLimitStr.trim().isEmpty() ? Integer.parseInt(chunksLimitStr.trim(), 10)
+                : 0;
+        final boolean cascadeCleanup = Boolean.parseBoolean(cascadeCleanupStr != null ? cascadeCleanupStr.trim() : null);
+
+        LOGGER.info("Running cleanup of captured alf_prop_root candidates with chunksLimit {} and cascadeCleanup {}", chunksLimit,
+                cascadeCleanup);
+
+        int processedChunks = 0;
+        int checkedEntries = 0;
+        int deletedEntries = 0;
+        int cascadeDeletedEntries = 0;
+        boolean done = false;
+        while (!done && (chunksLimit <= 0 || processedChunks < chunksLimit) && !lockReleaseCheck.isLockReleased())
+        {
+            final int[] result = retryingTransactionHelper.doInTransaction(() -> {
+                final CandidateChunk chunk = candidateQueue.peek();
+                final int[] transactionResult;
+                if (chunk != null)
+                {
+                    final long[] rootIds = chunk.getRootIds();
+                    // linked alf_prop_value entries must be collected before the alf_prop_link entries are removed via cascade delete
+                    final CascadeCandidates cascadeCandidates = cascadeCleanup && rootIds.length != 0
+                            ? new CascadeCandidates(propertyTablesCleanupDAO.listPropertyValueIdsLinkedToRoots(rootIds))
+                            : null;
+                    final int deleted = rootIds.length != 0 ? propertyTablesCleanupDAO.deleteUnusedPropertyRoots(rootIds) : 0;
+                    final int cascadeDeleted = cascadeCandidates != null
+                            ? IncrementalPropertyTableCleanupJob.deleteCascadeCandidates(propertyTablesCleanupDAO, cascadeCandidates)
+                            : 0;
+                    candidateQueue.remove(chunk);
+                    transactionResult = new int[] { rootIds.length, deleted, cascadeDeleted };
+                }
+                else
+                {
+                    transactionResult = null;
+                }
+                return transactionResult;
+            }, false, true);
+
+            if (result != null)
+            {
+                processedChunks++;
+                checkedEntries += result[0];
+                deletedEntries += result[1];
+                cascadeDeletedEntries += result[2];
+            }
+            else
+            {
+                done = true;
+            }
+        }
+
+        LOGGER.info(
+                "Completed cleanup of {} chunks of captured alf_prop_root candidates, checking {} and deleting {} entries as well as {} orphaned downstream entries{}",
+                processedChunks, checkedEntries, deletedEntries, cascadeDeletedEntries,
+                done ? "" : " - cleanup will continue with the next run");
+    }
+}
@@ -15,12 +15,14 @@
  */
 package de.acosix.alfresco.audit.repo.job;
 
-import java.util.List;
+import java.util.function.LongPredicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
+import de.acosix.alfresco.audit.repo.dao.RoaringIdBitmap;
+import de.acosix.alfresco.audit.repo.dao.UnusedEntriesEstimate;
 
 /**
  * This job performs a cleanup of unused alf_prop_root entries (e.g. as a result of cleared audit entries). It uses
@@ -57,26 +59,102 @@ public class PropertyRootCleanupJob extends IncrementalPropertyTableCleanupJob
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
+    protected long[] getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
     {
-        return cleanupDAO.listPropertyRootIds(maxItems, startId);
+        return cleanupDAO.listPropertyRootIdsAsArray(maxItems, startId);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    protected long[] getIdsInRange(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
     {
-        return cleanupDAO.listUsedPropertyRootIds(fromIdInclusive, toIdInclusive);
+        return cleanupDAO.listPropertyRootIdsInRangeAsArray(fromIdInclusive, toIdInclusive);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final List<Long> batchIds)
+    protected long[] getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.listUsedPropertyRootIdsAsArray(fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] batchIds)
     {
         cleanupDAO.deletePropertyRoots(batchIds);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.deleteUnusedPropertyRoots(fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected RoaringIdBitmap getReferencedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return cleanupDAO.loadReferencedPropertyRootIds(fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] candidateIds)
+    {
+        return cleanupDAO.deleteUnusedPropertyRoots(candidateIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected UnusedEntriesEstimate estimateUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final int sampleRanges,
+            final int rangeWidth)
+    {
+        return cleanupDAO.estimateUnusedPropertyRoots(sampleRanges, rangeWidth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean streamIds(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdExclusive, final Long toIdInclusive,
+            final LongPredicate idConsumer)
+    {
+        return cleanupDAO.streamPropertyRootIds(fromIdExclusive, toIdInclusive, idConsumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CascadeCandidates collectCascadeCandidates(final PropertyTablesCleanupDAO cleanupDAO, final long[] ids)
+    {
+        return new CascadeCandidates(cleanupDAO.listPropertyValueIdsLinkedToRoots(ids));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CascadeCandidates collectCascadeCandidates(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return new CascadeCandidates(cleanupDAO.listPropertyValueIdsLinkedToUnusedRoots(fromIdInclusive, toIdInclusive));
+    }
 }
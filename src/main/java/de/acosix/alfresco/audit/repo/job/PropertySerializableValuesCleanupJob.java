@@ -15,19 +15,33 @@
  */
 package de.acosix.alfresco.audit.repo.job;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.LongPredicate;
 
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+import de.acosix.alfresco.audit.repo.dao.RoaringIdBitmap;
+import de.acosix.alfresco.audit.repo.dao.UnusedEntriesEstimate;
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+import de.acosix.alfresco.utility.repo.job.JobUtilities.LockReleasedCheck;
 
 /**
  * This job performs a cleanup of unused alf_prop_serializable_value entries (e.g. as a result of cleared audit entries). It uses
  * batch processing to retrieve and check manageable chunks of entries in parallel instead of doing one single, massive
  * cleanup operation on the database.
  *
+ * Optionally, this job can run in a size-ranked mode, in which it does not walk the table in ID order but determines the largest
+ * unreferenced entries by the stored size of their serialized values, deleting them largest first and reporting the number of bytes
+ * reclaimed, so that a limited cleanup window is spent on the entries freeing the most storage.
+ *
  * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
  *
  */
@@ -45,6 +59,133 @@ public class PropertySerializableValuesCleanupJob extends IncrementalPropertyTab
         return LOGGER;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void executeUnsharded(final Object context, final long deadline)
+    {
+        if (isSizeRanked(context))
+        {
+            this.executeSizeRanked(context, deadline);
+        }
+        else
+        {
+            super.executeUnsharded(context, deadline);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void executeSharded(final Object context, final int shardCount, final long deadline)
+    {
+        if (isSizeRanked(context))
+        {
+            LOGGER.debug("Ignoring shardCount {} in size-ranked mode", shardCount);
+            this.executeSizeRanked(context, deadline);
+        }
+        else
+        {
+            super.executeSharded(context, shardCount, deadline);
+        }
+    }
+
+    /**
+     * Runs the size-ranked cleanup, guarded by the same cluster-wide lock as a regular, unsharded cleanup.
+     *
+     * @param context
+     *            the job execution context
+     * @param deadline
+     *            the epoch milliseconds at which to stop processing or {@code -1} if no deadline applies
+     */
+    protected void executeSizeRanked(final Object context, final long deadline)
+    {
+        final QName lockQName = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE, this.getClass().getSimpleName());
+        JobUtilities.runWithJobLock(context, lockQName, lockReleaseCheck -> {
+            final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                    TransactionService.class);
+            final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+            try
+            {
+                this.doSizeRankedCleanup(context, retryingTransactionHelper, lockReleaseCheck, deadline);
+            }
+            finally
+            {
+                this.flushCacheInvalidations(context, retryingTransactionHelper);
+            }
+        });
+    }
+
+    protected void doSizeRankedCleanup(final Object context, final RetryingTransactionHelper retryingTransactionHelper,
+            final LockReleasedCheck lockReleaseCheck, final long deadline)
+    {
+        final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                PropertyTablesCleanupDAO.class);
+        final String idsPerWorkItemStr = JobTuning.getJobDataValue(context, "idsPerWorkItem", true);
+        final String checkItemsLimitStr = JobTuning.getJobDataValue(context, "checkItemsLimit", true);
+        final String minSizeStr = JobUtilities.getJobDataValue(context, "sizeRankedMinSize", String.class, false);
+
+        final int idsPerWorkItem = Integer.parseInt(idsPerWorkItemStr.trim(), 10);
+        final int checkItemsLimit = Integer.parseInt(checkItemsLimitStr.trim(), 10);
+        final long minSize = minSizeStr != null && !minSizeStr.trim().isEmpty() ? Long.parseLong(minSizeStr.trim(), 10) : 0;
+        if (idsPerWorkItem <= 0 || checkItemsLimit <= 0)
+        {
+            throw new IllegalStateException("idsPerWorkItem and checkItemsLimit must be positive integers in size-ranked mode");
+        }
+
+        final Map<Long, Long> sizesById = retryingTransactionHelper.doInTransaction(
+                () -> propertyTablesCleanupDAO.listUnusedPropertySerializableValueSizes(minSize, checkItemsLimit), true, true);
+        final long[] candidateIds = sizesById.keySet().stream().mapToLong(Long::longValue).toArray();
+        final long candidateBytes = sizesById.values().stream().mapToLong(Long::longValue).sum();
+
+        LOGGER.info("Running size-ranked cleanup of {} unreferenced alf_prop_serializable_value entries of at least {} bytes, totalling {} bytes",
+                candidateIds.length, minSize, candidateBytes);
+
+        int checkedEntries = 0;
+        int deletedEntries = 0;
+        long reclaimedBytes = 0;
+        for (int offset = 0; offset < candidateIds.length && !lockReleaseCheck.isLockReleased(); offset += idsPerWorkItem)
+        {
+            if (deadline > 0 && System.currentTimeMillis() >= deadline)
+            {
+                LOGGER.info("Stopped size-ranked cleanup due to deadline");
+                break;
+            }
+
+            final long[] chunk = Arrays.copyOfRange(candidateIds, offset, Math.min(candidateIds.length, offset + idsPerWorkItem));
+            final SizeRankedResult result = retryingTransactionHelper.doInTransaction(() -> {
+                final SizeRankedResult transactionResult = new SizeRankedResult();
+                transactionResult.deletedEntries = propertyTablesCleanupDAO
+                        .deleteUnusedPropertyValueInstances(PropertyValueTableType.SERIALIZABLE, chunk);
+
+                // entries may have been referenced again since the candidates were selected, so only count actually deleted entries
+                final long[] remainingIds = transactionResult.deletedEntries < chunk.length
+                        ? propertyTablesCleanupDAO.listExistingPropertySerializableValueIds(chunk)
+                        : new long[0];
+                for (final long id : chunk)
+                {
+                    if (Arrays.binarySearch(remainingIds, id) < 0)
+                    {
+                        transactionResult.reclaimedBytes += sizesById.get(Long.valueOf(id)).longValue();
+                    }
+                }
+                return transactionResult;
+            }, false, true);
+
+            checkedEntries += chunk.length;
+            deletedEntries += result.deletedEntries;
+            reclaimedBytes += result.reclaimedBytes;
+
+            LOGGER.debug("Deleted {} of {} unreferenced alf_prop_serializable_value entries, reclaiming {} bytes", result.deletedEntries,
+                    chunk.length, result.reclaimedBytes);
+        }
+
+        LOGGER.info("Completed size-ranked cleanup, deleting {} of {} checked alf_prop_serializable_value entries and reclaiming {} bytes",
+                deletedEntries, checkedEntries, reclaimedBytes);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -58,26 +199,105 @@ public class PropertySerializableValuesCleanupJob extends IncrementalPropertyTab
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
+    protected long[] getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
     {
-        return cleanupDAO.listPropertyValueInstanceIds(PropertyValueTableType.SERIALIZABLE, maxItems, startId);
+        return cleanupDAO.listPropertyValueInstanceIdsAsArray(PropertyValueTableType.SERIALIZABLE, maxItems, startId);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    protected long[] getIdsInRange(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
     {
-        return cleanupDAO.listUsedPropertyValueInstanceIds(PropertyValueTableType.SERIALIZABLE, fromIdInclusive, toIdInclusive);
+        return cleanupDAO.listPropertyValueInstanceIdsInRangeAsArray(PropertyValueTableType.SERIALIZABLE, fromIdInclusive, toIdInclusive);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final List<Long> batchIds)
+    protected long[] getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.listUsedPropertyValueInstanceIdsAsArray(PropertyValueTableType.SERIALIZABLE, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] batchIds)
     {
         cleanupDAO.deletePropertyValueInstances(PropertyValueTableType.SERIALIZABLE, batchIds);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.SERIALIZABLE, fromIdInclusive,
+                toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected RoaringIdBitmap getReferencedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return cleanupDAO.loadReferencedPropertyValueInstanceIds(PropertyValueTableType.SERIALIZABLE, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] candidateIds)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.SERIALIZABLE, candidateIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected UnusedEntriesEstimate estimateUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final int sampleRanges,
+            final int rangeWidth)
+    {
+        return cleanupDAO.estimateUnusedPropertyValueInstances(PropertyValueTableType.SERIALIZABLE, sampleRanges,
+                rangeWidth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean streamIds(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdExclusive, final Long toIdInclusive,
+            final LongPredicate idConsumer)
+    {
+        return cleanupDAO.streamPropertyValueInstanceIds(PropertyValueTableType.SERIALIZABLE, fromIdExclusive,
+                toIdInclusive, idConsumer);
+    }
+
+    protected static boolean isSizeRanked(final Object context)
+    {
+        final String sizeRankedStr = JobUtilities.getJobDataValue(context, "sizeRanked", String.class, false);
+        return Boolean.parseBoolean(sizeRankedStr != null ? sizeRankedStr.trim() : null);
+    }
+
+    /**
+     * Instances of this class hold the result of a single transaction of the size-ranked cleanup.
+     *
+     * @author Axel Faust
+     */
+    protected static class SizeRankedResult
+    {
+
+        protected int deletedEntries;
+
+        protected long reclaimedBytes;
+    }
 }
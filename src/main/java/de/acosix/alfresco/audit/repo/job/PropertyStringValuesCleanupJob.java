@@ -15,13 +15,15 @@
  */
 package de.acosix.alfresco.audit.repo.job;
 
-import java.util.List;
+import java.util.function.LongPredicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
 import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+import de.acosix.alfresco.audit.repo.dao.RoaringIdBitmap;
+import de.acosix.alfresco.audit.repo.dao.UnusedEntriesEstimate;
 
 /**
  * This job performs a cleanup of unused alf_prop_string_value entries (e.g. as a result of cleared audit entries). It uses
@@ -58,27 +60,85 @@ public class PropertyStringValuesCleanupJob extends IncrementalPropertyTableClea
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
+    protected long[] getIdBatch(final PropertyTablesCleanupDAO cleanupDAO, final int maxItems, final Long startId)
     {
-        return cleanupDAO.listPropertyValueInstanceIds(PropertyValueTableType.STRING, maxItems, startId);
+        return cleanupDAO.listPropertyValueInstanceIdsAsArray(PropertyValueTableType.STRING, maxItems, startId);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected List<Long> getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+    protected long[] getIdsInRange(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.listPropertyValueInstanceIdsInRangeAsArray(PropertyValueTableType.STRING, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long[] getUsedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
             final Long toIdInclusive)
     {
-        return cleanupDAO.listUsedPropertyValueInstanceIds(PropertyValueTableType.STRING, fromIdInclusive, toIdInclusive);
+        return cleanupDAO.listUsedPropertyValueInstanceIdsAsArray(PropertyValueTableType.STRING, fromIdInclusive, toIdInclusive);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final List<Long> batchIds)
+    protected void deleteEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] batchIds)
     {
         cleanupDAO.deletePropertyValueInstances(PropertyValueTableType.STRING, batchIds);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive, final Long toIdInclusive)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.STRING, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected RoaringIdBitmap getReferencedEntries(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdInclusive,
+            final Long toIdInclusive)
+    {
+        return cleanupDAO.loadReferencedPropertyValueInstanceIds(PropertyValueTableType.STRING, fromIdInclusive, toIdInclusive);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int deleteUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final long[] candidateIds)
+    {
+        return cleanupDAO.deleteUnusedPropertyValueInstances(PropertyValueTableType.STRING, candidateIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected UnusedEntriesEstimate estimateUnusedEntries(final PropertyTablesCleanupDAO cleanupDAO, final int sampleRanges,
+            final int rangeWidth)
+    {
+        return cleanupDAO.estimateUnusedPropertyValueInstances(PropertyValueTableType.STRING, sampleRanges, rangeWidth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean streamIds(final PropertyTablesCleanupDAO cleanupDAO, final Long fromIdExclusive, final Long toIdInclusive,
+            final LongPredicate idConsumer)
+    {
+        return cleanupDAO.streamPropertyValueInstanceIds(PropertyValueTableType.STRING, fromIdExclusive, toIdInclusive,
+                idConsumer);
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.acosix.alfresco.audit.repo.AuditModuleConstants;
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO;
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupDAO.PropertyValueTableType;
+import de.acosix.alfresco.utility.repo.job.GenericJob;
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+import de.acosix.alfresco.utility.repo.job.JobUtilities.LockReleasedCheck;
+
+/**
+ * This job compacts duplicate alf_prop_string_value entries, i.e. entries with identical values which have been created e.g. by
+ * concurrent inserts without a unique constraint preventing them. All alf_prop_value entries referencing a duplicate are repointed to
+ * the entry with the lowest ID in each group of duplicates, after which the duplicates are no longer referenced and will be removed by
+ * the regular {@link PropertyStringValuesCleanupJob cleanup of alf_prop_string_value}. Groups of duplicates are processed in ascending
+ * order of the surviving entry, with each transaction covering a contiguous range of surviving entries within a bounded window of IDs,
+ * so that each lookup of duplicates only needs to consider the entries of that window and progress can be tracked across runs.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyStringValuesCompactionJob implements GenericJob
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyStringValuesCompactionJob.class);
+
+    private static final QName LOCK_QNAME = QName.createQName(AuditModuleConstants.SERVICE_NAMESPACE,
+            PropertyStringValuesCompactionJob.class.getSimpleName());
+
+    private static final String ATTR_LAST_ID = "lastId";
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final Object context)
+    {
+        try
+        {
+            LOGGER.debug("Running compaction of duplicate alf_prop_string_value entries");
+            AuthenticationUtil.runAsSystem(() -> {
+                JobUtilities.runWithJobLock(context, LOCK_QNAME, lockReleaseCheck -> {
+                    final TransactionService transactionService = JobUtilities.getJobDataValue(context, "transactionService",
+                            TransactionService.class);
+                    final RetryingTransactionHelper retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+                    final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context,
+                            "propertyTablesCleanupDAO", PropertyTablesCleanupDAO.class);
+                    try
+                    {
+                        this.doCompaction(context, retryingTransactionHelper, lockReleaseCheck);
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            retryingTransactionHelper.doInTransaction(() -> {
+                                propertyTablesCleanupDAO.flushCacheInvalidations();
+                                return null;
+                            }, false, true);
+                        }
+                        catch (final RuntimeException e)
+                        {
+                            // must not replace any exception of the actual compaction
+                            LOGGER.error("Failed to flush pending cache invalidations", e);
+                        }
+                    }
+                });
+                return null;
+            });
+        }
+        catch (final RuntimeException e)
+        {
+            if (!(e instanceof LockAcquisitionException))
+            {
+                LOGGER.warn("Compaction of duplicate alf_prop_string_value entries failed", e);
+            }
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Compaction of duplicate alf_prop_string_value entries failed", e);
+        }
+    }
+
+    protected void doCompaction(final Object context, final RetryingTransactionHelper retryingTransactionHelper,
+            final LockReleasedCheck lockReleaseCheck)
+    {
+        final AttributeService attributeService = JobUtilities.getJobDataValue(context, "attributeService", AttributeService.class);
+        final PropertyTablesCleanupDAO propertyTablesCleanupDAO = JobUtilities.getJobDataValue(context, "propertyTablesCleanupDAO",
+                PropertyTablesCleanupDAO.class);
+        final String groupsPerTransactionStr = JobUtilities.getJobDataValue(context, "groupsPerTransaction", String.class);
+        final String groupsLimitStr = JobUtilities.getJobDataValue(context, "groupsLimit", String.class, false);
+        final String windowSizeStr = JobUtilities.getJobDataValue(context, "windowSize", String.class);
+
+        final int groupsPerTransaction = Integer.parseInt(groupsPerTransactionStr.trim(), 10);
+        final int groupsLimit = groupsLimitStr != null && !groupsLimitStr.trim().isEmpty() ? Integer.parseInt(groupsLimitStr.trim(), 10)
+                : 0;
+        final int windowSize = Integer.parseInt(windowSizeStr.trim(), 10);
+        if (groupsPerTransaction <= 0)
+        {
+            throw new IllegalStateException("groupsPerTransaction must be a positive integer");
+        }
+        if (windowSize <= 0)
+        {
+            throw new IllegalStateException("windowSize must be a positive integer");
+        }
+
+        final String simpleJobClassName = this.getClass().getSimpleName();
+        final Serializable attribute = retryingTransactionHelper.doInTransaction(
+                () -> attributeService.getAttribute(AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName, ATTR_LAST_ID), true,
+                true);
+        Long lastId = DefaultTypeConverter.INSTANCE.convert(Long.class, attribute);
+        final Long maxId = retryingTransactionHelper.doInTransaction(
+                () -> propertyTablesCleanupDAO.getMaxPropertyValueInstanceId(PropertyValueTableType.STRING), true, true);
+
+        LOGGER.info(
+                "Running compaction of duplicate alf_prop_string_value entries from last ID {} up to max ID {} with groupsPerTransaction {}, groupsLimit {} and windowSize {}",
+                lastId, maxId, groupsPerTransaction, groupsLimit, windowSize);
+
+        int processedGroups = 0;
+        int repointedReferences = 0;
+        boolean done = maxId == null;
+        while (!done && (groupsLimit <= 0 || processedGroups < groupsLimit) && !lockReleaseCheck.isLockReleased())
+        {
+            final Long fromId = lastId;
+            final Long toId = Long.valueOf(Math.min(maxId.longValue(), (fromId != null ? fromId.longValue() : 0) + windowSize));
+            final int maxGroups = groupsLimit > 0 ? Math.min(groupsPerTransaction, groupsLimit - processedGroups) : groupsPerTransaction;
+            final CompactionResult result = retryingTransactionHelper.doInTransaction(() -> {
+                final Map<Long, long[]> duplicateIdsBySurvivor = propertyTablesCleanupDAO.listDuplicatePropertyStringValues(fromId, toId,
+                        maxGroups);
+
+                final CompactionResult transactionResult = new CompactionResult();
+                duplicateIdsBySurvivor.forEach((survivorId, duplicateIds) -> {
+                    final int repointed = propertyTablesCleanupDAO.mergeDuplicatePropertyStringValues(survivorId.longValue(),
+                            duplicateIds);
+                    LOGGER.trace("Repointed {} references from duplicates {} to alf_prop_string_value {}", repointed, duplicateIds,
+                            survivorId);
+                    transactionResult.groups++;
+                    transactionResult.repointedReferences += repointed;
+                    transactionResult.lastSurvivorId = survivorId;
+                });
+
+                // window is only exhausted if less than the maximum number of groups have been found
+                transactionResult.lastId = transactionResult.groups >= maxGroups ? transactionResult.lastSurvivorId : toId;
+                if (transactionResult.lastId.longValue() < maxId.longValue())
+                {
+                    attributeService.setAttribute(transactionResult.lastId, AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName,
+                            ATTR_LAST_ID);
+                }
+                else
+                {
+                    // all groups processed - next run starts from the beginning again as new duplicates may have any survivor
+                    attributeService.removeAttribute(AuditModuleConstants.SERVICE_NAMESPACE, simpleJobClassName, ATTR_LAST_ID);
+                }
+                return transactionResult;
+            }, false, true);
+
+            processedGroups += result.groups;
+            repointedReferences += result.repointedReferences;
+            lastId = result.lastId;
+            done = lastId.longValue() >= maxId.longValue();
+
+            LOGGER.debug("Compacted {} groups of duplicate alf_prop_string_value entries after ID {} up to ID {}", result.groups, fromId,
+                    lastId);
+        }
+
+        LOGGER.info("Completed compaction of {} groups of duplicate alf_prop_string_value entries, repointing {} references{}",
+                processedGroups, repointedReferences, done ? "" : " - compaction will continue with the next run");
+    }
+
+    /**
+     * Instances of this class hold the result of a single compaction transaction.
+     *
+     * @author Axel Faust
+     */
+    protected static class CompactionResult
+    {
+
+        protected int groups;
+
+        protected int repointedReferences;
+
+        protected Long lastSurvivorId;
+
+        protected Long lastId;
+    }
+}
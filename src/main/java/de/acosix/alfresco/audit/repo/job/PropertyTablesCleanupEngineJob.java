@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.acosix.alfresco.audit.repo.dao.PropertyTablesCleanupConcurrencyBudget;
+import de.acosix.alfresco.utility.repo.job.GenericJob;
+import de.acosix.alfresco.utility.repo.job.JobUtilities;
+
+/**
+ * This job runs the incremental cleanup of all alf_prop_* tables concurrently instead of relying on staggered schedules of the
+ * individual cleanup jobs. Each table is processed by its regular cleanup job using the settings of this job, guarded by the same
+ * cluster-wide lock and tracking the same progress as a standalone run of that job. All tables share a single
+ * {@link PropertyTablesCleanupConcurrencyBudget budget} of concurrently processed work items, so that each table may use the full
+ * budget while the others are idle, and capacity is handed over to the remaining tables as soon as one table has completed.
+ *
+ * @author Axel Faust, <a href="http://acosix.de">Acosix GmbH</a>
+ *
+ */
+public class PropertyTablesCleanupEngineJob implements GenericJob
+{
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyTablesCleanupEngineJob.class);
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final Object context)
+    {
+        final PropertyTablesCleanupConcurrencyBudget concurrencyBudget = JobUtilities.getJobDataValue(context, "concurrencyBudget",
+                PropertyTablesCleanupConcurrencyBudget.class, false);
+        final List<IncrementalPropertyTableCleanupJob> cleanupJobs = Arrays.asList(new PropertyRootCleanupJob(),
+                new PropertyValuesCleanupJob(), new PropertyStringValuesCleanupJob(), new PropertyDoubleValuesCleanupJob(),
+                new PropertySerializableValuesCleanupJob());
+
+        LOGGER.info("Running concurrent cleanup of {} alf_prop_* tables", cleanupJobs.size());
+        final long start = System.currentTimeMillis();
+        final long waitTimeBefore = concurrencyBudget != null ? concurrencyBudget.getWaitTime() : 0;
+
+        final List<Thread> threads = new ArrayList<>(cleanupJobs.size());
+        for (final IncrementalPropertyTableCleanupJob cleanupJob : cleanupJobs)
+        {
+            // each job handles / logs its own failures, including lock acquisition failures if already run elsewhere
+            final Thread thread = new Thread(() -> cleanupJob.execute(context),
+                    PropertyTablesCleanupEngineJob.class.getSimpleName() + "-" + cleanupJob.getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try
+        {
+            for (final Thread thread : threads)
+            {
+                thread.join();
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for cleanup of alf_prop_* tables to complete");
+        }
+
+        if (concurrencyBudget != null)
+        {
+            LOGGER.info(
+                    "Completed concurrent cleanup of alf_prop_* tables in {} ms - work items waited {} ms in total for the concurrency budget, peak of concurrent work items since startup is {}",
+                    System.currentTimeMillis() - start, concurrencyBudget.getWaitTime() - waitTimeBefore,
+                    concurrencyBudget.getPeakActiveWorkItems());
+        }
+        else
+        {
+            LOGGER.info("Completed concurrent cleanup of alf_prop_* tables in {} ms", System.currentTimeMillis() - start);
+        }
+    }
+}
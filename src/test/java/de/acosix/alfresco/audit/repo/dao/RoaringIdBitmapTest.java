@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Axel Faust
+ */
+public class RoaringIdBitmapTest
+{
+
+    private static final long CHUNK_SIZE = 1 << 16;
+
+    @Test
+    public void arrayContainerPromotedToBitmapContainerBeyond4096Entries()
+    {
+        final RoaringIdBitmap bitmap = new RoaringIdBitmap();
+        for (long id = 0; id < 4096; id++)
+        {
+            // every other ID so the promoted bitmap container is not simply filled up to a prefix
+            bitmap.add(id * 2);
+        }
+
+        Assert.assertEquals(4096, bitmap.getCardinality());
+        Assert.assertTrue(bitmap.containers.get(Long.valueOf(0)) instanceof RoaringIdBitmap.ArrayContainer);
+
+        bitmap.add(8193);
+
+        Assert.assertEquals(4097, bitmap.getCardinality());
+        Assert.assertTrue(bitmap.containers.get(Long.valueOf(0)) instanceof RoaringIdBitmap.BitmapContainer);
+        for (long id = 0; id < 4096; id++)
+        {
+            Assert.assertTrue("ID " + (id * 2) + " lost on promotion", bitmap.contains(id * 2));
+            Assert.assertFalse("ID " + (id * 2 + 1) + " added on promotion", bitmap.contains(id * 2 + 1));
+        }
+        Assert.assertTrue(bitmap.contains(8193));
+    }
+
+    @Test
+    public void duplicateIdsDoNotPromoteOrCount()
+    {
+        final RoaringIdBitmap bitmap = new RoaringIdBitmap();
+        for (int round = 0; round < 2; round++)
+        {
+            for (long id = 0; id < 4096; id++)
+            {
+                bitmap.add(id);
+            }
+        }
+
+        Assert.assertEquals(4096, bitmap.getCardinality());
+        Assert.assertTrue(bitmap.containers.get(Long.valueOf(0)) instanceof RoaringIdBitmap.ArrayContainer);
+    }
+
+    @Test
+    public void containsAcrossChunkBoundaries()
+    {
+        final RoaringIdBitmap bitmap = new RoaringIdBitmap();
+        bitmap.add(CHUNK_SIZE - 1);
+        bitmap.add(CHUNK_SIZE);
+        bitmap.add(3 * CHUNK_SIZE + 5);
+        bitmap.add(Long.MAX_VALUE);
+
+        Assert.assertEquals(4, bitmap.getCardinality());
+        Assert.assertEquals(4, bitmap.containers.size());
+
+        Assert.assertTrue(bitmap.contains(CHUNK_SIZE - 1));
+        Assert.assertTrue(bitmap.contains(CHUNK_SIZE));
+        Assert.assertTrue(bitmap.contains(3 * CHUNK_SIZE + 5));
+        Assert.assertTrue(bitmap.contains(Long.MAX_VALUE));
+
+        // same low-order bits in other chunks must not match
+        Assert.assertFalse(bitmap.contains(2 * CHUNK_SIZE - 1));
+        Assert.assertFalse(bitmap.contains(0));
+        Assert.assertFalse(bitmap.contains(2 * CHUNK_SIZE));
+        Assert.assertFalse(bitmap.contains(5));
+        Assert.assertFalse(bitmap.contains(CHUNK_SIZE + 1));
+        Assert.assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void filterNotContained()
+    {
+        final RoaringIdBitmap bitmap = new RoaringIdBitmap();
+        bitmap.add(1);
+        bitmap.add(CHUNK_SIZE);
+        bitmap.add(5 * CHUNK_SIZE + 7);
+
+        Assert.assertArrayEquals(new long[] { 9, 2, CHUNK_SIZE + 1, 5 * CHUNK_SIZE + 8 },
+                bitmap.filterNotContained(new long[] { 9, 1, 2, CHUNK_SIZE, CHUNK_SIZE + 1, 5 * CHUNK_SIZE + 7, 5 * CHUNK_SIZE + 8 }));
+        Assert.assertArrayEquals(new long[0], bitmap.filterNotContained(new long[] { CHUNK_SIZE, 1 }));
+        Assert.assertArrayEquals(new long[] { 3, 4 }, bitmap.filterNotContained(new long[] { 3, 4 }));
+        Assert.assertArrayEquals(new long[0], bitmap.filterNotContained(new long[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIdsRejected()
+    {
+        new RoaringIdBitmap().add(-1);
+    }
+}
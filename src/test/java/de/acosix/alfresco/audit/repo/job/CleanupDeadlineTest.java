@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import de.acosix.alfresco.audit.repo.job.IncrementalPropertyTableCleanupJob.CleanupThrottleController;
+
+/**
+ * @author Axel Faust
+ */
+public class CleanupDeadlineTest
+{
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    @Test
+    public void deadlineAfterMidnightForRunStartedBeforeMidnight()
+    {
+        final ZonedDateTime runStart = ZonedDateTime.of(2026, 10, 16, 22, 0, 0, 0, ZONE);
+        Assert.assertEquals(ZonedDateTime.of(2026, 10, 17, 5, 0, 0, 0, ZONE).toInstant().toEpochMilli(),
+                IncrementalPropertyTableCleanupJob.determineDeadline("05:00", runStart));
+    }
+
+    @Test
+    public void deadlineAfterMidnightForRunStartedAfterMidnight()
+    {
+        final ZonedDateTime runStart = ZonedDateTime.of(2026, 10, 17, 0, 30, 0, 0, ZONE);
+        Assert.assertEquals(ZonedDateTime.of(2026, 10, 17, 5, 0, 0, 0, ZONE).toInstant().toEpochMilli(),
+                IncrementalPropertyTableCleanupJob.determineDeadline("05:00", runStart));
+    }
+
+    @Test
+    public void deadlineAtRunStartRefersToNextDay()
+    {
+        final ZonedDateTime runStart = ZonedDateTime.of(2026, 10, 17, 5, 0, 0, 0, ZONE);
+        Assert.assertEquals(ZonedDateTime.of(2026, 10, 18, 5, 0, 0, 0, ZONE).toInstant().toEpochMilli(),
+                IncrementalPropertyTableCleanupJob.determineDeadline("05:00", runStart));
+    }
+
+    @Test
+    public void deadlineAcrossDaylightSavingTimeChange()
+    {
+        // clocks are turned back at 03:00 on 2026-10-25, so the window until 05:00 is one hour longer
+        final ZonedDateTime runStart = ZonedDateTime.of(2026, 10, 24, 23, 0, 0, 0, ZONE);
+        final long deadline = IncrementalPropertyTableCleanupJob.determineDeadline("05:00", runStart);
+        Assert.assertEquals(7 * 60 * 60 * 1000l, deadline - runStart.toInstant().toEpochMilli());
+    }
+
+    @Test
+    public void throttleControllerStopsOnceDeadlineHasPassed()
+    {
+        final long now = System.currentTimeMillis();
+        Assert.assertTrue(newThrottleController(now - 1000).shouldStop());
+        Assert.assertFalse(newThrottleController(now + 60 * 60 * 1000l).shouldStop());
+        Assert.assertFalse(newThrottleController(-1).shouldStop());
+    }
+
+    @Test
+    public void throttleControllerStopsForPastDeadlineAcrossMidnight()
+    {
+        // a run started yesterday evening with a deadline of 05:00 today must stop after 05:00
+        final ZonedDateTime now = ZonedDateTime.now(ZONE);
+        final ZonedDateTime runStart = now.minusHours(8);
+        final long deadline = IncrementalPropertyTableCleanupJob.determineDeadline(now.minusHours(1).toLocalTime().toString(), runStart);
+
+        Assert.assertTrue(newThrottleController(deadline).shouldStop());
+    }
+
+    private static CleanupThrottleController newThrottleController(final long deadline)
+    {
+        return new CleanupThrottleController(LoggerFactory.getLogger(CleanupDeadlineTest.class), () -> false, 2, 100, -1, deadline);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 - 2026 Acosix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.acosix.alfresco.audit.repo.job;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.acosix.alfresco.audit.repo.job.IncrementalPropertyTableCleanupJob.CleanupProgressTracker;
+import de.acosix.alfresco.audit.repo.job.IncrementalPropertyTableCleanupJob.CleanupWorkItem;
+
+/**
+ * @author Axel Faust
+ */
+public class CleanupProgressTrackerTest
+{
+
+    @Test
+    public void outOfOrderCommitsDoNotAdvancePastGap()
+    {
+        final CleanupProgressTracker tracker = newTracker(Long.valueOf(100));
+        final CleanupWorkItem first = new CleanupWorkItem(101, 200);
+        final CleanupWorkItem second = new CleanupWorkItem(201, 300);
+        final CleanupWorkItem third = new CleanupWorkItem(301, 400);
+        tracker.register(Arrays.asList(first, second, third));
+
+        Assert.assertTrue(tracker.hasRegisteredWork());
+        Assert.assertEquals(Long.valueOf(100), tracker.getCommittedLastId());
+
+        tracker.committed(Collections.singletonList(third));
+        Assert.assertEquals(Long.valueOf(100), tracker.getCommittedLastId());
+
+        tracker.committed(Collections.singletonList(second));
+        Assert.assertEquals(Long.valueOf(100), tracker.getCommittedLastId());
+
+        // closing the gap advances the checkpoint over all contiguously committed work items
+        tracker.committed(Collections.singletonList(first));
+        Assert.assertEquals(Long.valueOf(400), tracker.getCommittedLastId());
+    }
+
+    @Test
+    public void uncommittedWorkItemBlocksLaterCommits()
+    {
+        final CleanupProgressTracker tracker = newTracker(null);
+        final CleanupWorkItem first = new CleanupWorkItem(1, 10);
+        final CleanupWorkItem second = new CleanupWorkItem(11, 20);
+        final CleanupWorkItem third = new CleanupWorkItem(21, 30);
+        final CleanupWorkItem fourth = new CleanupWorkItem(31, 40);
+        tracker.register(Arrays.asList(first, second));
+        tracker.register(Arrays.asList(third, fourth));
+
+        tracker.committed(Arrays.asList(first, third));
+        Assert.assertEquals(Long.valueOf(10), tracker.getCommittedLastId());
+
+        // second work item failed / was never committed, so fourth must not move the checkpoint past it
+        tracker.committed(Collections.singletonList(fourth));
+        Assert.assertEquals(Long.valueOf(10), tracker.getCommittedLastId());
+    }
+
+    @Test
+    public void noRegisteredWork()
+    {
+        final CleanupProgressTracker tracker = newTracker(Long.valueOf(42));
+
+        Assert.assertFalse(tracker.hasRegisteredWork());
+        Assert.assertEquals(Long.valueOf(42), tracker.getCommittedLastId());
+    }
+
+    private static CleanupProgressTracker newTracker(final Long startId)
+    {
+        // services are only used to persist checkpoints, which is not covered here
+        return new CleanupProgressTracker(null, null, "TestCleanupJob", "lastId", startId);
+    }
+}